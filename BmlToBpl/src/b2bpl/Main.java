@@ -1,12 +1,22 @@
 package b2bpl;
 
-import java.io.FileNotFoundException;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 import b2bpl.bpl.BPLPrinter;
 import b2bpl.bpl.ast.BPLProgram;
 import b2bpl.bpl.transformation.IBPLTransformator;
+import b2bpl.bytecode.ClassPath;
 import b2bpl.bytecode.ITroubleReporter;
 import b2bpl.bytecode.JClassType;
 import b2bpl.bytecode.TroubleDescription;
@@ -14,20 +24,23 @@ import b2bpl.bytecode.TroubleException;
 import b2bpl.bytecode.TroubleMessage;
 import b2bpl.bytecode.TroublePosition;
 import b2bpl.bytecode.TypeLoader;
-import b2bpl.bytecode.analysis.SemanticAnalyzer;
 import b2bpl.translation.Translator;
 
 
 public class Main implements ITroubleReporter {
 
-  private static Project project = null;
+  /** The project being compiled. */
+  private final Project project;
+
+  /** The loader of the classes of the project being compiled. */
+  private TypeLoader typeLoader = null;
 
   public Main(String[] args) {
     this(Project.fromCommandLine(args, new PrintWriter(System.out)));
   }
 
   public Main(Project project) {
-    Main.project = project;
+    this.project = project;
   }
 
   public static void main(String[] args) {
@@ -41,24 +54,80 @@ public class Main implements ITroubleReporter {
 
     try {
       try {
-        TypeLoader.setProject(project);
-        TypeLoader.setProjectTypes(project.getProjectTypes());
-        TypeLoader.setSpecificationProvider(project.getSpecificationProvider());
-        TypeLoader.setSemanticAnalyzer(new SemanticAnalyzer(project, this));
-        TypeLoader.setTroubleReporter(this);
+        typeLoader = new TypeLoader(project, this);
 
         String[] projectTypeNames = project.getProjectTypes();
         JClassType[] projectTypes = new JClassType[projectTypeNames.length];
         for (int i = 0; i < projectTypes.length; i++) { 
-          projectTypes[i] = TypeLoader.getClassType(projectTypeNames[i]);
+          projectTypes[i] = typeLoader.getClassType(projectTypeNames[i]);
         }
 
+        // The files to write, and the types to translate into each of them.
+        String[] outFiles;
+        JClassType[][] outTypes;
         if (project.isTranslateSeparately()) {
+          outFiles = new String[projectTypes.length];
+          outTypes = new JClassType[projectTypes.length][];
           for (int i = 0; i < projectTypes.length; i++) {
-            translate(project.getSeparateOutFile(i), projectTypes[i]);
+            outFiles[i] = project.getSeparateOutFile(i);
+            outTypes[i] = new JClassType[] { projectTypes[i] };
           }
         } else {
-          translate(project.getOutFile(), projectTypes);
+          outFiles = new String[] { project.getOutFile() };
+          outTypes = new JClassType[][] { projectTypes };
+        }
+
+        // Look up the programs remembered, and load the types of the others.
+        TranslationCache cache = null;
+        String[] keys = new String[outFiles.length];
+        String[] programs = new String[outFiles.length];
+        if (project.getCacheDirectory() != null) {
+          cache = new TranslationCache(
+              new File(project.getCacheDirectory()),
+              typeLoader);
+          String settings = project.getTranslationSettings();
+          for (int i = 0; i < outFiles.length; i++) {
+            keys[i] = cache.key(settings, outFiles[i], outTypes[i]);
+            programs[i] = cache.lookup(keys[i]);
+          }
+        }
+        List<JClassType> typesToLoad = new ArrayList<JClassType>();
+        for (int i = 0; i < outFiles.length; i++) {
+          if (programs[i] == null) {
+            typesToLoad.addAll(Arrays.asList(outTypes[i]));
+          }
+        }
+        typeLoader.loadTypes(
+            project.getThreadCount(),
+            typesToLoad.toArray(new JClassType[typesToLoad.size()]));
+
+        for (int i = 0; i < outFiles.length; i++) {
+          String program = programs[i];
+          if (program == null) {
+            typeLoader.startRecording();
+            program = print(translate(outTypes[i]));
+            Set<JClassType> dependencies = typeLoader.stopRecording();
+            for (JClassType type : outTypes[i]) {
+              dependencies.addAll(typeLoader.getAnalysisDependencies(type));
+            }
+            if (cache != null) {
+              cache.store(keys[i], program, dependencies);
+            }
+          }
+          write(outFiles[i], program);
+        }
+
+        if (project.printStatistics()) {
+          ClassPath classPath = typeLoader.getClassPath();
+          System.err.println(
+              "Class files: " + classPath.getLookupCount() + " lookups, "
+              + classPath.getFoundCount() + " found on the class path, "
+              + classPath.getBytesRead() + " bytes read");
+          if (cache != null) {
+            System.err.println(
+                "Programs: " + cache.getHits() + " remembered, "
+                + cache.getMisses() + " generated");
+          }
         }
       } catch (TroubleException te) {
         reportTrouble(te.getTroubleMessage());
@@ -69,28 +138,111 @@ public class Main implements ITroubleReporter {
       }
     } catch (CompilationAbortedException cae) {
       // do nothing
+    } finally {
+      if (typeLoader != null) {
+        typeLoader.getClassPath().close();
+      }
     }
   }
 
-  private void translate(String outFile, JClassType... types) {
-    BPLProgram program = new Translator(project).translate(types);
+  /**
+   * Translates all the classes of the project into a single BoogiePL program
+   * and returns it, without printing it. This is the entry point for tools
+   * which process the program further in memory.
+   *
+   * @return  The BoogiePL program, or {@code null} if the translation was
+   *          aborted because of an error, which has been reported.
+   */
+  public BPLProgram translateProject() {
+    if (project == null) {
+      return null;
+    }
+
+    try {
+      try {
+        typeLoader = new TypeLoader(project, this);
+
+        String[] projectTypeNames = project.getProjectTypes();
+        JClassType[] projectTypes = new JClassType[projectTypeNames.length];
+        for (int i = 0; i < projectTypes.length; i++) {
+          projectTypes[i] = typeLoader.getClassType(projectTypeNames[i]);
+        }
+        typeLoader.loadTypes(project.getThreadCount(), projectTypes);
+        return translate(projectTypes);
+      } catch (TroubleException te) {
+        reportTrouble(te.getTroubleMessage());
+      } catch (CompilationAbortedException cae) {
+        // do nothing
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    } catch (CompilationAbortedException cae) {
+      // do nothing
+    } finally {
+      if (typeLoader != null) {
+        typeLoader.getClassPath().close();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Translates the given {@code types} into a BoogiePL program, to which the
+   * transformations of the project are applied.
+   */
+  private BPLProgram translate(JClassType... types) {
+    BPLProgram program = new Translator(project, typeLoader).translate(types);
 
     for (IBPLTransformator transformator : project.getTransformators()) {
       program = transformator.transform(program);
     }
+    return program;
+  }
+
+  /** Returns the text of the given {@code program}. */
+  private static String print(BPLProgram program) {
+    StringWriter text = new StringWriter();
+    PrintWriter writer = new PrintWriter(text);
+    program.accept(new BPLPrinter(writer));
+    writer.flush();
+    return text.toString();
+  }
 
+  /**
+   * Writes the given {@code program} to {@code outFile}, unless the file
+   * already contains it, so that the files which didn't change keep their
+   * modification time.
+   */
+  private void write(String outFile, String program) {
     try {
-      PrintWriter writer;
       if ("-".equals(outFile)) {
-        writer = new PrintWriter(System.out);
-      } else {
-        writer = new PrintWriter(new FileOutputStream(outFile));
+        PrintWriter writer = new PrintWriter(System.out);
+        writer.write(program);
+        writer.flush();
+        writer.close();
+        return;
       }
-      program.accept(new BPLPrinter(writer));
-      writer.flush();
-      writer.close();
-
-    } catch (FileNotFoundException e) {
+      byte[] content = program.getBytes();
+      File file = new File(outFile);
+      if (file.isFile() && file.length() == content.length) {
+        byte[] old = new byte[content.length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+          in.readFully(old);
+        } finally {
+          in.close();
+        }
+        if (Arrays.equals(old, content)) {
+          return;
+        }
+      }
+      OutputStream out = new FileOutputStream(file);
+      try {
+        out.write(content);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
       e.printStackTrace();
     }
   }
@@ -132,8 +284,4 @@ public class Main implements ITroubleReporter {
       throw new CompilationAbortedException();
     }
   }
-  
-  public static Project getProject() {
-    return Main.project;
-  }
 }
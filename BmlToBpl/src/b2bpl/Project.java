@@ -147,6 +147,31 @@ public class Project {
    */
   private String baseDirectory = "";
 
+  /**
+   * The number of threads on which methods are translated. Defaults to the
+   * number of available processors.
+   *
+   * @see #getThreadCount()
+   */
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The directory in which to remember the BoogiePL programs generated, so
+   * that they are only generated again when the class files they depend on
+   * change. Defaults to {@code null}, meaning that nothing is remembered.
+   *
+   * @see #getCacheDirectory()
+   */
+  private String cacheDirectory = null;
+
+  /**
+   * Whether to print statistics about the class files read and about the
+   * programs remembered.
+   *
+   * @see #printStatistics()
+   */
+  private boolean printStatistics = false;
+
   /**
    * Creates a new project which is configured according to the set of command
    * line arguments ({@code args}) provided.
@@ -220,6 +245,18 @@ public class Project {
         // Perform object invariant checks
         project.performInvariantChecks = true;
         i++;
+      } else if ("-j".equals(args[i])) {
+        // Set the number of threads used for translating methods
+        project.threadCount = Math.max(1, Integer.valueOf(args[i + 1]));
+        i += 2;
+      } else if ("-cachedir".equals(args[i])) {
+        // Remember the generated programs in the given directory
+        project.cacheDirectory = args[i + 1];
+        i += 2;
+      } else if ("-stats".equals(args[i])) {
+        // Print statistics about the class files read
+        project.printStatistics = true;
+        i++;
       } else {
         if (args[i].endsWith(".class")) {
           args[i] = args[i].substring(0, args[i].lastIndexOf(".class"));
@@ -292,6 +329,46 @@ public class Project {
     return performInvariantChecks;
   }
 
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  public String getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  public boolean printStatistics() {
+    return printStatistics;
+  }
+
+  /**
+   * Returns a description of the settings of this project which influence
+   * the BoogiePL programs generated. Two projects translate the same classes
+   * to the same programs if their settings have the same description, so a
+   * new setting which influences the translation must be added here.
+   *
+   * @return  The description of the settings of this project.
+   */
+  public String getTranslationSettings() {
+    StringBuffer sb = new StringBuffer();
+    sb.append("specificationProvider=");
+    sb.append(specificationProvider.getClass().getName());
+    sb.append("\nspecificationDesugarer=");
+    sb.append(specificationDesugarer.getClass().getName());
+    sb.append("\ntransformators=");
+    for (IBPLTransformator transformator : transformators) {
+      sb.append(transformator.getClass().getName()).append(' ');
+    }
+    sb.append("\nthisInvariantsOnly=").append(thisInvariantsOnly);
+    sb.append("\nmodelRuntimeExceptions=").append(modelRuntimeExceptions);
+    sb.append("\nmaxIntConstant=").append(maxIntConstant);
+    sb.append("\nsimplifyLogicalExpressions=");
+    sb.append(simplifyLogicalExpressions);
+    sb.append("\nuseTriggers=").append(useTriggers);
+    sb.append("\nperformInvariantChecks=").append(performInvariantChecks);
+    return sb.toString();
+  }
+
   /**
    * Prints the help message describing the command line arguments supported
    * along with their semantics.
@@ -312,7 +389,11 @@ public class Project {
     messageWriter.write("  -l              Perform a sound elimination of loops in the BoogiePL program.\n");
     messageWriter.write("  -r              Model runtime exceptions of bytecode instructions (instead of ruling them out).\n");
     messageWriter.write("  -c <constant>   The magnitude of the largest integer constant to represent explicitly.\n");
-    messageWriter.write("  -basedir <path> Base directory where class files are located (if different from CLASSPATH)");
+    messageWriter.write("  -basedir <path> Base directory where class files are located (if different from CLASSPATH)\n");
+    messageWriter.write("  -j <threads>    The number of threads on which to translate methods.\n");
+    messageWriter.write("  -cachedir <path> Remember the generated programs in the given directory, and\n");
+    messageWriter.write("                  generate them again only when the class files they depend on change.\n");
+    messageWriter.write("  -stats          Print statistics about the class files read and the programs remembered.\n");
     messageWriter.write('\n');
     messageWriter.write("<files>:\n");
     messageWriter.write("  The class files or type names of the classes to verify (drawn from the CLASSPATH).\n");
@@ -0,0 +1,266 @@
+package b2bpl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import b2bpl.bytecode.JClassType;
+import b2bpl.bytecode.TypeLoader;
+
+
+/**
+ * Remembers on disk the BoogiePL programs generated, so that a program is
+ * only generated again when one of the class files it depends on changes.
+ *
+ * <p>
+ * A program is remembered under a key which identifies what was asked for:
+ * the settings of the project which influence the translation, the file to
+ * which the program is written, and the names of the classes translated.
+ * Together with the program, the cache remembers the digests of the class
+ * files of the types which were used directly while generating it (see
+ * {@link TypeLoader#stopRecording()}), which include the types translated and
+ * the types whose members and specifications they refer to, and of the types
+ * which the analysis of the translated types used (see
+ * {@link TypeLoader#getAnalysisDependencies(JClassType)}). A remembered
+ * program is reused only if none of these class files changed.
+ * </p>
+ *
+ * <p>
+ * For every key, the directory of the cache contains two files: the program
+ * ({@code <key>.bpl}) and the digests of the class files it depends on
+ * ({@code <key>.deps}), one type per line. The files are written atomically,
+ * the digests last, so that several runs may share a directory. Files which
+ * can't be read are treated as missing.
+ * </p>
+ *
+ * @see Project#getCacheDirectory()
+ */
+public class TranslationCache {
+
+  /** Changes when the format of the files, or the translation, changes. */
+  private static final String VERSION = "1";
+
+  /** The digest of a class file which can't be found. */
+  private static final String MISSING = "-";
+
+  private static final String ENCODING = "UTF-8";
+
+  private final File directory;
+
+  private final TypeLoader typeLoader;
+
+  private int hits;
+
+  private int misses;
+
+  /**
+   * Creates a cache which remembers programs in the given {@code directory}
+   * and which looks up class files using the given {@code typeLoader}.
+   *
+   * @param directory   The directory in which to remember programs.
+   * @param typeLoader  The loader of the classes translated.
+   */
+  public TranslationCache(File directory, TypeLoader typeLoader) {
+    this.directory = directory;
+    this.typeLoader = typeLoader;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      System.err.println("Cannot create cache directory " + directory);
+    }
+  }
+
+  /**
+   * Returns the key under which the program generated for the given
+   * {@code types} and written to {@code outFile} is remembered.
+   *
+   * @param settings  The settings of the project which influence the
+   *                  translation.
+   * @param outFile   The file to which the program is written.
+   * @param types     The classes translated.
+   * @return          The key of the program.
+   */
+  public String key(String settings, String outFile, JClassType... types) {
+    StringBuffer sb = new StringBuffer();
+    sb.append(VERSION).append('\n');
+    sb.append(settings).append('\n');
+    sb.append(outFile).append('\n');
+    for (JClassType type : types) {
+      sb.append(type.getName()).append('\n');
+    }
+    return toHex(digest(getBytes(sb.toString())));
+  }
+
+  /**
+   * Returns the program remembered under the given {@code key}, or
+   * {@code null} if there is none or if one of the class files on which it
+   * depends changed.
+   *
+   * @param key  The key of the program.
+   * @return     The program remembered, or {@code null}.
+   */
+  public String lookup(String key) {
+    File deps = new File(directory, key + ".deps");
+    File program = new File(directory, key + ".bpl");
+    if (deps.isFile() && program.isFile()) {
+      try {
+        boolean unchanged = true;
+        for (String line : readLines(deps)) {
+          int space = line.indexOf(' ');
+          String typeName = line.substring(0, space);
+          if (!line.substring(space + 1).equals(digest(typeName))) {
+            unchanged = false;
+            break;
+          }
+        }
+        if (unchanged) {
+          String result = read(program);
+          hits++;
+          return result;
+        }
+      } catch (IOException e) {
+        // as if nothing had been remembered
+      } catch (IndexOutOfBoundsException e) {
+        // a malformed line: as if nothing had been remembered
+      }
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * Remembers the {@code program} under the given {@code key}, together with
+   * the digests of the class files of the given {@code dependencies}.
+   *
+   * @param key           The key of the program.
+   * @param program       The program to remember.
+   * @param dependencies  The types used while generating the program.
+   */
+  public void store(String key, String program, Set<JClassType> dependencies) {
+    List<String> lines = new ArrayList<String>();
+    for (JClassType type : dependencies) {
+      lines.add(type.getName() + " " + digest(type.getName()));
+    }
+    Collections.sort(lines);
+    StringBuffer sb = new StringBuffer();
+    for (String line : lines) {
+      sb.append(line).append('\n');
+    }
+    try {
+      write(new File(directory, key + ".bpl"), program);
+      write(new File(directory, key + ".deps"), sb.toString());
+    } catch (IOException e) {
+      System.err.println(
+          "Cannot remember program in " + directory + ": " + e.getMessage());
+    }
+  }
+
+  /** Returns how many programs were found in the cache. */
+  public int getHits() {
+    return hits;
+  }
+
+  /** Returns how many programs were not found in the cache. */
+  public int getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the digest of the class file of the type with the given
+   * {@code typeName}, or {@link #MISSING} if there is none.
+   */
+  private String digest(String typeName) {
+    byte[] classFile = typeLoader.getClassFile(typeName);
+    if (classFile == null) {
+      return MISSING;
+    }
+    return toHex(digest(classFile));
+  }
+
+  private static byte[] digest(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuffer sb = new StringBuffer();
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] getBytes(String s) {
+    try {
+      return s.getBytes(ENCODING);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), ENCODING));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  private static String read(File file) throws IOException {
+    StringBuffer sb = new StringBuffer();
+    InputStreamReader reader =
+      new InputStreamReader(new FileInputStream(file), ENCODING);
+    try {
+      char[] buffer = new char[1 << 16];
+      int count;
+      while ((count = reader.read(buffer)) >= 0) {
+        sb.append(buffer, 0, count);
+      }
+    } finally {
+      reader.close();
+    }
+    return sb.toString();
+  }
+
+  /** Writes {@code content} to {@code file} atomically. */
+  private void write(File file, String content) throws IOException {
+    File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      Writer writer =
+        new OutputStreamWriter(new FileOutputStream(tmp), ENCODING);
+      try {
+        writer.write(content);
+      } finally {
+        writer.close();
+      }
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        if (!tmp.renameTo(file)) {
+          throw new IOException("Cannot write " + file);
+        }
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+}
@@ -25,7 +25,7 @@ public class BCMethod extends BCMember implements IOpCodes {
 
   private final JClassType[] exceptionTypes;
 
-  private JType[] realParameterTypes;
+  private volatile JType[] realParameterTypes;
 
   private final String descriptor;
 
@@ -75,21 +75,24 @@ public class BCMethod extends BCMember implements IOpCodes {
   }
 
   public JType[] getRealParameterTypes() {
-    if (realParameterTypes == null) {
+    // built in a local, so that other threads see only the complete array
+    JType[] result = realParameterTypes;
+    if (result == null) {
       if (isStatic()) {
-        realParameterTypes = parameterTypes;
+        result = parameterTypes;
       } else {
-        realParameterTypes = new JType[parameterTypes.length + 1];
-        realParameterTypes[0] = owner;
+        result = new JType[parameterTypes.length + 1];
+        result[0] = owner;
         System.arraycopy(
             parameterTypes,
             0,
-            realParameterTypes,
+            result,
             1,
             parameterTypes.length);
       }
+      realParameterTypes = result;
     }
-    return realParameterTypes;
+    return result;
   }
 
   public String getDescriptor() {
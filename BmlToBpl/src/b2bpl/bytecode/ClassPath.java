@@ -0,0 +1,249 @@
+package b2bpl.bytecode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * An index of the class files found on a class path made of directories and
+ * JAR files, which reads the bytes of class files directly.
+ *
+ * <p>
+ * The JAR files are opened once, when the class path is created, and the
+ * class files they contain are indexed by name. A {@code ZipFile} reads the
+ * central directory of its JAR file only when it is opened (and maps it in
+ * memory where the platform supports it), so looking up a class costs one
+ * hash lookup for all the JAR files together. Directories are not indexed,
+ * since the file system already is an index of their content: a class is
+ * looked up in a directory by checking whether its class file exists. As for
+ * the JVM, a class is found in the first entry of the class path which
+ * contains it.
+ * </p>
+ *
+ * <p>
+ * Classes may be looked up from several threads. The number of lookups, of
+ * classes found, and of bytes read are counted.
+ * </p>
+ *
+ * @see TypeLoader
+ */
+public class ClassPath {
+
+  /** The directories of the class path, in order. */
+  private final List<Directory> directories = new ArrayList<Directory>();
+
+  /** The JAR files of the class path, which are kept open. */
+  private final List<ZipFile> jars = new ArrayList<ZipFile>();
+
+  /**
+   * Maps the names of class files to their first occurrence in the JAR files
+   * of the class path.
+   */
+  private final HashMap<String, JarEntry> jarEntries =
+    new HashMap<String, JarEntry>();
+
+  private final AtomicLong lookupCount = new AtomicLong();
+
+  private final AtomicLong foundCount = new AtomicLong();
+
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  /**
+   * Creates the index of the given class path {@code entries}. Entries which
+   * are neither directories nor readable JAR files are ignored.
+   *
+   * @param entries  The directories and JAR files making up the class path,
+   *                 in order.
+   */
+  public ClassPath(List<String> entries) {
+    for (int position = 0; position < entries.size(); position++) {
+      File file = new File(entries.get(position));
+      if (file.isDirectory()) {
+        directories.add(new Directory(position, file));
+      } else if (file.isFile()) {
+        addJar(position, file);
+      }
+    }
+  }
+
+  /**
+   * Returns the class path used for a project whose classes may also be
+   * found in the given {@code baseDirectory}: the boot class path (if the JVM
+   * tells it), followed by the class path of the JVM, followed by the
+   * {@code baseDirectory}.
+   *
+   * @param baseDirectory  The directory searched last.
+   * @return               The class path of the project.
+   */
+  public static ClassPath forProject(String baseDirectory) {
+    List<String> entries = new ArrayList<String>();
+    addEntries(entries, System.getProperty("sun.boot.class.path"));
+    addEntries(entries, System.getProperty("java.class.path"));
+    entries.add(new File(baseDirectory).getAbsolutePath());
+    return new ClassPath(entries);
+  }
+
+  /**
+   * Returns the content of the class file of the given type, or {@code null}
+   * if it is not on this class path.
+   *
+   * @param typeName  The name of the type, with dots or slashes as
+   *                  separators.
+   * @return          The bytes of the class file, or {@code null}.
+   * @throws IOException  If the class file exists but can't be read.
+   */
+  public byte[] getClassBytes(String typeName) throws IOException {
+    lookupCount.incrementAndGet();
+    String name = typeName.replace('.', '/') + ".class";
+    JarEntry inJar = jarEntries.get(name);
+    for (Directory directory : directories) {
+      if (inJar != null && inJar.position < directory.position) {
+        break;
+      }
+      File file = new File(directory.root, name);
+      if (file.isFile()) {
+        return read(new FileInputStream(file), file.length());
+      }
+    }
+    if (inJar != null) {
+      return read(inJar.jar.getInputStream(inJar.entry), inJar.entry.getSize());
+    }
+    return null;
+  }
+
+  /** Returns how many classes were looked up. */
+  public long getLookupCount() {
+    return lookupCount.get();
+  }
+
+  /** Returns how many of the classes looked up were found. */
+  public long getFoundCount() {
+    return foundCount.get();
+  }
+
+  /** Returns how many bytes were read from class files. */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /** Closes the JAR files of this class path. */
+  public void close() {
+    for (ZipFile jar : jars) {
+      try {
+        jar.close();
+      } catch (IOException e) {
+        // nothing to do
+      }
+    }
+    jars.clear();
+    jarEntries.clear();
+  }
+
+  private static void addEntries(List<String> entries, String path) {
+    if (path == null) {
+      return;
+    }
+    for (String entry : path.split(File.pathSeparator)) {
+      if (entry.length() > 0) {
+        entries.add(entry);
+      }
+    }
+  }
+
+  private void addJar(int position, File file) {
+    try {
+      ZipFile jar = new ZipFile(file);
+      jars.add(jar);
+      Enumeration<? extends ZipEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (name.endsWith(".class") && !jarEntries.containsKey(name)) {
+          jarEntries.put(name, new JarEntry(position, jar, entry));
+        }
+      }
+    } catch (IOException e) {
+      // Like the JVM, we ignore class path entries which can't be read.
+    }
+  }
+
+  /**
+   * Reads the whole {@code in}, which is expected to contain {@code size}
+   * bytes (or an unknown number of bytes, if {@code size} is negative), and
+   * closes it.
+   */
+  private byte[] read(InputStream in, long size) throws IOException {
+    try {
+      byte[] buffer = new byte[size >= 0 ? (int) size : 1 << 12];
+      int length = 0;
+      while (true) {
+        if (length == buffer.length) {
+          int next = in.read();
+          if (next < 0) {
+            break;
+          }
+          byte[] bigger = new byte[2 * buffer.length + 1];
+          System.arraycopy(buffer, 0, bigger, 0, length);
+          buffer = bigger;
+          buffer[length++] = (byte) next;
+        }
+        int count = in.read(buffer, length, buffer.length - length);
+        if (count < 0) {
+          break;
+        }
+        length += count;
+      }
+      if (length < buffer.length) {
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        buffer = result;
+      }
+      foundCount.incrementAndGet();
+      bytesRead.addAndGet(length);
+      return buffer;
+    } finally {
+      in.close();
+    }
+  }
+
+  /** A directory of the class path, and its position in the class path. */
+  private static final class Directory {
+
+    public final int position;
+
+    public final File root;
+
+    public Directory(int position, File root) {
+      this.position = position;
+      this.root = root;
+    }
+  }
+
+  /**
+   * A class file inside a JAR file, and the position of the JAR file in the
+   * class path.
+   */
+  private static final class JarEntry {
+
+    public final int position;
+
+    public final ZipFile jar;
+
+    public final ZipEntry entry;
+
+    public JarEntry(int position, ZipFile jar, ZipEntry entry) {
+      this.position = position;
+      this.jar = jar;
+      this.entry = entry;
+    }
+  }
+}
@@ -376,11 +376,11 @@ public class InstructionFactory {
     }
   }
 
-  public static Instruction fromLdcInsn(Object cst)
+  public static Instruction fromLdcInsn(Object cst, TypeLoader typeLoader)
       throws UnsupportedInstructionException {
     if (cst instanceof Type) {
       Type type = (Type) cst;
-      cst = JType.fromDescriptor(type.getDescriptor());
+      cst = JType.fromDescriptor(type.getDescriptor(), typeLoader);
     }
     return new LdcInstruction(cst);
   }
@@ -11,7 +11,7 @@ public class Instructions implements Iterable<InstructionHandle> {
 
   private int size = 0;
 
-  private InstructionHandle[] array;
+  private volatile InstructionHandle[] array;
 
   public InstructionHandle getFirst() {
     return first;
@@ -37,10 +37,12 @@ public class Instructions implements Iterable<InstructionHandle> {
   }
 
   public InstructionHandle get(int index) {
-    if (array == null) {
-      array = toArray();
+    InstructionHandle[] result = array;
+    if (result == null) {
+      result = toArray();
+      array = result;
     }
-    return array[index];
+    return result[index];
   }
 
   public int size() {
@@ -12,8 +12,13 @@ public class JClassType extends JReferenceType implements IConstants {
 
   public static final JClassType[] EMPTY_ARRAY = new JClassType[0];
 
+  private final TypeLoader typeLoader;
+
   private final String name;
 
+  /** Whether this type is loaded, see {@link TypeLoader#loadType}. */
+  private volatile boolean loaded = false;
+
   private int accessModifiers;
 
   private JClassType supertype = null;
@@ -32,10 +37,24 @@ public class JClassType extends JReferenceType implements IConstants {
 
   private HashMap<String, BCMethod> methodsMap;
 
-  public JClassType(String name) {
+  JClassType(TypeLoader typeLoader, String name) {
+    this.typeLoader = typeLoader;
     this.name = name.replace('/', '.');
   }
 
+  /** Returns the loader which created this type. */
+  public TypeLoader getTypeLoader() {
+    return typeLoader;
+  }
+
+  boolean isLoaded() {
+    return loaded;
+  }
+
+  void setLoaded() {
+    loaded = true;
+  }
+
   public String getName() {
     return name;
   }
@@ -53,17 +72,17 @@ public class JClassType extends JReferenceType implements IConstants {
   }
 
   public int getAccessModifiers() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return accessModifiers;
   }
 
   public JClassType getSupertype() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return supertype;
   }
 
   public JClassType[] getInterfaces() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return interfaces;
   }
 
@@ -105,22 +124,22 @@ public class JClassType extends JReferenceType implements IConstants {
   }
 
   public BCField[] getFields() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return fields;
   }
 
   public BCMethod[] getMethods() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return methods;
   }
 
   public BMLInvariant[] getInvariants() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return invariants;
   }
 
   public BMLConstraint[] getConstraints() {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return constraints;
   }
 
@@ -163,12 +182,12 @@ public class JClassType extends JReferenceType implements IConstants {
   }
 
   public BCField getField(String name) {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return fieldsMap.get(name);
   }
 
   public BCMethod getMethod(String name, String descriptor) {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     return methodsMap.get(name + descriptor);
   }
 
@@ -213,7 +232,7 @@ public class JClassType extends JReferenceType implements IConstants {
   }
 
   public List<BCMethod> getMethodOverrides(String name, String descriptor) {
-    TypeLoader.loadType(getName());
+    typeLoader.loadType(this);
     List<BCMethod> accumMethods = new ArrayList<BCMethod>();
     accumMethodOverrides(name, descriptor, accumMethods);
     return accumMethods;
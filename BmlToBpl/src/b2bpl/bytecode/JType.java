@@ -42,15 +42,18 @@ public abstract class JType {
     return isSubtypeOf(type) && !equals(type);
   }
 
-  public static JType fromDescriptor(String descriptor) {
-    return fromDescriptor(descriptor.toCharArray(), 0);
+  public static JType fromDescriptor(String descriptor, TypeLoader typeLoader) {
+    return fromDescriptor(descriptor.toCharArray(), 0, typeLoader);
   }
 
   public String getDescriptor() {
     return null;
   }
 
-  private static JType fromDescriptor(char[] descriptor, int offset) {
+  private static JType fromDescriptor(
+      char[] descriptor,
+      int offset,
+      TypeLoader typeLoader) {
     switch (descriptor[offset]) {
       case 'B':
         return JBaseType.BYTE;
@@ -79,7 +82,7 @@ public abstract class JType {
           break;
         }
         String name = new String(descriptor, offset + 1, end - (offset + 1));
-        return TypeLoader.getClassType(name);
+        return typeLoader.getClassType(name);
       case '[':
         int dimension = 0;
         while ((offset < descriptor.length) && (descriptor[offset] == '[')) {
@@ -89,42 +92,46 @@ public abstract class JType {
         if (offset == descriptor.length) {
           break;
         }
-        JType elementType = fromDescriptor(descriptor, offset);
+        JType elementType = fromDescriptor(descriptor, offset, typeLoader);
         if (elementType == JBaseType.VOID) {
           break;
         }
-        return new JArrayType(elementType, dimension);
+        return new JArrayType(typeLoader, elementType, dimension);
     }
 
     // TODO[om]: Throw some exception!
     return null;
   }
 
-  public static JType[] fromMethodDescriptor(String descriptor) {
+  public static JType[] fromMethodDescriptor(
+      String descriptor,
+      TypeLoader typeLoader) {
     List<JType> types = new ArrayList<JType>();
 
     int offset = 1;
     while (descriptor.charAt(offset) != ')') {
       String typeDescriptor = extractDescriptor(descriptor, offset);
-      types.add(fromDescriptor(typeDescriptor));
+      types.add(fromDescriptor(typeDescriptor, typeLoader));
       offset += typeDescriptor.length();
     }
 
     String typeDescriptor = extractDescriptor(descriptor, offset + 1);
-    types.add(fromDescriptor(typeDescriptor));
+    types.add(fromDescriptor(typeDescriptor, typeLoader));
 
     return types.toArray(new JType[types.size()]);
   }
 
-  public static JType[] argumentTypes(String descriptor) {
-    JType[] types = fromMethodDescriptor(descriptor);
+  public static JType[] argumentTypes(
+      String descriptor,
+      TypeLoader typeLoader) {
+    JType[] types = fromMethodDescriptor(descriptor, typeLoader);
     JType[] argumentTypes = new JType[types.length - 1];
     System.arraycopy(types, 0, argumentTypes, 0, argumentTypes.length);
     return argumentTypes;
   }
 
-  public static JType returnType(String descriptor) {
-    JType[] types = fromMethodDescriptor(descriptor);
+  public static JType returnType(String descriptor, TypeLoader typeLoader) {
+    JType[] types = fromMethodDescriptor(descriptor, typeLoader);
     return types[types.length - 1];
   }
 
@@ -1,16 +1,19 @@
 package b2bpl.bytecode;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
@@ -21,6 +24,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.tree.ClassNode;
 
+import b2bpl.CompilationAbortedException;
 import b2bpl.Project;
 import b2bpl.bytecode.analysis.SemanticAnalyzer;
 import b2bpl.bytecode.attributes.AssertAttribute;
@@ -38,162 +42,367 @@ import b2bpl.bytecode.bml.ast.BMLLoopSpecification;
 import b2bpl.bytecode.instructions.Instruction;
 
 
+/**
+ * Loads the bytecode classes of a project, each at most once, and remembers
+ * them by name. Every {@link JClassType} belongs to the loader which created
+ * it, so several projects may be translated in the same JVM, each with its
+ * own loader.
+ *
+ * <p>
+ * The class files are looked up in a {@link ClassPath}, which indexes the
+ * JAR files of the class path once, and are read only once: the semantic
+ * analyzer reuses the reader of the type being loaded.
+ * </p>
+ *
+ * <p>
+ * Types may be looked up and loaded from several threads, without locks.
+ * Loading a type has two steps, each of which is done once, by the first
+ * thread which needs it: reading the declarations of the type from its class
+ * file, and analyzing the type. A thread which needs a step already being
+ * done by another thread waits for it, with one exception: a thread which is
+ * itself loading some type doesn't wait for the analysis of other types,
+ * since the analysis of a type only needs the declarations of the types it
+ * refers to. As reading declarations never loads other types, no thread can
+ * wait for another one which waits for it. A thread which asks about a type
+ * that it is itself loading gets the type as loaded so far.
+ * </p>
+ *
+ * <p>
+ * If the project remembers the programs generated (see
+ * {@link Project#getCacheDirectory()}), the loader also records which types
+ * are used by the analysis of each type, and, between
+ * {@link #startRecording()} and {@link #stopRecording()}, which types are
+ * used directly. A type is used when its members are asked for; it is used
+ * directly if it is not asked for while loading another type.
+ * </p>
+ */
 public class TypeLoader {
 
-  private static final HashMap<String, JClassType> classTypes = new HashMap<String, JClassType>();
+  private final ConcurrentHashMap<String, JClassType> classTypes =
+    new ConcurrentHashMap<String, JClassType>();
 
-  private static final HashSet<JClassType> loadedClassTypes = new HashSet<JClassType>();
+  private final ConcurrentHashMap<JClassType, Loading> loadings =
+    new ConcurrentHashMap<JClassType, Loading>();
 
-  private static Project project = null;
-  
-  private static HashSet<String> projectTypes = new HashSet<String>();
+  /** The types being loaded by the current thread. */
+  private final ThreadLocal<Set<JClassType>> typesLoadedByThread =
+    new ThreadLocal<Set<JClassType>>() {
+      protected Set<JClassType> initialValue() {
+        return new HashSet<JClassType>();
+      }
+    };
 
-  private static ISpecificationProvider specProvider = new EmptySpecificationProvider();
+  /** Whether to record which types are used, see {@link #startRecording}. */
+  private final boolean trackDependencies;
 
-  private static SemanticAnalyzer semanticAnalyzer;
+  /**
+   * The types used by the analysis which the current thread is doing, or
+   * {@code null}.
+   */
+  private final ThreadLocal<Set<JClassType>> analysisDependencies =
+    new ThreadLocal<Set<JClassType>>();
 
-  private static ITroubleReporter troubleReporter;
+  /** The types used directly since recording started, or {@code null}. */
+  private volatile Set<JClassType> recordedTypes = null;
 
-  private TypeLoader() {
-    // hide the constructor
-  }
-  
-  public static void setProject(Project p) {
-    project = p;
-  }
+  private final ClassPath classPath;
 
-  public static void setProjectTypes(String... types) {
-    projectTypes = new HashSet<String>();
-    for (String type : types) {
-      projectTypes.add(type.replace('/', '.'));
-    }
-  }
+  private final HashSet<String> projectTypes = new HashSet<String>();
 
-  public static void setSpecificationProvider(ISpecificationProvider provider) {
-    assert provider != null;
-    specProvider = provider;
-  }
+  private final ISpecificationProvider specProvider;
 
-  public static void setSemanticAnalyzer(SemanticAnalyzer analyzer) {
-    semanticAnalyzer = analyzer;
-  }
+  private final SemanticAnalyzer semanticAnalyzer;
+
+  private final ITroubleReporter troubleReporter;
 
-  public static void setTroubleReporter(ITroubleReporter reporter) {
-    troubleReporter = reporter;
+  /**
+   * Creates a loader for the types of the given {@code project}, which looks
+   * up class files on the class path of the JVM and in the base directory of
+   * the {@code project}.
+   *
+   * @param project          The project whose types to load.
+   * @param troubleReporter  The reporter of the troubles found while loading
+   *                         and analyzing types.
+   */
+  public TypeLoader(Project project, ITroubleReporter troubleReporter) {
+    this.classPath = ClassPath.forProject(project.getBaseDirectory());
+    for (String type : project.getProjectTypes()) {
+      projectTypes.add(type.replace('/', '.'));
+    }
+    this.specProvider = project.getSpecificationProvider();
+    this.semanticAnalyzer = new SemanticAnalyzer(project, troubleReporter);
+    this.troubleReporter = troubleReporter;
+    this.trackDependencies = project.getCacheDirectory() != null;
   }
 
-  public static JClassType getClassType(String name) {
+  public JClassType getClassType(String name) {
     name = name.replace('.', '/');
     JClassType type = classTypes.get(name);
     
     if (type == null) {
-      type = new JClassType(name);
-      classTypes.put(name, type);
-      
-      
+      JClassType newType = new JClassType(this, name);
+      type = classTypes.putIfAbsent(name, newType);
+      if (type == null) {
+        type = newType;
+      }
     }
     return type;
   }
   
-  private static ClassReader getClassReader(String typeName) {
+  /** Returns the class path on which the types are looked up. */
+  public ClassPath getClassPath() {
+    return classPath;
+  }
+
+  /**
+   * Returns the content of the class file of the given type, or {@code null}
+   * if it can't be found. The type is not loaded.
+   *
+   * @param typeName  The name of the type.
+   * @return          The bytes of the class file, or {@code null}.
+   */
+  public byte[] getClassFile(String typeName) {
+    ClassReader reader = getClassReader(typeName);
+    return (reader == null) ? null : reader.b;
+  }
+
+  /**
+   * Starts recording the types which are used directly, that is, whose
+   * members are asked for other than while loading a type. Types are only
+   * recorded if the project remembers the programs generated.
+   */
+  public void startRecording() {
+    if (trackDependencies) {
+      recordedTypes = newConcurrentSet();
+    }
+  }
+
+  /**
+   * Stops recording the types which are used directly, and returns them. The
+   * types used by their analysis are not included (see
+   * {@link #getAnalysisDependencies(JClassType)}). The result is empty if
+   * types were not recorded.
+   *
+   * @return  The types used since {@link #startRecording()} was called.
+   */
+  public Set<JClassType> stopRecording() {
+    Set<JClassType> result = new HashSet<JClassType>();
+    if (recordedTypes != null) {
+      result.addAll(recordedTypes);
+      recordedTypes = null;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the types used by the analysis of the given {@code type}, which
+   * are the types its class file refers to. The result is empty if types are
+   * not recorded, or if the {@code type} is not loaded.
+   *
+   * @param type  A type created by this loader.
+   * @return      The types used by the analysis of {@code type}.
+   */
+  public Set<JClassType> getAnalysisDependencies(JClassType type) {
+    Loading loading = loadings.get(type);
+    if (loading == null) {
+      return new HashSet<JClassType>();
+    }
+    return new HashSet<JClassType>(loading.dependencies);
+  }
+
+  private static Set<JClassType> newConcurrentSet() {
+    return Collections.newSetFromMap(
+        new ConcurrentHashMap<JClassType, Boolean>());
+  }
+
+  private ClassReader getClassReader(String typeName) {
     try {
-      // Create class reader from type name
-//System.out.println("Reading class from name:\t" + typeName);
+      byte[] bytes = classPath.getClassBytes(typeName);
+      if (bytes != null) {
+        return new ClassReader(bytes);
+      }
+      // Not a class file on the class path: since Java 9, the classes of the
+      // platform are found only by the class loaders.
       return new ClassReader(typeName);
-    } catch (IOException ioex) {
-      // Create class reader from file stream
-//System.out.println("Reading class from stream:\t" + typeName);
-         
-      InputStream is = null;
-      
-      String localPath = project.getBaseDirectory(); // typeName.substring(0, typeName.lastIndexOf("\\"));
-      File file = new File(localPath);
-      
-      try {
-        // Convert File to a URL
-        URL url = file.toURI().toURL();         // file:/c:/myclasses/
-        URL[] urls = new URL[] { url };
-        
-        // Create a new class loader with the directory
-        ClassLoader cl = new URLClassLoader(urls);
-        // Class cls = cl.loadClass(typeName);
-        
-        // Create input stream containing the contents of the given class      
-        String className = typeName.replace('.', '/') + ".class";
-        is = cl.getResourceAsStream(className);
-      } catch (MalformedURLException murlex) {
-        System.err.println(murlex.toString());
-      //} catch (ClassNotFoundException cnfex) {
-      //  System.err.println(cnfex.toString());
+    } catch (IOException ioe) {
+      System.err.println("Cannot create class reader from " + typeName);
+    }
+    return null;
+  }
+
+  /**
+   * Loads the given {@code type}, unless it is already loaded, and returns
+   * once it is loaded. See the comment of this class for when this method
+   * returns earlier.
+   *
+   * @param type  A type created by this loader.
+   */
+  public void loadType(JClassType type) {
+    if (trackDependencies) {
+      recordUse(type);
+    }
+    if (type.isLoaded()) {
+      return;
+    }
+    Set<JClassType> typesLoadedByThread = this.typesLoadedByThread.get();
+    if (typesLoadedByThread.contains(type)) {
+      return;
+    }
+
+    Loading loading = loadings.get(type);
+    if (loading == null) {
+      Loading newLoading = new Loading(type);
+      loading = loadings.putIfAbsent(type, newLoading);
+      if (loading == null) {
+        loading = newLoading;
       }
-  
-      try {
-        return new ClassReader(is);
-      } catch (IOException ioe) {
-        System.err.println("Cannot create class reader from " + typeName);
+    }
+
+    boolean nested = !typesLoadedByThread.isEmpty();
+    typesLoadedByThread.add(type);
+    try {
+      loading.declarations.run();
+      await(loading.declarations);
+      loading.analysis.run();
+      if (!nested) {
+        await(loading.analysis);
       }
-      return null;
+    } finally {
+      typesLoadedByThread.remove(type);
     }
   }
 
-  public static void loadType(String name) {
-    
-    JClassType type = getClassType(name);
-    
-    if (loadedClassTypes.add(type)) {
-      try {
-        int flags = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
-        Attribute[] attributes;
-        if (projectTypes.contains(type.getName())) {
-          attributes = new Attribute[] {
-              new ClassInvariantAttribute(type),
-              new ConstraintAttribute(type),
-              new ModelFieldAttribute(type),
-              new MethodSpecificationAttribute(),
-              new AssertAttribute(),
-              new AssumeAttribute(),
-              new LoopSpecificationAttribute()
-          };
-        } else {
-          attributes = new Attribute[] {
-              new ClassInvariantAttribute(type),
-              new ConstraintAttribute(type),
-              new ModelFieldAttribute(type),
-              new MethodSpecificationAttribute()
-          };
-          flags |= ClassReader.SKIP_CODE;
-        }
-       
-//System.out.println("L 167: " + type.getName());
-        ClassReader reader = getClassReader(type.getName());
-
-        JClassTypeBuilder builder = new JClassTypeBuilder(type);
-        
-        reader.accept(specProvider.forClass(type, builder), attributes, flags);
-        semanticAnalyzer.analyze(type);
-        
-      //} catch (IOException ioe) {
-      //  troubleReporter.reportTrouble(
-      //      new TroubleMessage(B2BPLMessages.CLASS_NOT_FOUND, name));
-      } catch (TroubleException te) {
-        if (te.getTroubleMessage().getPosition() == null) {
-          te.getTroubleMessage().setPosition(
-              new TroublePosition(type, null, null));
-        }
-        throw te;
+  private void recordUse(JClassType type) {
+    Set<JClassType> recorded = recordedTypes;
+    if (recorded != null && typesLoadedByThread.get().isEmpty()) {
+      recorded.add(type);
+    }
+    Set<JClassType> dependencies = analysisDependencies.get();
+    if (dependencies != null) {
+      dependencies.add(type);
+    }
+  }
+
+  /**
+   * Loads the given {@code types} on (at most) {@code threadCount} threads,
+   * and returns once they are all loaded.
+   *
+   * @param threadCount  The number of threads to use.
+   * @param types        The types to load, created by this loader.
+   */
+  public void loadTypes(int threadCount, JClassType... types) {
+    if (threadCount <= 1 || types.length <= 1) {
+      for (JClassType type : types) {
+        loadType(type);
+      }
+      return;
+    }
+
+    ExecutorService executor =
+      Executors.newFixedThreadPool(Math.min(threadCount, types.length));
+    try {
+      List<Future<?>> loaded = new ArrayList<Future<?>>();
+      for (final JClassType type : types) {
+        loaded.add(executor.submit(new Runnable() {
+          public void run() {
+            loadType(type);
+          }
+        }));
+      }
+      for (Future<?> future : loaded) {
+        await(future);
       }
+    } finally {
+      executor.shutdownNow();
     }
   }
 
-  public static JClassType[] getClassTypes() {
-    return classTypes.values().toArray(new JClassType[classTypes.size()]);
+  /**
+   * Waits for the given {@code step}, and rethrows the exception it threw,
+   * if any.
+   */
+  private static void await(Future<?> step) {
+    try {
+      step.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompilationAbortedException();
+    }
   }
 
-  public static ClassNode getASMClassTypeNode(JClassType type) {
+  private ClassReader readDeclarations(JClassType type) {
+    try {
+      int flags = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+      Attribute[] attributes;
+      if (projectTypes.contains(type.getName())) {
+        attributes = new Attribute[] {
+            new ClassInvariantAttribute(type),
+            new ConstraintAttribute(type),
+            new ModelFieldAttribute(type),
+            new MethodSpecificationAttribute(this),
+            new AssertAttribute(this),
+            new AssumeAttribute(this),
+            new LoopSpecificationAttribute(this)
+        };
+      } else {
+        attributes = new Attribute[] {
+            new ClassInvariantAttribute(type),
+            new ConstraintAttribute(type),
+            new ModelFieldAttribute(type),
+            new MethodSpecificationAttribute(this)
+        };
+        flags |= ClassReader.SKIP_CODE;
+      }
+
+      ClassReader reader = getClassReader(type.getName());
+
+      JClassTypeBuilder builder = new JClassTypeBuilder(type);
+
+      reader.accept(specProvider.forClass(type, builder), attributes, flags);
+      return reader;
+
+    } catch (TroubleException te) {
+      if (te.getTroubleMessage().getPosition() == null) {
+        te.getTroubleMessage().setPosition(
+            new TroublePosition(type, null, null));
+      }
+      throw te;
+    }
+  }
+
+  private void analyze(JClassType type) {
+    try {
+      semanticAnalyzer.analyze(type);
+    } catch (TroubleException te) {
+      if (te.getTroubleMessage().getPosition() == null) {
+        te.getTroubleMessage().setPosition(
+            new TroublePosition(type, null, null));
+      }
+      throw te;
+    }
+  }
+
+  public JClassType[] getClassTypes() {
+    return classTypes.values().toArray(new JClassType[0]);
+  }
+
+  public ClassNode getASMClassTypeNode(JClassType type) {
     try {
       ClassNode cn = new ClassNode();
-//System.out.println("L 194: " + type.getName());
-      ClassReader cr = TypeLoader.getClassReader(type.getName()); // new ClassReader(type.getName());
+      Loading loading = loadings.get(type);
+      ClassReader cr = (loading == null) ? null : loading.reader;
+      if (cr == null) {
+        cr = getClassReader(type.getName());
+      }
       cr.accept(cn, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
       return cn;
     } catch (Exception e) {
@@ -202,7 +411,50 @@ public class TypeLoader {
     return null;
   }
 
-  private static final class JClassTypeBuilder implements ClassVisitor {
+  /**
+   * The loading of a type: the steps of reading its declarations and of
+   * analyzing it.
+   */
+  private final class Loading {
+
+    public final FutureTask<Void> declarations;
+
+    public final FutureTask<Void> analysis;
+
+    /**
+     * The reader of the class file of the type, kept while the type is
+     * analyzed.
+     */
+    public volatile ClassReader reader;
+
+    /** The types used by the analysis of the type. */
+    public final Set<JClassType> dependencies = newConcurrentSet();
+
+    public Loading(final JClassType type) {
+      declarations = new FutureTask<Void>(new Callable<Void>() {
+        public Void call() {
+          reader = readDeclarations(type);
+          return null;
+        }
+      });
+      analysis = new FutureTask<Void>(new Callable<Void>() {
+        public Void call() {
+          Set<JClassType> outer = analysisDependencies.get();
+          analysisDependencies.set(dependencies);
+          try {
+            analyze(type);
+          } finally {
+            analysisDependencies.set(outer);
+            reader = null;
+          }
+          type.setLoaded();
+          return null;
+        }
+      });
+    }
+  }
+
+  private final class JClassTypeBuilder implements ClassVisitor {
 
     private final JClassType type;
 
@@ -228,14 +480,14 @@ public class TypeLoader {
         String[] interfaceNames) {
       JClassType supertype = null;
       if (superName != null) {
-        supertype = TypeLoader.getClassType(superName);
+        supertype = getClassType(superName);
       }
 
       JClassType[] interfaces = JClassType.EMPTY_ARRAY;
       if (interfaceNames != null) {
         interfaces = new JClassType[interfaceNames.length];
         for (int i = 0; i < interfaces.length; i++) {
-          interfaces[i] = TypeLoader.getClassType(interfaceNames[i]);
+          interfaces[i] = getClassType(interfaceNames[i]);
         }
       }
 
@@ -286,7 +538,7 @@ public class TypeLoader {
         String descriptor,
         String signature,
         Object value) {
-      JType fieldType = JType.fromDescriptor(descriptor);
+      JType fieldType = JType.fromDescriptor(descriptor, TypeLoader.this);
 
       BCField field = new BCField(access, type, name, fieldType);
       fields.add(field);
@@ -300,13 +552,13 @@ public class TypeLoader {
         String descriptor,
         String signature,
         String[] exceptionNames) {
-      JType returnType = JType.returnType(descriptor);
-      JType[] argumentTypes = JType.argumentTypes(descriptor);
+      JType returnType = JType.returnType(descriptor, TypeLoader.this);
+      JType[] argumentTypes = JType.argumentTypes(descriptor, TypeLoader.this);
       JClassType[] exceptions = JClassType.EMPTY_ARRAY;
       if (exceptionNames != null) {
         exceptions = new JClassType[exceptionNames.length];
         for (int i = 0; i < exceptions.length; i++) {
-          exceptions[i] = TypeLoader.getClassType(exceptionNames[i]);
+          exceptions[i] = getClassType(exceptionNames[i]);
         }
       }
 
@@ -338,7 +590,7 @@ public class TypeLoader {
     }
   }
 
-  private static final class BCMethodBuilder implements MethodVisitor {
+  private final class BCMethodBuilder implements MethodVisitor {
 
     private final BCMethod method;
 
@@ -451,7 +703,7 @@ public class TypeLoader {
       // type, or else, the descriptor of an array type.
       JReferenceType type;
       if (descriptor.startsWith("[")) {
-        type = (JArrayType) JType.fromDescriptor(descriptor);
+        type = (JArrayType) JType.fromDescriptor(descriptor, TypeLoader.this);
       } else {
         type = getClassType(descriptor);
       }
@@ -472,9 +724,9 @@ public class TypeLoader {
       try {
         addInstruction(InstructionFactory.fromFieldInsn(
             opcode,
-            TypeLoader.getClassType(owner),
+            getClassType(owner),
             name,
-            JType.fromDescriptor(descriptor)));
+            JType.fromDescriptor(descriptor, TypeLoader.this)));
       } catch (UnsupportedInstructionException e) {
         reportTrouble(
             B2BPLMessages.UNSUPPORTED_INSTRUCTION, IOpCodes.NAMES[opcode]);
@@ -490,12 +742,12 @@ public class TypeLoader {
       // ASM is the array's descriptor.
       JReferenceType ownerType;
       if (owner.startsWith("[")) {
-        ownerType = (JArrayType) JType.fromDescriptor(owner);
+        ownerType = (JArrayType) JType.fromDescriptor(owner, TypeLoader.this);
       } else {
         ownerType = getClassType(owner);
       }
-      JType returnType = JType.returnType(descriptor);
-      JType[] parameterTypes = JType.argumentTypes(descriptor);
+      JType returnType = JType.returnType(descriptor, TypeLoader.this);
+      JType[] parameterTypes = JType.argumentTypes(descriptor, TypeLoader.this);
 
       try {
         addInstruction(InstructionFactory.fromMethodInsn(
@@ -527,7 +779,7 @@ public class TypeLoader {
 
     public void visitLdcInsn(Object cst) {
       try {
-        addInstruction(InstructionFactory.fromLdcInsn(cst));
+        addInstruction(InstructionFactory.fromLdcInsn(cst, TypeLoader.this));
       } catch (UnsupportedInstructionException e) {
         reportTrouble(
             B2BPLMessages.UNSUPPORTED_INSTRUCTION, IOpCodes.NAMES[IOpCodes.LDC]);
@@ -587,7 +839,7 @@ public class TypeLoader {
     public void visitMultiANewArrayInsn(String descriptor, int dims) {
       try {
         addInstruction(InstructionFactory.fromMultiANewArrayInsn(
-            (JArrayType) JType.fromDescriptor(descriptor),
+            (JArrayType) JType.fromDescriptor(descriptor, TypeLoader.this),
             dims));
       } catch (UnsupportedInstructionException e) {
         reportTrouble(
@@ -613,7 +865,7 @@ public class TypeLoader {
           getHandleFor(start),
           getHandleFor(end),
           getHandleFor(handler),
-          TypeLoader.getClassType(type));
+          getClassType(type));
 
       exceptionHandlers.add(exceptionHandler);
     }
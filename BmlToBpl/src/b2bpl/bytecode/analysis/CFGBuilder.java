@@ -11,7 +11,6 @@ import b2bpl.bytecode.Instructions;
 import b2bpl.bytecode.JClassType;
 import b2bpl.bytecode.JNullType;
 import b2bpl.bytecode.JType;
-import b2bpl.bytecode.TypeLoader;
 import b2bpl.bytecode.instructions.AALoadInstruction;
 import b2bpl.bytecode.instructions.AAStoreInstruction;
 import b2bpl.bytecode.instructions.AConstNullInstruction;
@@ -167,7 +166,7 @@ public class CFGBuilder {
           // Explicitly model the program flow cause by the runtime exceptions
           // thrown by the current instruction.
           for (String rtException : insn.getRuntimeExceptions()) {
-            JType exception = TypeLoader.getClassType(rtException);
+            JType exception = method.getOwner().getTypeLoader().getClassType(rtException);
             addRuntimeExceptionEdges(instruction, exception);
           }
 
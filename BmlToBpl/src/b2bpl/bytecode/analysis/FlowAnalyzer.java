@@ -53,6 +53,9 @@ public class FlowAnalyzer extends Analyzer {
    */
   private final boolean modelRuntimeExceptions;
 
+  /** The loader of the types of the methods being analyzed. */
+  private final TypeLoader typeLoader;
+
   /** The bytecode method being analyzed. */
   private BCMethod method;
 
@@ -74,12 +77,15 @@ public class FlowAnalyzer extends Analyzer {
    * Instantiates a new flow analyzer which is configured once and which can
    * then be used to analyze different bytecode methods.
    *
+   * @param typeLoader              The loader of the types of the methods
+   *                                to analyze.
    * @param modelRuntimeExceptions  Whether to explicitly model the runtime
    *                                exceptions thrown by some bytecode
    *                                instructions in the program flow.
    */
-  public FlowAnalyzer(boolean modelRuntimeExceptions) {
-    super(new Verifier());
+  public FlowAnalyzer(TypeLoader typeLoader, boolean modelRuntimeExceptions) {
+    super(new Verifier(typeLoader));
+    this.typeLoader = typeLoader;
     this.modelRuntimeExceptions = modelRuntimeExceptions;
   }
 
@@ -100,7 +106,7 @@ public class FlowAnalyzer extends Analyzer {
     
     if (asmMethod == null) return null;
     
-    JClassType ownerType = TypeLoader.getClassType(owner);
+    JClassType ownerType = typeLoader.getClassType(owner);
        
     method = ownerType.getMethod(asmMethod.name, asmMethod.desc);
     Instructions insns = method.getInstructions();
@@ -136,7 +142,11 @@ public class FlowAnalyzer extends Analyzer {
       // Convert the ASM stack frames to the representation used in the
       // translator and associate them to the individual bytecode instructions.
       insns.get(map[i]).setFrame(
-          convertFrame(asmFrames[i], asmMethod.maxLocals, asmMethod.maxStack));
+          convertFrame(
+              asmFrames[i],
+              asmMethod.maxLocals,
+              asmMethod.maxStack,
+              typeLoader));
     }
 
     return asmFrames;
@@ -229,7 +239,7 @@ public class FlowAnalyzer extends Analyzer {
       Frame insnFrame) {
     // Check whether any of the exceptions thrown by the instruction insn is
     // caught by an exception handler starting at the successor instruction.
-    List<JType> exceptions = computeExceptions(insn, insnFrame);
+    List<JType> exceptions = computeExceptions(insn, insnFrame, typeLoader);
     for (JType exception : exceptions) {
       // The tightest exception handler type found so far. This is required
       // since exception handlers appearing later on whose handler type is a
@@ -265,7 +275,7 @@ public class FlowAnalyzer extends Analyzer {
     if (modelRuntimeExceptions) {
       Instruction instruction = insn.getInstruction();
       for (String runtimeException : instruction.getRuntimeExceptions()) {
-        JType exception = TypeLoader.getClassType(runtimeException);
+        JType exception = typeLoader.getClassType(runtimeException);
         for (ExceptionHandler handler : activeHandlers[insn.getIndex()]) {
           JType handlerType = handler.getType();
           // We must only check for handler types which are supertypes of the
@@ -285,21 +295,23 @@ public class FlowAnalyzer extends Analyzer {
    * Returns the set of exceptions which may be thrown by the given bytecode
    * instruction {@code insn}.
    *
-   * @param insn       The bytecode instruction throwing the exceptions.
-   * @param insnFrame  The JVM frame at the given bytecode instruction.
-   * @return           The set of exceptions which may be thrown by the given
-   *                   bytecode instruction {@code insn}.
+   * @param insn        The bytecode instruction throwing the exceptions.
+   * @param insnFrame   The JVM frame at the given bytecode instruction.
+   * @param typeLoader  The loader of the exception types.
+   * @return            The set of exceptions which may be thrown by the given
+   *                    bytecode instruction {@code insn}.
    */
   private static List<JType> computeExceptions(
       InstructionHandle insn,
-      Frame insnFrame) {
+      Frame insnFrame,
+      TypeLoader typeLoader) {
     Instruction instruction = insn.getInstruction();
     List<JType> exceptions = new ArrayList<JType>();
 
     if (instruction.equals(AThrowInstruction.ATHROW)) {
       Value thrownValue = insnFrame.getStack(insnFrame.getStackSize() - 1);
       Type thrownType = ((BasicValue) thrownValue).getType();
-      exceptions.add(convertType(thrownType));
+      exceptions.add(convertType(thrownType, typeLoader));
     } else if (instruction instanceof InvokeInstruction) {
       BCMethod method = ((InvokeInstruction) instruction).getMethod();
       exceptions.addAll(Arrays.asList(method.getExceptionTypes()));
@@ -313,24 +325,26 @@ public class FlowAnalyzer extends Analyzer {
    * library to the representation (an instance of {@code StackFrame}) used by
    * our translator.
    *
-   * @param asmFrame   The JVM frame of the ASM bytecode library to convert.
-   * @param maxLocals  The maximal number of local variables of the frame.
-   * @param maxStack   The maximal number of stack elements of the frame.
-   * @return           The converted JVM frame.
+   * @param asmFrame    The JVM frame of the ASM bytecode library to convert.
+   * @param maxLocals   The maximal number of local variables of the frame.
+   * @param maxStack    The maximal number of stack elements of the frame.
+   * @param typeLoader  The loader of the types in the frame.
+   * @return            The converted JVM frame.
    */
   private static StackFrame convertFrame(
       Frame asmFrame,
       int maxLocals,
-      int maxStack) {
+      int maxStack,
+      TypeLoader typeLoader) {
     if (asmFrame != null) {
       StackFrame frame = new StackFrame(maxLocals, maxStack);
       for (int i = 0; i < maxLocals; i++) {
         Type asmType = ((BasicValue) asmFrame.getLocal(i)).getType();
-        frame.setLocal(i, convertType(asmType));
+        frame.setLocal(i, convertType(asmType, typeLoader));
       }
       for (int i = 0; i < asmFrame.getStackSize(); i++) {
         Type asmType = ((BasicValue) asmFrame.getStack(i)).getType();
-        frame.push(convertType(asmType));
+        frame.push(convertType(asmType, typeLoader));
       }
       return frame;
     }
@@ -342,10 +356,11 @@ public class FlowAnalyzer extends Analyzer {
    * library to the representation (an instance of {@code JType}) used by our
    * translator.
    *
-   * @param asmType  The type of the ASM bytecode library to convert.
-   * @return         The converted type.
+   * @param asmType     The type of the ASM bytecode library to convert.
+   * @param typeLoader  The loader of the converted type.
+   * @return            The converted type.
    */
-  private static JType convertType(Type asmType) {
+  private static JType convertType(Type asmType, TypeLoader typeLoader) {
     if (asmType != null) {
       switch (asmType.getSort()) {
         case Type.INT:
@@ -368,10 +383,10 @@ public class FlowAnalyzer extends Analyzer {
           if (asmType.getDescriptor().equals("Lnull;")) {
             return JNullType.NULL;
           }
-          return TypeLoader.getClassType(asmType.getClassName());
+          return typeLoader.getClassType(asmType.getClassName());
         case Type.ARRAY:
-          JType elementType = convertType(asmType.getElementType());
-          return new JArrayType(elementType, asmType.getDimensions());
+          JType elementType = convertType(asmType.getElementType(), typeLoader);
+          return new JArrayType(typeLoader, elementType, asmType.getDimensions());
       }
     }
     return null;
@@ -396,6 +411,12 @@ public class FlowAnalyzer extends Analyzer {
    */
   private static final class Verifier extends SimpleVerifier {
 
+    private final TypeLoader typeLoader;
+
+    public Verifier(TypeLoader typeLoader) {
+      this.typeLoader = typeLoader;
+    }
+
     /**
      * Returns whether the given type {@code t} is an interface.
      *
@@ -403,7 +424,7 @@ public class FlowAnalyzer extends Analyzer {
      * @return   Whether the given type {@code t} is an interface.
      */
     protected boolean isInterface(Type t) {
-      JType type = convertType(t);
+      JType type = convertType(t, typeLoader);
       if (type.isClassType()) {
         return ((JClassType) type).isInterface();
       }
@@ -417,12 +438,12 @@ public class FlowAnalyzer extends Analyzer {
      * @return   The superclass of the given type {@code t}.
      */
     protected Type getSuperClass(Type t) {
-      JType type = convertType(t);
+      JType type = convertType(t, typeLoader);
       JType supertype = null;
       if (type.isClassType()) {
         supertype = ((JClassType) type).getSupertype();
       } else if (type.isArrayType()) {
-        supertype = TypeLoader.getClassType("java.lang.Object");
+        supertype = typeLoader.getClassType("java.lang.Object");
       }
       if (supertype != null) {
         return Type.getType(supertype.getDescriptor());
@@ -440,8 +461,9 @@ public class FlowAnalyzer extends Analyzer {
      *                  a subtype of the type contained {@code expected} value.
      */
     protected boolean isSubTypeOf(final Value value, final Value expected) {
-      JType subtype = convertType(((BasicValue) value).getType());
-      JType supertype = convertType(((BasicValue) expected).getType());
+      JType subtype = convertType(((BasicValue) value).getType(), typeLoader);
+      JType supertype =
+        convertType(((BasicValue) expected).getType(), typeLoader);
       return subtype.isSubtypeOf(supertype);
     }
 
@@ -455,8 +477,8 @@ public class FlowAnalyzer extends Analyzer {
      *           {@code u}.
      */
     protected boolean isAssignableFrom(Type t, Type u) {
-      JType src = convertType(u);
-      JType dst = convertType(t);
+      JType src = convertType(u, typeLoader);
+      JType dst = convertType(t, typeLoader);
       return src.isSubtypeOf(dst);
     }
   }
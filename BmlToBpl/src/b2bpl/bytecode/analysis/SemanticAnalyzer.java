@@ -88,8 +88,6 @@ public class SemanticAnalyzer {
 
   private final ITroubleReporter troubleReporter;
 
-  private HashMap<String, MethodNode> asmMethods = new HashMap<String, MethodNode>();
-
   public SemanticAnalyzer(Project project, ITroubleReporter troubleReporter) {
     this.project = project;
     this.troubleReporter = troubleReporter;
@@ -139,10 +137,13 @@ public class SemanticAnalyzer {
     }
   }
 
-  private MethodNode getASMMethod(BCMethod method) {
+  private static MethodNode getASMMethod(
+      BCMethod method,
+      HashMap<String, MethodNode> asmMethods) {
     String key = method.getQualifiedName() + method.getDescriptor();
     if (asmMethods.get(key) == null) {
-      ClassNode cn = TypeLoader.getASMClassTypeNode(method.getOwner());
+      TypeLoader typeLoader = method.getOwner().getTypeLoader();
+      ClassNode cn = typeLoader.getASMClassTypeNode(method.getOwner());
       for (Object o : cn.methods) {
         MethodNode mn = (MethodNode) o;
         asmMethods.put(cn.name.replace('/', '.') + "." + mn.name + mn.desc, mn);
@@ -155,7 +156,11 @@ public class SemanticAnalyzer {
     InstructionAnalyzer insnAnalyzer = new InstructionAnalyzer();
     CFGBuilder cfgBuilder = new CFGBuilder(project.isModelRuntimeExceptions());
     
-    FlowAnalyzer flowAnalyzer = new FlowAnalyzer(project.isModelRuntimeExceptions());
+    FlowAnalyzer flowAnalyzer = new FlowAnalyzer(
+        type.getTypeLoader(),
+        project.isModelRuntimeExceptions());
+    // The ASM methods of the type, which are only needed while it is analyzed.
+    HashMap<String, MethodNode> asmMethods = new HashMap<String, MethodNode>();
    
     for (BCMethod method : type.getMethods()) {
       try {
@@ -163,7 +168,9 @@ public class SemanticAnalyzer {
           
           method.getInstructions().accept(insnAnalyzer);
           
-          flowAnalyzer.analyze(type.getInternalName(), getASMMethod(method));
+          flowAnalyzer.analyze(
+              type.getInternalName(),
+              getASMMethod(method, asmMethods));
           ControlFlowGraph cfg = cfgBuilder.build(method);
           cfg.analyze();
           method.setCFG(cfg);
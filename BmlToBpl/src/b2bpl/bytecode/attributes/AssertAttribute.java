@@ -6,6 +6,7 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 
+import b2bpl.bytecode.TypeLoader;
 import b2bpl.bytecode.bml.ast.BMLAssertStatement;
 import b2bpl.bytecode.bml.ast.BMLPredicate;
 
@@ -14,16 +15,22 @@ public class AssertAttribute extends Attribute {
 
   public static final String NAME = "Assert";
 
+  private final TypeLoader typeLoader;
+
   private final Label[] labels;
 
   private final BMLAssertStatement[] assertions;
 
-  public AssertAttribute() {
-    this(null, null);
+  public AssertAttribute(TypeLoader typeLoader) {
+    super(NAME);
+    this.typeLoader = typeLoader;
+    this.labels = null;
+    this.assertions = null;
   }
 
   public AssertAttribute(Label[] labels, BMLAssertStatement[] assertions) {
     super(NAME);
+    this.typeLoader = null;
     this.labels = labels;
     this.assertions = assertions;
   }
@@ -50,7 +57,7 @@ public class AssertAttribute extends Attribute {
       char[] buf,
       int codeOff,
       Label[] labels) {
-    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf);
+    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf, typeLoader);
 
     int assertionCount = reader.readShort();
     Label[] assertionLabels = new Label[assertionCount];
@@ -6,6 +6,7 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 
+import b2bpl.bytecode.TypeLoader;
 import b2bpl.bytecode.bml.ast.BMLAssumeStatement;
 import b2bpl.bytecode.bml.ast.BMLPredicate;
 
@@ -14,16 +15,22 @@ public class AssumeAttribute extends Attribute {
 
   public static final String NAME = "Assume";
 
+  private final TypeLoader typeLoader;
+
   private final Label[] labels;
 
   private final BMLAssumeStatement[] assumptions;
 
-  public AssumeAttribute() {
-    this(null, null);
+  public AssumeAttribute(TypeLoader typeLoader) {
+    super(NAME);
+    this.typeLoader = typeLoader;
+    this.labels = null;
+    this.assumptions = null;
   }
 
   public AssumeAttribute(Label[] labels, BMLAssumeStatement[] assumptions) {
     super(NAME);
+    this.typeLoader = null;
     this.labels = labels;
     this.assumptions = assumptions;
   }
@@ -50,7 +57,7 @@ public class AssumeAttribute extends Attribute {
       char[] buf,
       int codeOff,
       Label[] labels) {
-    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf);
+    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf, typeLoader);
 
     int assumptionCount = reader.readShort();
     Label[] assumptionLabels = new Label[assumptionCount];
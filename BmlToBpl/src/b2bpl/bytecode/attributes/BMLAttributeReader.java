@@ -55,12 +55,16 @@ public class BMLAttributeReader {
 
   private final char[] buffer;
 
+  private final TypeLoader typeLoader;
+
   public BMLAttributeReader(
       ClassReader classReader,
       int offset,
       int length,
-      char[] buffer) {
+      char[] buffer,
+      TypeLoader typeLoader) {
     this.classReader = classReader;
+    this.typeLoader = typeLoader;
     this.current = offset;
     this.end = offset + length;
     this.buffer = buffer;
@@ -273,9 +277,9 @@ public class BMLAttributeReader {
     String desc = classReader.readUTF8(cpIndex + 2, buffer);
 
     return new BMLFieldExpression(
-        TypeLoader.getClassType(owner),
+        typeLoader.getClassType(owner),
         name,
-        JType.fromDescriptor(desc),
+        JType.fromDescriptor(desc, typeLoader),
         isGhostField);
   }
 
@@ -423,9 +427,9 @@ public class BMLAttributeReader {
     String desc = classReader.readUTF8(cpIndex + 2, buffer);
 
     return new BMLFieldStoreRef(
-        TypeLoader.getClassType(owner),
+        typeLoader.getClassType(owner),
         name,
-        JType.fromDescriptor(desc),
+        JType.fromDescriptor(desc, typeLoader),
         isGhostField);
   }
 
@@ -446,7 +450,7 @@ public class BMLAttributeReader {
     // data offset as argument and simply skip the actual index.
     String descriptor = classReader.readUTF8(current, buffer);
     readShort();
-    return JType.fromDescriptor(descriptor);
+    return JType.fromDescriptor(descriptor, typeLoader);
   }
 
   public int peekByte() throws TroubleException {
@@ -51,7 +51,7 @@ public class ClassInvariantAttribute extends Attribute {
       char[] buf,
       int codeOff,
       Label[] labels) {
-    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf);
+    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf, owner.getTypeLoader());
 
     // FIXME[om]: This does not correspond to the attribute format of the Mobius project!
     int invariantCount = 1;//reader.readShort();
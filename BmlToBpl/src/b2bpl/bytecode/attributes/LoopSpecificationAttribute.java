@@ -6,6 +6,7 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 
+import b2bpl.bytecode.TypeLoader;
 import b2bpl.bytecode.bml.ast.BMLExpression;
 import b2bpl.bytecode.bml.ast.BMLLoopInvariant;
 import b2bpl.bytecode.bml.ast.BMLLoopModifiesClause;
@@ -19,18 +20,24 @@ public class LoopSpecificationAttribute extends Attribute {
 
   public static final String NAME = "LoopSpecification";
 
+  private final TypeLoader typeLoader;
+
   private final Label[] labels;
 
   private final BMLLoopSpecification[] loopSpecifications;
 
-  public LoopSpecificationAttribute() {
-    this(null, null);
+  public LoopSpecificationAttribute(TypeLoader typeLoader) {
+    super(NAME);
+    this.typeLoader = typeLoader;
+    this.labels = null;
+    this.loopSpecifications = null;
   }
 
   public LoopSpecificationAttribute(
       Label[] labels,
       BMLLoopSpecification[] loopSpecifications) {
     super(NAME);
+    this.typeLoader = null;
     this.labels = labels;
     this.loopSpecifications = loopSpecifications;
   }
@@ -56,7 +63,7 @@ public class LoopSpecificationAttribute extends Attribute {
       char[] buf,
       int codeOff,
       Label[] labels) {
-    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf);
+    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf, typeLoader);
 
     int loopCount = reader.readShort();
     Label[] specLabels = new Label[loopCount];
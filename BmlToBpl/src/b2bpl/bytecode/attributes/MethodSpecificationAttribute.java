@@ -7,6 +7,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 
 import b2bpl.bytecode.JType;
+import b2bpl.bytecode.TypeLoader;
 import b2bpl.bytecode.bml.ast.BMLEnsuresClause;
 import b2bpl.bytecode.bml.ast.BMLExpression;
 import b2bpl.bytecode.bml.ast.BMLExsuresClause;
@@ -22,14 +23,19 @@ public class MethodSpecificationAttribute extends Attribute {
 
   public static final String NAME = "MethodSpecification";
 
+  private final TypeLoader typeLoader;
+
   private final BMLMethodSpecification specification;
 
-  public MethodSpecificationAttribute() {
-    this(null);
+  public MethodSpecificationAttribute(TypeLoader typeLoader) {
+    super(NAME);
+    this.typeLoader = typeLoader;
+    this.specification = null;
   }
 
   public MethodSpecificationAttribute(BMLMethodSpecification specification) {
     super(NAME);
+    this.typeLoader = null;
     this.specification = specification;
   }
 
@@ -50,7 +56,7 @@ public class MethodSpecificationAttribute extends Attribute {
       char[] buf,
       int codeOff,
       Label[] labels) {
-    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf);
+    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf, typeLoader);
 
     BMLPredicate predicate = reader.readPredicate();
     BMLRequiresClause requires = new BMLRequiresClause(predicate);
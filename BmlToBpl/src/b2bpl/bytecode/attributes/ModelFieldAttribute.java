@@ -48,7 +48,7 @@ public class ModelFieldAttribute extends Attribute {
       char[] buf,
       int codeOff,
       Label[] labels) {
-    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf);
+    BMLAttributeReader reader = new BMLAttributeReader(cr, off, len, buf, owner.getTypeLoader());
 
     int fieldCount = reader.readShort();
     BCField[] fields = new BCField[fieldCount];
@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import b2bpl.Main;
+import b2bpl.Project;
 import b2bpl.bpl.ast.BPLBinaryArithmeticExpression;
 import b2bpl.bpl.ast.BPLBinaryLogicalExpression;
 import b2bpl.bpl.ast.BPLBoolLiteral;
@@ -589,12 +589,14 @@ public final class CodeGenerator implements ITranslationConstants {
     return new BPLLogicalNotExpression(operand);
   }
 
-  //@ requires operands != null;
-  public static BPLExpression logicalAnd(BPLExpression... operands) {
+  //@ requires project != null && operands != null;
+  public static BPLExpression logicalAnd(
+      Project project,
+      BPLExpression... operands) {
     // Filter all expressions that are not of type BPLBoolLiteral.TRUE 
     List<BPLExpression> ops = new ArrayList<BPLExpression>();
     
-    if (Main.getProject().simplifyLogicalExpressions()) {
+    if (project.simplifyLogicalExpressions()) {
       // Simplify logical expression (ignore "true" expressions)
       for (BPLExpression expr : operands) {
         if (expr != BPLBoolLiteral.TRUE) {
@@ -623,12 +625,14 @@ public final class CodeGenerator implements ITranslationConstants {
     return null;
   }
 
-  //@ requires operands != null;
-  public static BPLExpression logicalOr(BPLExpression... operands) {
+  //@ requires project != null && operands != null;
+  public static BPLExpression logicalOr(
+      Project project,
+      BPLExpression... operands) {
     // Filter all expressions that are not of type BPLBoolLiteral.FALSE 
     List<BPLExpression> ops = new ArrayList<BPLExpression>();
     
-    if (Main.getProject().simplifyLogicalExpressions()) {
+    if (project.simplifyLogicalExpressions()) {
       for (BPLExpression expr : operands) {
         if (expr != BPLBoolLiteral.FALSE) {
           ops.add(expr);
@@ -656,12 +660,15 @@ public final class CodeGenerator implements ITranslationConstants {
     return null;
   }
 
-  //@ requires left != null && right != null;
+  //@ requires project != null && left != null && right != null;
   //@ ensures \result != null;
-  public static BPLExpression implies(BPLExpression left, BPLExpression right) {
+  public static BPLExpression implies(
+      Project project,
+      BPLExpression left,
+      BPLExpression right) {
     
     // Simplify expression if flag it set
-    if (Main.getProject().simplifyLogicalExpressions()) {
+    if (project.simplifyLogicalExpressions()) {
       if (left == BPLBoolLiteral.TRUE) {
         if (right == BPLBoolLiteral.TRUE) {
           return BPLBoolLiteral.TRUE;
@@ -866,9 +873,11 @@ public final class CodeGenerator implements ITranslationConstants {
         expression);
   }
 
-  //@ requires expressions != null;
-  public static BPLTrigger trigger(BPLExpression... expressions) {
-    if (Main.getProject().useTriggers()) {
+  //@ requires project != null && expressions != null;
+  public static BPLTrigger trigger(
+      Project project,
+      BPLExpression... expressions) {
+    if (project.useTriggers()) {
       return new BPLTrigger(expressions);
     } else {
       return null;
@@ -1,5 +1,6 @@
 package b2bpl.translation;
 
+import b2bpl.Project;
 import b2bpl.bpl.ast.BPLExpression;
 import b2bpl.bytecode.BCField;
 import b2bpl.bytecode.JType;
@@ -79,4 +80,11 @@ public interface ITranslationContext {
    *                 literal.
    */
   BPLExpression translateClassLiteral(JType literal);
+
+  /**
+   * Returns the project containing the settings of the translation.
+   *
+   * @return  The project being translated.
+   */
+  Project getProject();
 }
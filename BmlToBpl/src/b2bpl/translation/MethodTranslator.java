@@ -29,7 +29,6 @@ import static b2bpl.translation.CodeGenerator.heapNew;
 import static b2bpl.translation.CodeGenerator.heapNewArray;
 import static b2bpl.translation.CodeGenerator.icast;
 import static b2bpl.translation.CodeGenerator.ifThenElse;
-import static b2bpl.translation.CodeGenerator.implies;
 import static b2bpl.translation.CodeGenerator.inv;
 import static b2bpl.translation.CodeGenerator.isEqual;
 import static b2bpl.translation.CodeGenerator.isExceptionalReturnState;
@@ -41,9 +40,7 @@ import static b2bpl.translation.CodeGenerator.isSubtype;
 import static b2bpl.translation.CodeGenerator.ival;
 import static b2bpl.translation.CodeGenerator.less;
 import static b2bpl.translation.CodeGenerator.lessEqual;
-import static b2bpl.translation.CodeGenerator.logicalAnd;
 import static b2bpl.translation.CodeGenerator.logicalNot;
-import static b2bpl.translation.CodeGenerator.logicalOr;
 import static b2bpl.translation.CodeGenerator.modulo;
 import static b2bpl.translation.CodeGenerator.multiArrayAlloc;
 import static b2bpl.translation.CodeGenerator.multiply;
@@ -70,7 +67,6 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import b2bpl.Main;
 import b2bpl.Project;
 import b2bpl.bpl.ast.BPLAssertCommand;
 import b2bpl.bpl.ast.BPLAssignmentCommand;
@@ -111,7 +107,6 @@ import b2bpl.bytecode.JBaseType;
 import b2bpl.bytecode.JClassType;
 import b2bpl.bytecode.JNullType;
 import b2bpl.bytecode.JType;
-import b2bpl.bytecode.TypeLoader;
 import b2bpl.bytecode.analysis.BasicBlock;
 import b2bpl.bytecode.analysis.ControlFlowGraph;
 import b2bpl.bytecode.analysis.Edge;
@@ -941,7 +936,7 @@ public class MethodTranslator implements ITranslationConstants {
     }
 
     // Remove redundant (empty) clauses
-    if (Main.getProject().simplifyLogicalExpressions()) {
+    if (project.simplifyLogicalExpressions()) {
       for (int i = ensuresClauses.size() - 1; i >= 0; i--) {
         if (ensuresClauses.get(i).getExpression() == BPLBoolLiteral.TRUE) {
           ensuresClauses.remove(i);
@@ -2333,20 +2328,20 @@ public class MethodTranslator implements ITranslationConstants {
    * objects are stored in {@link modifiedObjects}.
    * 
    */
-  private static HashMap<String, ArrayList<String>> aliasMap = new HashMap<String, ArrayList<String>>();
+  private HashMap<String, ArrayList<String>> aliasMap = new HashMap<String, ArrayList<String>>();
  
   /**
    * Contains all modified objects (only method arguments or globally defined values).
    * The invariants of these objects need to be checked at the end of method bodies.
    */
-  private static ArrayList<BPLVariableExpression> modifiedVariables = new ArrayList<BPLVariableExpression>();
+  private ArrayList<BPLVariableExpression> modifiedVariables = new ArrayList<BPLVariableExpression>();
   
   /**
    * Contains all modified heap locations for the current method.
    * The invariants of the objects located at the given locations on the heap
    * ned to be checked at the end of method bodies.
    */
-  private static ArrayList<ModifiedHeapLocation> modifiedHeapLocations = new ArrayList<ModifiedHeapLocation>();
+  private ArrayList<ModifiedHeapLocation> modifiedHeapLocations = new ArrayList<ModifiedHeapLocation>();
   
   /**
    * Adds a new alias to our data structure.
@@ -2354,7 +2349,7 @@ public class MethodTranslator implements ITranslationConstants {
    * @param alias name of the new (local) variable, e.g. register or stack variable
    * @requires actualRef != null && alias != null;
    */
-  private static void addAlias(String actualRef, String alias) {
+  private void addAlias(String actualRef, String alias) {
     ArrayList<String> existingAliases;
     
     // Find existing aliases
@@ -2398,7 +2393,7 @@ public class MethodTranslator implements ITranslationConstants {
    * @return name of the actual variable (i.e. method argument or global variable)
    * @requires alias != null;
    */
-  private static ArrayList<String> getAliasedValues(String alias) {
+  private ArrayList<String> getAliasedValues(String alias) {
     
     // TODO: remove
     // dump current hash table
@@ -2424,7 +2419,7 @@ public class MethodTranslator implements ITranslationConstants {
    * @param v BPLVariableExpression containing the BPLVariable object from the modified variable.
    * @requires v != null;
    */
-  private static void addModifiedVariable(BPLVariableExpression v) {
+  private void addModifiedVariable(BPLVariableExpression v) {
     for (BPLVariableExpression ve : modifiedVariables) {
       if (ve.getIdentifier() == v.getIdentifier()) return;
     }
@@ -2437,7 +2432,7 @@ public class MethodTranslator implements ITranslationConstants {
    * @param mhl ModidifedHeapLocation containting the heap location of the modified object.
    * @requires mhl != null;
    */
-  public static void addModifiedHeapLocation(ModifiedHeapLocation mhl) {
+  public void addModifiedHeapLocation(ModifiedHeapLocation mhl) {
     if (!modifiedHeapLocations.contains(mhl)) {
       modifiedHeapLocations.add(mhl);
     }
@@ -2489,6 +2484,20 @@ public class MethodTranslator implements ITranslationConstants {
     return matcher.find();
   }
   
+  // Code generators which depend on the settings of the project.
+
+  private BPLExpression logicalAnd(BPLExpression... operands) {
+    return CodeGenerator.logicalAnd(project, operands);
+  }
+
+  private BPLExpression logicalOr(BPLExpression... operands) {
+    return CodeGenerator.logicalOr(project, operands);
+  }
+
+  private BPLExpression implies(BPLExpression left, BPLExpression right) {
+    return CodeGenerator.implies(project, left, right);
+  }
+
   /**
    * The visitor performing the actual translation of the bytecode instructions.
    * 
@@ -2537,7 +2546,8 @@ public class MethodTranslator implements ITranslationConstants {
       // an exception handler whose handler type is a proper subtype of the
       // runtime exception (as is usually necessary for other exceptions thrown
       // e.g. by method calls or the ATHROW instruction).
-      JType exception = TypeLoader.getClassType(exceptionName);
+      JType exception =
+        method.getOwner().getTypeLoader().getClassType(exceptionName);
       Set<String> labels = new LinkedHashSet<String>();
       for (ExceptionHandler handler : method.getExceptionHandlers()) {
         if (handler.isActiveFor(handle)) {
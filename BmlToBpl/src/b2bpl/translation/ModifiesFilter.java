@@ -6,10 +6,8 @@ import static b2bpl.translation.CodeGenerator.fieldAccess;
 import static b2bpl.translation.CodeGenerator.fieldLoc;
 import static b2bpl.translation.CodeGenerator.forall;
 import static b2bpl.translation.CodeGenerator.get;
-import static b2bpl.translation.CodeGenerator.implies;
 import static b2bpl.translation.CodeGenerator.less;
 import static b2bpl.translation.CodeGenerator.lessEqual;
-import static b2bpl.translation.CodeGenerator.logicalAnd;
 import static b2bpl.translation.CodeGenerator.notEqual;
 import static b2bpl.translation.CodeGenerator.quantVarName;
 import static b2bpl.translation.CodeGenerator.rval;
@@ -191,6 +189,17 @@ public class ModifiesFilter {
     return logicalAnd(expressions);
   }
 
+  // Code generators which depend on the settings of the project being
+  // translated, known only while translating.
+
+  private BPLExpression logicalAnd(BPLExpression... operands) {
+    return CodeGenerator.logicalAnd(context.getProject(), operands);
+  }
+
+  private BPLExpression implies(BPLExpression left, BPLExpression right) {
+    return CodeGenerator.implies(context.getProject(), left, right);
+  }
+
   /**
    * The visitor performing the actual translation of the BML store references.
    *
@@ -18,7 +18,6 @@ import static b2bpl.translation.CodeGenerator.forall;
 import static b2bpl.translation.CodeGenerator.greater;
 import static b2bpl.translation.CodeGenerator.greaterEqual;
 import static b2bpl.translation.CodeGenerator.icast;
-import static b2bpl.translation.CodeGenerator.implies;
 import static b2bpl.translation.CodeGenerator.int2bool;
 import static b2bpl.translation.CodeGenerator.isEqual;
 import static b2bpl.translation.CodeGenerator.isEquiv;
@@ -27,9 +26,7 @@ import static b2bpl.translation.CodeGenerator.isSubtype;
 import static b2bpl.translation.CodeGenerator.ival;
 import static b2bpl.translation.CodeGenerator.less;
 import static b2bpl.translation.CodeGenerator.lessEqual;
-import static b2bpl.translation.CodeGenerator.logicalAnd;
 import static b2bpl.translation.CodeGenerator.logicalNot;
-import static b2bpl.translation.CodeGenerator.logicalOr;
 import static b2bpl.translation.CodeGenerator.modulo;
 import static b2bpl.translation.CodeGenerator.multiply;
 import static b2bpl.translation.CodeGenerator.notEqual;
@@ -384,6 +381,21 @@ public class SpecificationTranslator {
     return "old(" + s + ")";
   }
 
+  // Code generators which depend on the settings of the project being
+  // translated, known only while translating.
+
+  private BPLExpression logicalAnd(BPLExpression... operands) {
+    return CodeGenerator.logicalAnd(context.getProject(), operands);
+  }
+
+  private BPLExpression logicalOr(BPLExpression... operands) {
+    return CodeGenerator.logicalOr(context.getProject(), operands);
+  }
+
+  private BPLExpression implies(BPLExpression left, BPLExpression right) {
+    return CodeGenerator.implies(context.getProject(), left, right);
+  }
+
   /**
    * The visitor performing the actual translation of the BML specification.
    *
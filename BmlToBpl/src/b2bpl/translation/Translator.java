@@ -24,7 +24,6 @@ import static b2bpl.translation.CodeGenerator.heapAdd;
 import static b2bpl.translation.CodeGenerator.heapNew;
 import static b2bpl.translation.CodeGenerator.icast;
 import static b2bpl.translation.CodeGenerator.ifThenElse;
-import static b2bpl.translation.CodeGenerator.implies;
 import static b2bpl.translation.CodeGenerator.initVal;
 import static b2bpl.translation.CodeGenerator.int2bool;
 import static b2bpl.translation.CodeGenerator.inv;
@@ -43,9 +42,7 @@ import static b2bpl.translation.CodeGenerator.isValueType;
 import static b2bpl.translation.CodeGenerator.ival;
 import static b2bpl.translation.CodeGenerator.less;
 import static b2bpl.translation.CodeGenerator.lessEqual;
-import static b2bpl.translation.CodeGenerator.logicalAnd;
 import static b2bpl.translation.CodeGenerator.logicalNot;
-import static b2bpl.translation.CodeGenerator.logicalOr;
 import static b2bpl.translation.CodeGenerator.ltyp;
 import static b2bpl.translation.CodeGenerator.modulo;
 import static b2bpl.translation.CodeGenerator.multiArrayAlloc;
@@ -64,7 +61,6 @@ import static b2bpl.translation.CodeGenerator.rval;
 import static b2bpl.translation.CodeGenerator.sub;
 import static b2bpl.translation.CodeGenerator.toint;
 import static b2bpl.translation.CodeGenerator.toref;
-import static b2bpl.translation.CodeGenerator.trigger;
 import static b2bpl.translation.CodeGenerator.typ;
 import static b2bpl.translation.CodeGenerator.typeObject;
 import static b2bpl.translation.CodeGenerator.update;
@@ -76,7 +72,13 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import b2bpl.CompilationAbortedException;
 import b2bpl.Project;
 import b2bpl.bpl.ast.BPLAxiom;
 import b2bpl.bpl.ast.BPLBoolLiteral;
@@ -94,11 +96,13 @@ import b2bpl.bpl.ast.BPLProgram;
 import b2bpl.bpl.ast.BPLRequiresClause;
 import b2bpl.bpl.ast.BPLSpecification;
 import b2bpl.bpl.ast.BPLSpecificationClause;
+import b2bpl.bpl.ast.BPLTrigger;
 import b2bpl.bpl.ast.BPLType;
 import b2bpl.bpl.ast.BPLTypeDeclaration;
 import b2bpl.bpl.ast.BPLTypeName;
 import b2bpl.bpl.ast.BPLVariable;
 import b2bpl.bpl.ast.BPLVariableDeclaration;
+import b2bpl.bpl.ast.BPLVariableExpression;
 import b2bpl.bytecode.BCField;
 import b2bpl.bytecode.BCMethod;
 import b2bpl.bytecode.JArrayType;
@@ -132,6 +136,10 @@ import b2bpl.bytecode.bml.ast.BMLExpression;
  *     The maximal magnitude of integer constants to represent explicitly in
  *     the BoogiePL program (see {@link Project#getMaxIntConstant()}).
  *   </li>
+ *   <li>
+ *     The number of threads on which methods are translated
+ *     (see {@link Project#getThreadCount()}).
+ *   </li>
  * </ul>
  * </p>
  *
@@ -174,9 +182,21 @@ import b2bpl.bytecode.bml.ast.BMLExpression;
  * should be used to translate those references.
  * </p>
  *
+ * <p>
+ * Methods may be translated in parallel, each by its own
+ * {@code MethodTranslator}. Since translating a reference may add
+ * declarations to the program, a method translated in parallel gets a
+ * context which only records the references. When the procedure of the method
+ * is added to the program, its references are first translated again, in the
+ * same order, by the context shared by the whole program. Thus, the resulting
+ * BoogiePL program is the same as if the methods were translated one after
+ * the other.
+ * </p>
+ *
  * @see Project#isThisInvariantsOnly()
  * @see Project#isModelRuntimeExceptions()
  * @see Project#getMaxIntConstant()
+ * @see Project#getThreadCount()
  * @see SpecificationTranslator
  * @see MethodTranslator
  * @see ITranslationContext
@@ -188,6 +208,9 @@ public class Translator implements ITranslationConstants {
   /** The project containing the settings of the translation. */
   private final Project project;
 
+  /** The loader of the bytecode classes being translated. */
+  private final TypeLoader typeLoader;
+
   /**
    * The {@code TranslationContext} responsible for resolving special
    * references (type/field/string/... references) encountered in the bytecode
@@ -226,13 +249,15 @@ public class Translator implements ITranslationConstants {
    * bytecode classes under the same configuration (given by the here provided
    * {@code project}).
    *
-   * @param project  The project containing the configurations of the
-   *                 translation.
+   * @param project     The project containing the configurations of the
+   *                    translation.
+   * @param typeLoader  The loader of the bytecode classes to translate.
    *
    * @see #translate(JClassType[])
    */
-  public Translator(Project project) {
+  public Translator(Project project, TypeLoader typeLoader) {
     this.project = project;
+    this.typeLoader = typeLoader;
   }
 
   /**
@@ -246,22 +271,84 @@ public class Translator implements ITranslationConstants {
   public BPLProgram translate(JClassType... types) {
     context = new Context();
     declarations = new ArrayList<BPLDeclaration>();
-    MethodTranslator methodTranslator = new MethodTranslator(project);
     generateTheory();
+    List<BCMethod> methods = new ArrayList<BCMethod>();
     for (JClassType type : types) {
       for (BCMethod method : type.getMethods()) {
         if (!method.isAbstract()
             && !method.isNative()
             && !method.isSynthetic()) {
-          addDeclaration(methodTranslator.translate(context, method));
+          methods.add(method);
         }
       }
     }
+    if (project.getThreadCount() > 1 && methods.size() > 1) {
+      translateInParallel(methods);
+    } else {
+      MethodTranslator methodTranslator = new MethodTranslator(project);
+      for (BCMethod method : methods) {
+        addDeclaration(methodTranslator.translate(context, method));
+      }
+    }
     flushPendingTheory();
     return new BPLProgram(
         declarations.toArray(new BPLDeclaration[declarations.size()]));
   }
 
+  /**
+   * Translates the given {@code methods} on {@link Project#getThreadCount()}
+   * threads and adds the resulting procedures to the BoogiePL program, in the
+   * order of {@code methods}. Each procedure is preceded by the declarations
+   * triggered by the references in its method.
+   *
+   * @param methods  The bytecode methods to translate.
+   */
+  private void translateInParallel(List<BCMethod> methods) {
+    ExecutorService pool = Executors.newFixedThreadPool(
+        Math.min(project.getThreadCount(), methods.size()));
+    try {
+      List<MethodTask> tasks = new ArrayList<MethodTask>();
+      List<Future<BPLProcedure>> procedures =
+        new ArrayList<Future<BPLProcedure>>();
+      for (BCMethod method : methods) {
+        MethodTask task = new MethodTask(method);
+        tasks.add(task);
+        procedures.add(pool.submit(task));
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        BPLProcedure procedure = getResult(procedures.get(i));
+        tasks.get(i).replay();
+        addDeclaration(procedure);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the given {@code future} and returns its result. If the
+   * computation failed, its exception is rethrown.
+   *
+   * @param future  The computation whose result to return.
+   * @return        The result of the given {@code future}.
+   */
+  private static <T> T getResult(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompilationAbortedException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
   /**
    * Adds the given {@code comment} to the set of already accumulated comments
    * which will be attach to the next declaration of the BoogiePL program being
@@ -446,6 +533,71 @@ public class Translator implements ITranslationConstants {
     return INT_LITERAL_PREFIX + String.valueOf(literal).replace('-', 'm');
   }
 
+  /**
+   * Returns the name of a BoogiePL constant to be used to reference the given
+   * class {@code literal}.
+   *
+   * @param literal  The type whose class literal is referenced.
+   * @return         The name of the constant representing the given class
+   *                 {@code literal}.
+   */
+  private String getClassLiteralName(JType literal) {
+    return GLOBAL_VAR_PREFIX + literal.getName() + CLASS_LITERAL_SUFFIX;
+  }
+
+  /**
+   * Returns whether the given integer {@code literal} is represented as is
+   * in the BoogiePL program, instead of by a symbolic constant.
+   *
+   * @param literal  The integer literal.
+   * @return         Whether the magnitude of the given {@code literal} is
+   *                 at most {@link Project#getMaxIntConstant()}.
+   */
+  private boolean isExplicitIntLiteral(long literal) {
+    return (-project.getMaxIntConstant() <= literal)
+        && (literal <= project.getMaxIntConstant());
+  }
+
+  /**
+   * Returns the BoogiePL expression representing the given {@code type}
+   * reference, without generating any declarations.
+   *
+   * @param type  The type reference.
+   * @return      A BoogiePL expression of type <i>name</i> representing the
+   *              given {@code type}.
+   */
+  private BPLExpression typeReferenceExpression(JType type) {
+    if (type.isBaseType()) {
+      return var(getValueTypeName((JBaseType) type));
+    } else if (type.isClassType()) {
+      return var(getClassTypeName((JClassType) type));
+    } else {
+      // We must have an array type.
+      JArrayType arrayType = (JArrayType) type;
+      BPLExpression typeExpr =
+        typeReferenceExpression(arrayType.getComponentType());
+      for (int i = 0; i < arrayType.getDimension(); i++) {
+        typeExpr = arrayType(typeExpr);
+      }
+      return typeExpr;
+    }
+  }
+
+  /**
+   * Returns the BoogiePL expression representing the given integer
+   * {@code literal}, without generating any declarations.
+   *
+   * @param literal  The integer literal.
+   * @return         A BoogiePL expression of type <i>int</i> representing
+   *                 the given {@code literal}.
+   */
+  private BPLExpression intLiteralExpression(long literal) {
+    if (isExplicitIntLiteral(literal)) {
+      return new BPLIntLiteral((int) literal);
+    }
+    return var(getSymbolicIntLiteralName(literal));
+  }
+
   /**
    * Convenience method for translating a type reference.
    *
@@ -1781,10 +1933,10 @@ public class Translator implements ITranslationConstants {
     }
 
     {
-      JType object = TypeLoader.getClassType("java.lang.Object");
-      JType cloneable = TypeLoader.getClassType("java.lang.Cloneable");
-      JType throwable = TypeLoader.getClassType("java.lang.Throwable");
-      JType serializable = TypeLoader.getClassType("java.io.Serializable");
+      JType object = typeLoader.getClassType("java.lang.Object");
+      JType cloneable = typeLoader.getClassType("java.lang.Cloneable");
+      JType throwable = typeLoader.getClassType("java.lang.Throwable");
+      JType serializable = typeLoader.getClassType("java.io.Serializable");
 
       String t = quantVarName("t");
       BPLVariable tVar = new BPLVariable(t, BPLBuiltInType.NAME);
@@ -1852,7 +2004,7 @@ public class Translator implements ITranslationConstants {
       //            Should later be replaced with either an on-the-fly compilation
       //            of (BML annotated) Java Runtime Libraries or a
       //            precompiled BoogiePL version.
-      typeRef(TypeLoader.getClassType("java.lang.Exception"));
+      typeRef(typeLoader.getClassType("java.lang.Exception"));
       declarations.add(axiomatizeHelperProcedure("java.lang.Object..init", "$java.lang.Object"));
       declarations.add(axiomatizeHelperProcedure("java.lang.Throwable..init", "$java.lang.Throwable"));
       declarations.add(axiomatizeHelperProcedure("java.lang.Exception..init", "$java.lang.Exception")); // $java.lang.Throwable is sufficient
@@ -2243,6 +2395,24 @@ public class Translator implements ITranslationConstants {
     
   }
 
+  // Code generators which depend on the settings of the project.
+
+  private BPLExpression logicalAnd(BPLExpression... operands) {
+    return CodeGenerator.logicalAnd(project, operands);
+  }
+
+  private BPLExpression logicalOr(BPLExpression... operands) {
+    return CodeGenerator.logicalOr(project, operands);
+  }
+
+  private BPLExpression implies(BPLExpression left, BPLExpression right) {
+    return CodeGenerator.implies(project, left, right);
+  }
+
+  private BPLTrigger trigger(BPLExpression... expressions) {
+    return CodeGenerator.trigger(project, expressions);
+  }
+
   /**
    * Implementation of the {@link ITranslationContext} interfTwo heaps are equal if they are indistinguishable by the alive and get functions.ace which handles
    * the translation of different kinds of references.
@@ -2379,22 +2549,14 @@ public class Translator implements ITranslationConstants {
         addInvariantDeclaration(classType);
       }
 
+      // An array type references its component type.
+      if (type.isArrayType()) {
+        translateTypeReference(((JArrayType) type).getComponentType());
+      }
+
       // Now, do the actual translation of the type reference to be used in the
       // BoogiePL program.
-      if (type.isBaseType()) {
-        return var(getValueTypeName((JBaseType) type));
-      } else if (type.isClassType()) {
-        return var(getClassTypeName((JClassType) type));
-      } else {
-        // We must have an array type.
-        JArrayType arrayType = (JArrayType) type;
-        BPLExpression typeExpr =
-          translateTypeReference(arrayType.getComponentType());
-        for (int i = 0; i < arrayType.getDimension(); i++) {
-          typeExpr = arrayType(typeExpr);
-        }
-        return typeExpr;
-      }
+      return typeReferenceExpression(type);
     }
 
     /**
@@ -2460,21 +2622,14 @@ public class Translator implements ITranslationConstants {
      * <i>int</i>.
      */
     public BPLExpression translateIntLiteral(long literal) {
-      // If the integer value is in the desired range, the literal is translated
-      // as is.
-      if ((-project.getMaxIntConstant() <= literal)
-          && (literal <= project.getMaxIntConstant())) {
-        return new BPLIntLiteral((int) literal);
-      }
-
       // If the integer's magnitude is too large, we represent it by a symbolic
-      // constant.
-      if (symbolicIntLiterals.add(literal)) {
+      // constant. Otherwise, the literal is translated as is.
+      if (!isExplicitIntLiteral(literal) && symbolicIntLiterals.add(literal)) {
         addConstants(new BPLVariable(
             getSymbolicIntLiteralName(literal),
             BPLBuiltInType.INT));
       }
-      return var(getSymbolicIntLiteralName(literal));
+      return intLiteralExpression(literal);
     }
 
     /**
@@ -2492,7 +2647,7 @@ public class Translator implements ITranslationConstants {
 
         // State that the object representing the literal is of type String and
         // that it is alive in any heap.
-        JType string = TypeLoader.getClassType("java.lang.String");
+        JType string = typeLoader.getClassType("java.lang.String");
         String h = quantVarName("h");
         BPLVariable hVar = new BPLVariable(h, new BPLTypeName(HEAP_TYPE));
         addAxiom(forall(
@@ -2513,15 +2668,14 @@ public class Translator implements ITranslationConstants {
      * <i>ref</i>.
      */
     public BPLExpression translateClassLiteral(JType literal) {
-      String name =
-        GLOBAL_VAR_PREFIX + literal.getName() + CLASS_LITERAL_SUFFIX;
+      String name = getClassLiteralName(literal);
       if (classLiterals.add(literal)) {
         // Declare the constant representing the given field.
         addConstants(new BPLVariable(name, BPLBuiltInType.REF));
 
         // State that the object representing the literal is of type Class and
         // that it is alive in any heap.
-        JType clazz = TypeLoader.getClassType("java.lang.Class");
+        JType clazz = typeLoader.getClassType("java.lang.Class");
         String h = quantVarName("h");
         BPLVariable hVar = new BPLVariable(h, new BPLTypeName(HEAP_TYPE));
         addAxiom(forall(
@@ -2535,5 +2689,128 @@ public class Translator implements ITranslationConstants {
       }
       return var(name);
     }
+
+    public Project getProject() {
+      return project;
+    }
+  }
+
+  /**
+   * The translation of a single bytecode method, which may run on any thread.
+   * The task also serves as the translation context of the method: it
+   * records the references being translated and returns expressions for them,
+   * but it generates no declarations. Those are generated by
+   * {@link #replay()}, on the thread building the BoogiePL program.
+   */
+  private final class MethodTask
+      implements Callable<BPLProcedure>, ITranslationContext {
+
+    /** The bytecode method to translate. */
+    private final BCMethod method;
+
+    /**
+     * The translations of the references encountered in the method, in the
+     * order in which they were encountered, to be done by the shared context.
+     */
+    private final List<Runnable> references = new ArrayList<Runnable>();
+
+    public MethodTask(BCMethod method) {
+      this.method = method;
+    }
+
+    public BPLProcedure call() {
+      return new MethodTranslator(project).translate(this, method);
+    }
+
+    /**
+     * Translates the recorded references with the context of the whole
+     * program, thereby generating their declarations. Must be called after
+     * the method was translated.
+     */
+    public void replay() {
+      for (Runnable reference : references) {
+        reference.run();
+      }
+    }
+
+    public BPLExpression translateTypeReference(final JType type) {
+      references.add(new Runnable() {
+        public void run() {
+          context.translateTypeReference(type);
+        }
+      });
+      return typeReferenceExpression(type);
+    }
+
+    public BPLExpression translateFieldReference(final BCField field) {
+      references.add(new Runnable() {
+        public void run() {
+          context.translateFieldReference(field);
+        }
+      });
+      return var(field.getQualifiedName());
+    }
+
+    public BPLExpression translateIntLiteral(final long literal) {
+      references.add(new Runnable() {
+        public void run() {
+          context.translateIntLiteral(literal);
+        }
+      });
+      return intLiteralExpression(literal);
+    }
+
+    public BPLExpression translateStringLiteral(final String literal) {
+      final StringLiteralReference result = new StringLiteralReference();
+      references.add(new Runnable() {
+        public void run() {
+          BPLVariableExpression name =
+            (BPLVariableExpression) context.translateStringLiteral(literal);
+          result.resolve(name.getIdentifier());
+        }
+      });
+      return result;
+    }
+
+    public BPLExpression translateClassLiteral(final JType literal) {
+      references.add(new Runnable() {
+        public void run() {
+          context.translateClassLiteral(literal);
+        }
+      });
+      return var(getClassLiteralName(literal));
+    }
+
+    public Project getProject() {
+      return project;
+    }
+  }
+
+  /**
+   * A reference to a string literal, whose name is known only once the
+   * reference is replayed, since string literals are numbered in the order in
+   * which they are first encountered in the program.
+   */
+  private static final class StringLiteralReference
+      extends BPLVariableExpression {
+
+    /** The name of the constant representing the literal, once known. */
+    private String name;
+
+    public StringLiteralReference() {
+      super(STRING_LITERAL_PREFIX);
+    }
+
+    public void resolve(String name) {
+      this.name = name;
+    }
+
+    public String getIdentifier() {
+      return name == null ? super.getIdentifier() : name;
+    }
+
+    public String toString() {
+      return getIdentifier();
+    }
   }
 }
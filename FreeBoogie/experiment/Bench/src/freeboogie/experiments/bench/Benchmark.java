@@ -0,0 +1,31 @@
+package freeboogie.experiments.bench;
+
+/**
+ * One operation of the FreeBoogie pipeline that is timed by the
+ * {@code Harness}.
+ *
+ * The harness calls {@code setUp()} once for each program, then
+ * {@code prepare()} and {@code run()} for each iteration. Only
+ * {@code run()} is timed. Its result is consumed by the harness, so
+ * that the JIT can't throw the work away.
+ */
+public abstract class Benchmark {
+  private final String name;
+
+  public Benchmark(String name) {
+    this.name = name;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /** Computes the input of {@code run()} from the program {@code text}. */
+  public abstract void setUp(String text) throws Exception;
+
+  /** Called before each {@code run()}, without being timed. */
+  public void prepare() throws Exception {}
+
+  /** Does the measured work and returns its result. */
+  public abstract Object run() throws Exception;
+}
@@ -0,0 +1,181 @@
+package freeboogie.experiments.bench;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+
+import freeboogie.ast.Implementation;
+import freeboogie.ast.Program;
+import freeboogie.ast.Transformer;
+import freeboogie.backend.SmtTerm;
+import freeboogie.backend.SmtTermBuilder;
+import freeboogie.backend.SmtTerms;
+import freeboogie.parser.FbLexer;
+import freeboogie.parser.FbParser;
+import freeboogie.tc.TypeChecker;
+import freeboogie.tc.TypeDesugarer;
+import freeboogie.vcgen.*;
+
+/**
+ * The benchmarks: parsing, typechecking, each desugarer, the two
+ * passivators, the two VC calculi, and the elimination of sharing
+ * in VCs. Each one gets as input what {@code freeboogie.Main} would
+ * give it for the same program.
+ */
+public final class Benchmarks {
+  private Benchmarks() { /* forbid instantiation */ }
+
+  /** Returns all benchmarks, in the order of the pipeline. */
+  public static List<Benchmark> all() {
+    List<Benchmark> result = Lists.newArrayList();
+    result.add(new Benchmark("parse") {
+      private String text;
+      @Override public void setUp(String text) { this.text = text; }
+      @Override public Object run() throws Exception { return parse(text); }
+    });
+    result.add(new Benchmark("typecheck") {
+      private Program program;
+      @Override public void setUp(String text) throws Exception {
+        program = parse(text);
+      }
+      @Override public Object run() throws Exception {
+        return new TypeChecker().process(program);
+      }
+    });
+    List<Transformer> before = Lists.newArrayList();
+    for (Transformer t : desugarers()) {
+      result.add(new StageBenchmark(t, before));
+      before = Lists.newArrayList(before);
+      before.add(t);
+    }
+    result.add(new StageBenchmark(new Passivator(), before));
+    result.add(new StageBenchmark(new Passificator(), before));
+    result.add(new VcBenchmark("wp", false) {
+      @Override public ACalculus<SmtTerm> calculus() {
+        return new WeakestPrecondition<SmtTerm>();
+      }
+    });
+    result.add(new VcBenchmark("sp", false) {
+      @Override public ACalculus<SmtTerm> calculus() {
+        return new StrongestPostcondition<SmtTerm>();
+      }
+    });
+    result.add(new VcBenchmark("eliminateSharing", true) {
+      @Override public ACalculus<SmtTerm> calculus() {
+        return new WeakestPrecondition<SmtTerm>();
+      }
+    });
+    return result;
+  }
+
+  /** The stages of {@code freeboogie.Main} before passivation. */
+  public static List<Transformer> desugarers() {
+    return ImmutableList.<Transformer>of(
+        new TypeDesugarer(),
+        new BreakDesugarer(),
+        new WhileDesugarer(),
+        new IfDesugarer(),
+        new MapRemover(),
+        new HavocMaker(),
+        new LoopCutter(),
+        new CallDesugarer(),
+        new HavocDesugarer(),
+        new SpecDesugarer());
+  }
+
+  public static Program parse(String text) throws RecognitionException {
+    FbLexer lexer = new FbLexer(new ANTLRStringStream(text));
+    FbParser parser = new FbParser(new CommonTokenStream(lexer));
+    parser.fileName = "generated.bpl";
+    return parser.program();
+  }
+
+  /** Times one stage, applied to the result of the stages before it. */
+  private static class StageBenchmark extends Benchmark {
+    private final Transformer stage;
+    private final List<Transformer> before;
+    private TypeChecker tc;
+    private Program program;
+
+    StageBenchmark(Transformer stage, List<Transformer> before) {
+      super(stage.name().substring(stage.name().lastIndexOf('.') + 1));
+      this.stage = stage;
+      this.before = before;
+    }
+
+    @Override public void setUp(String text) throws Exception {
+      tc = new TypeChecker();
+      program = parse(text);
+      for (Transformer t : before) program = t.process(program, tc);
+    }
+
+    // the typechecker must have seen the input last, as in Main
+    @Override public void prepare() throws Exception {
+      tc.process(program);
+    }
+
+    @Override public Object run() throws Exception {
+      return stage.process(program, tc);
+    }
+  }
+
+  /**
+   * Times building the VCs of all implementations, or eliminating
+   * sharing in them. Each run uses a fresh term builder.
+   */
+  private abstract static class VcBenchmark extends Benchmark {
+    private final boolean unshare;
+    private TypeChecker tc;
+    private Program program;
+    private SmtTermBuilder builder;
+    private List<SmtTerm> vcs;
+
+    VcBenchmark(String name, boolean unshare) {
+      super(name);
+      this.unshare = unshare;
+    }
+
+    public abstract ACalculus<SmtTerm> calculus();
+
+    @Override public void setUp(String text) throws Exception {
+      tc = new TypeChecker();
+      program = parse(text);
+      for (Transformer t : desugarers()) program = t.process(program, tc);
+      program = new Passivator().process(program, tc);
+    }
+
+    @Override public void prepare() {
+      builder = new SmtTermBuilder();
+      builder.setTypeChecker(tc);
+      FunctionRegisterer functionRegisterer = new FunctionRegisterer();
+      functionRegisterer.setBuilder(builder);
+      builder.popDef();
+      functionRegisterer.process(program, tc);
+      builder.pushDef();
+      vcs = unshare ? vcs() : null;
+    }
+
+    @Override public Object run() {
+      if (!unshare) return vcs();
+      List<SmtTerm> result = Lists.newArrayList();
+      for (SmtTerm vc : vcs) result.add(SmtTerms.eliminateSharing(vc, builder));
+      return result;
+    }
+
+    private List<SmtTerm> vcs() {
+      ACalculus<SmtTerm> calculus = calculus();
+      calculus.setBuilder(builder);
+      calculus.typeChecker(tc);
+      List<SmtTerm> result = Lists.newArrayList();
+      for (Implementation i : program.implementations()) {
+        calculus.prepareFor(i);
+        result.add(calculus.vc());
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package freeboogie.experiments.bench;
+
+import java.io.PrintStream;
+
+/**
+ * Times benchmarks the way JMH does, only simpler: a few iterations
+ * to warm up the JIT, which are thrown away, and then some measured
+ * iterations, each preceded by a garbage collection. For each
+ * benchmark and program it prints one line with the mean, the
+ * standard deviation, and the minimum, in milliseconds per run.
+ */
+public class Harness {
+  private final int warmup;
+  private final int iterations;
+  private final PrintStream out;
+
+  // written so that the results of run() are used
+  private static volatile int sink;
+
+  public Harness(int warmup, int iterations, PrintStream out) {
+    this.warmup = warmup;
+    this.iterations = iterations;
+    this.out = out;
+  }
+
+  public void header() {
+    out.println("benchmark\tnodes\tmean_ms\tsd_ms\tmin_ms");
+  }
+
+  /** Times {@code b} on the program {@code text} with about {@code nodes}. */
+  public void measure(Benchmark b, int nodes, String text) throws Exception {
+    b.setUp(text);
+    for (int i = 0; i < warmup; ++i) once(b);
+    double[] ms = new double[iterations];
+    for (int i = 0; i < iterations; ++i) {
+      System.gc();
+      ms[i] = once(b) / 1e6;
+    }
+    double sum = 0, min = Double.MAX_VALUE;
+    for (double x : ms) {
+      sum += x;
+      min = Math.min(min, x);
+    }
+    double mean = sum / iterations;
+    double var = 0;
+    for (double x : ms) var += (x - mean) * (x - mean);
+    double sd = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0;
+    out.printf("%s\t%d\t%.3f\t%.3f\t%.3f%n", b.name(), nodes, mean, sd, min);
+  }
+
+  // returns how many nanoseconds one run took
+  private static long once(Benchmark b) throws Exception {
+    b.prepare();
+    long start = System.nanoTime();
+    Object result = b.run();
+    long time = System.nanoTime() - start;
+    sink += result == null ? 0 : System.identityHashCode(result);
+    return time;
+  }
+}
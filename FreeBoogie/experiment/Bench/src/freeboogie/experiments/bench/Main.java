@@ -0,0 +1,96 @@
+package freeboogie.experiments.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import freeboogie.experiments.graphgen.*;
+
+/**
+ * Times the stages of FreeBoogie on programs made by GraphGen.
+ *
+ * Each program has one procedure whose flow graph is a random
+ * series-parallel graph with about the requested number of nodes.
+ * Each node assigns to {@code x} or to {@code dummy}, and the exit
+ * node asserts something about {@code x}, so that the VC is not
+ * trivial. The same seed gives the same programs.
+ *
+ * Usage: bench [-n NODES,NODES,...] [-d DEPTH] [-s SEED] [-w WARMUP]
+ * [-i ITERATIONS] [-b REGEX] [-o FILE]
+ *
+ * Only the benchmarks whose names match {@code REGEX} are run. If
+ * {@code -o} is given, then the biggest program is also saved in
+ * {@code FILE}, so that it can be given to {@code fb}.
+ */
+public class Main {
+  public static void main(String[] args) throws Exception {
+    String sizes = "100,1000,10000";
+    int depth = 40;
+    long seed = 0;
+    int warmup = 5;
+    int iterations = 10;
+    Pattern filter = Pattern.compile(".*");
+    String save = null;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String v = args[i + 1];
+      if (args[i].equals("-n")) sizes = v;
+      else if (args[i].equals("-d")) depth = Integer.parseInt(v);
+      else if (args[i].equals("-s")) seed = Long.parseLong(v);
+      else if (args[i].equals("-w")) warmup = Integer.parseInt(v);
+      else if (args[i].equals("-i")) iterations = Integer.parseInt(v);
+      else if (args[i].equals("-b")) filter = Pattern.compile(v);
+      else if (args[i].equals("-o")) save = v;
+      else {
+        System.err.println("Unknown option " + args[i] + ".");
+        return;
+      }
+    }
+
+    String[] nodes = sizes.split(",");
+    String[] texts = new String[nodes.length];
+    for (int i = 0; i < nodes.length; ++i)
+      texts[i] = program(Integer.parseInt(nodes[i]), depth, seed);
+    if (save != null) {
+      PrintStream ps = new PrintStream(save);
+      ps.print(texts[texts.length - 1]);
+      ps.close();
+    }
+
+    Harness harness = new Harness(warmup, iterations, System.out);
+    harness.header();
+    for (Benchmark b : Benchmarks.all()) {
+      if (!filter.matcher(b.name()).matches()) continue;
+      for (int i = 0; i < nodes.length; ++i)
+        harness.measure(b, Integer.parseInt(nodes[i]), texts[i]);
+    }
+  }
+
+  /** Returns a Boogie program with about {@code maxNodes} blocks. */
+  public static String program(int maxNodes, int maxDepth, long seed) {
+    freeboogie.experiments.graphgen.Main.random = new Random(seed);
+    Counter counter = new Counter();
+    Generator<FlowGraphPayload> generator =
+        new Generator<FlowGraphPayload>(0.3, 0.6);
+
+    // GraphGen talks on stdout while generating
+    PrintStream stdout = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      generator.generate(
+          0, maxDepth, maxNodes, new FlowGraphPayloadCreator(), counter);
+    } finally {
+      System.setOut(stdout);
+    }
+    Collection<Node<FlowGraphPayload>> all = generator.getAllNodes();
+    new FlowGraphDecorator(0.3, 0.3).decorate(all);
+    int id = 0;
+    for (Node<FlowGraphPayload> n : all) n.setId(id++);
+
+    ByteArrayOutputStream text = new ByteArrayOutputStream();
+    GraphBoogiePrinter.printBoogie(new PrintStream(text), all);
+    return text.toString()
+        .replace("  return;", "  assert x != -1;\n  return;");
+  }
+}
@@ -5,16 +5,20 @@ import java.util.List;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import genericutils.Closure;
+import genericutils.Err;
 import genericutils.Logger;
 import ie.ucd.clops.runtime.errors.CLError;
 import ie.ucd.clops.runtime.options.exception.InvalidOptionValueException;
 import org.antlr.runtime.ANTLRFileStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.objectweb.asm.ClassReader;
 
 import freeboogie.ast.*;
 import freeboogie.backend.ProverException;
+import freeboogie.bml.BplConverter;
 import freeboogie.cli.*;
 import freeboogie.parser.FbLexer;
 import freeboogie.parser.FbParser;
@@ -38,9 +42,24 @@ import static freeboogie.cli.FbCliOptionsInterface.*;
   is printed using {@code PrettyPrinter}, the flowgraphs are
   printed using {@code FlowGraphDumper}, and the symbol table is
   printed by some helper code from the {@code Main} class itself.
+  If a stats file is given, then each stage is measured by a {@code
+  Profile}, which is saved at the end of the run.
+
+  If a directory for ASTs is given, then a file that was parsed and
+  typechecked before is loaded from there, together with what the
+  typechecker computed about it, by a {@code ProgramCache}.
+
+  A class file is translated by BmlToBpl, as if its name were given
+  to {@code b2bpl.Main}, and the resulting program is converted to
+  an AST by a {@code BplConverter}, without going through text.
+
+  The same {@code Main} may {@code run()} several times, as it does
+  when it acts as a {@code Server}. The provers are then reused from
+  one run to the next, unless their configuration changes.
 
   @see freeboogie.ast.PrettyPrinter
   @see freeboogie.ast.FlowGraphDumper
+  @see freeboogie.bml.BplConverter
  */
 public class Main {
 
@@ -56,6 +75,15 @@ public class Main {
   private TcInterface tc;
   private List<Transformer> stages;
 
+  // kept between runs, together with its prover configuration
+  private VcGenerator vcgen;
+  private String proverConfiguration;
+  private File logFile;
+
+  private Profile profile; // null if stages are not measured
+  private ProgramCache programCache; // null if programs are not cached
+
+  private BplConverter bplConverter = new BplConverter();
   private PrettyPrinter prettyPrinter = new PrettyPrinter();
   private FlowGraphDumper flowGraphDumper = new FlowGraphDumper();
 
@@ -101,7 +129,17 @@ public class Main {
       FbCliUtil.printUsage();
       return;
     }
+    if (opt.isServeSet()) {
+      try {
+        new Server(this, opt.getServe()).serve();
+      } catch (IOException e) {
+        normal("Can't serve on port " + opt.getServe() + ": " +
+            e.getMessage());
+      }
+      return;
+    }
     setupLogging();
+    profile = opt.isStatsFileSet()? new Profile() : null;
     initialize();
 
     if (!opt.isFilesSet())
@@ -111,27 +149,45 @@ public class Main {
         verbose("Processing " + f.getPath());
         if (!parse(f)) continue;
         int stageCount = 0;
+        long size = profile == null? -1 : Profile.astSize(boogie);
         for (Transformer t : stages) {
           if (stageCount++ >= opt.getStageCount()) break;
           debug("  Stage: " + t.name());
+          Profile.Mark mark = profile == null? null : profile.mark();
           boogie = t.process(boogie, tc);
+          if (profile != null)
+            size = profile.stage(mark, f.getName(), t.name(), size, boogie);
           dumpState(stageCount, t.name());
         }
       } catch (ErrorsFoundException e) {
         e.report();
       }
     }
+    writeProfile();
+    logProgramCacheStatistics();
+  }
+
+  /** Kills the provers, so that the next run starts afresh. */
+  public void terminate() {
+    if (vcgen != null) vcgen.terminate();
+    vcgen = null;
   }
 
   private void setupLogging() {
     out.sink(System.out);
     out.level(opt.getReportLevel());
+    for (ReportOn c : ReportOn.values()) out.disable(c);
     for (ReportOn c : opt.getReportOn()) out.enable(c);
-    try { log.sink(opt.getLogFile()); }
-    catch (IOException e) {
-      verbose("Can't write to log file " + opt.getLogFile() + ".");
+    if (!opt.getLogFile().equals(logFile)) {
+      try {
+        log.sink(opt.getLogFile());
+        logFile = opt.getLogFile();
+      } catch (IOException e) {
+        verbose("Can't write to log file " + opt.getLogFile() + ".");
+      }
     }
     log.level(opt.getLogLevel());
+    for (LogCategories c : LogCategories.values()) log.disable(c);
     if (opt.isLogCategoriesSet()) // TODO: fix this in clops
       for (LogCategories c : opt.getLogCategories()) log.enable(c);
     log.verbose(true);
@@ -140,9 +196,15 @@ public class Main {
   private void initialize() {
     // Initialize typechecker.
     tc = new TypeChecker();
+    if (!opt.isAstCacheDirSet())
+      programCache = null;
+    else if (programCache == null || !programCache.isFor(opt.getAstCacheDir()))
+      programCache = new ProgramCache(opt.getAstCacheDir());
 
     // Initialize the Boogie transformers.
     stages = Lists.newArrayList();
+    if (opt.isCheckProcedureSet())
+      stages.add(new ProcedureFilter(opt.getCheckProcedure()));
     stages.add(new TypeDesugarer());
     stages.add(new BreakDesugarer());
     stages.add(new WhileDesugarer());
@@ -157,12 +219,73 @@ public class Main {
       case OPTIM: stages.add(new Passivator()); break;
       default: stages.add(new Passificator()); break;
     }
-    VcGenerator vcgen = new VcGenerator();
+    String pc = opt.getProverOpt() + " " + opt.getProverCommandLineOpt() +
+        " " + opt.getJobs();
+    if (vcgen == null || !pc.equals(proverConfiguration)) {
+      if (vcgen != null) vcgen.terminate();
+      vcgen = new VcGenerator();
+      proverConfiguration = pc;
+    }
     vcgen.initialize(opt);
+    vcgen.profile(profile);
     stages.add(vcgen);
   }
 
+  private void writeProfile() {
+    if (profile == null) return;
+    try {
+      profile.write(opt.getStatsFile(), opt.getStatsFormat());
+    } catch (IOException e) {
+      normal("Can't write " + opt.getStatsFile() + ": " + e.getMessage());
+    }
+  }
+
+  private void logProgramCacheStatistics() {
+    if (programCache == null) return;
+    log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "ast_cache_hits " + programCache.hits());
+    log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "ast_cache_misses " + programCache.misses());
+  }
+
+  /*
+    Sets |boogie| to the content of |f|. If programs are cached, then
+    it is also typechecked, which the first stage would do anyway.
+    Class files are not cached, since their translation depends on
+    other class files.
+   */
   private boolean parse(File f) {
+    if (f.getName().endsWith(".class")) return translateClass(f);
+    if (programCache == null) return parseFile(f);
+    String key;
+    try {
+      key = programCache.key(f);
+    } catch (IOException e) {
+      normal("Can't read " + f.getName() + ": " + e.getMessage());
+      return false;
+    }
+    boogie = programCache.load(key, tc);
+    if (boogie != null) {
+      verbose("Loaded " + f.getName() + " from the AST cache.");
+      return true;
+    }
+    if (!parseFile(f)) return false;
+    for (TypeDecl d : boogie.types())
+      if (d.type() != null) return true; // synonyms are desugared first
+    try {
+      boogie = tc.process(boogie);
+      programCache.store(key, tc);
+    } catch (ErrorsFoundException e) {
+      // the stages will find the errors again and report them
+    }
+    return true;
+  }
+
+  private boolean parseFile(File f) {
     try {
       FbLexer lexer = new FbLexer(new ANTLRFileStream(f.getPath()));
       CommonTokenStream tokens = new CommonTokenStream(lexer);
@@ -179,6 +302,50 @@ public class Main {
     return boogie != null;
   }
 
+  /*
+    Sets |boogie| to the translation of the class file |f|. BmlToBpl
+    reports its own errors. The locations refer to the file that
+    BmlToBpl would write for |f| alone. BmlToBpl looks up types by
+    name, so the name is read from |f|, and |f| is looked up in the
+    directory that its package is relative to.
+   */
+  private boolean translateClass(File f) {
+    boogie = null;
+    String type;
+    File file;
+    try {
+      type = new ClassReader(Files.toByteArray(f)).getClassName();
+      file = f.getCanonicalFile();
+    } catch (IOException e) {
+      normal("Can't read " + f.getName() + ": " + e.getMessage());
+      return false;
+    } catch (RuntimeException e) {
+      normal(f.getName() + " is not a class file.");
+      return false;
+    }
+    File base = file.getParentFile();
+    for (int i = type.indexOf('/'); i != -1; i = type.indexOf('/', i + 1))
+      if (base != null) base = base.getParentFile();
+    if (base == null || !new File(base, type + ".class").equals(file)) {
+      normal(f.getName() + " holds " + type.replace('/', '.') +
+          ", which should be in " + type + ".class.");
+      return false;
+    }
+    b2bpl.Project project = b2bpl.Project.fromCommandLine(
+        new String[] {"-basedir", base.getPath(), type},
+        new PrintWriter(System.err));
+    b2bpl.bpl.ast.BPLProgram program =
+        new b2bpl.Main(project).translateProject();
+    if (program == null) {
+      verbose("Can't translate " + f.getName() + ".");
+    } else {
+      String name = f.getName();
+      name = name.substring(0, name.length() - ".class".length()) + ".bpl";
+      boogie = bplConverter.convert(program, name);
+    }
+    return boogie != null;
+  }
+
   private void dumpState(int stageCount, String stageName) {
     if (!opt.isDumpIntermediateStagesSet()) return;
 
@@ -207,6 +374,15 @@ public class Main {
       assert false : "PrintWriter should create the file.";
     }
 
+    // the rest refers to information computed by the typechecker
+    if (tc.getAST() != boogie) {
+      log.say(
+          LogCategories.MAIN,
+          LogLevel.INFO,
+          "Stage " + stageName + " did not typecheck. Dumping only Boogie.");
+      return;
+    }
+
     // dump symbol table
     try {
       SymbolTable st = tc.st();
@@ -256,6 +432,6 @@ public class Main {
 
   public static void badUsage() {
     System.out.println("I don't understand what you want. Try --help.");
-    System.exit(1);
+    Err.exit(1);
   }
 }
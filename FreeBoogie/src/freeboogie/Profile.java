@@ -0,0 +1,199 @@
+package freeboogie;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+import freeboogie.ast.Ast;
+import freeboogie.backend.SmtTerm;
+import freeboogie.backend.Statistics;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
+import static freeboogie.cli.FbCliOptionsInterface.StatsFormat;
+
+/**
+  Measures where a run spends its time and writes the measurements
+  to a file, as CSV or as JSON.
+
+  For each stage applied to each file it records the wall time, the
+  CPU time, the bytes allocated, and the number of AST nodes before
+  and after the stage. For each query it records the same costs for
+  building the VC, plus the number of distinct nodes of the VC and
+  its size when printed as a tree. CPU time and allocation are those
+  of the thread that runs the stages, so they do not include provers
+  that run in parallel; they are -1 if the JVM can't measure them.
+
+  Each measurement is also logged in the category STATS.
+ */
+public class Profile {
+  private static final String[] COLUMNS = {
+    "kind", "file", "name", "wall_ms", "cpu_ms", "allocated_bytes",
+    "ast_before", "ast_after", "vc_nodes", "vc_size"
+  };
+
+  /** The costs measured at some moment. */
+  public static class Mark {
+    final long wall;
+    final long cpu;
+    final long allocated;
+
+    Mark(long wall, long cpu, long allocated) {
+      this.wall = wall;
+      this.cpu = cpu;
+      this.allocated = allocated;
+    }
+  }
+
+  // one line of output: the values of COLUMNS, strings or longs
+  private final List<Object[]> rows = Lists.newArrayList();
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  /** Returns the costs so far, for {@code stage()} or {@code vc()}. */
+  public Mark mark() {
+    return new Mark(System.nanoTime(), cpuTime(), allocatedBytes());
+  }
+
+  /**
+    Records that {@code stage} processed {@code file} since {@code m},
+    turning an AST with {@code before} nodes into {@code after}.
+    Returns the number of nodes in {@code after}.
+   */
+  public long stage(
+      Mark m,
+      String file,
+      String stage,
+      long before,
+      Ast after
+  ) {
+    Mark now = mark();
+    long size = astSize(after);
+    stage = stage.substring(stage.lastIndexOf('.') + 1);
+    add(m, now, "stage", file, stage, before, size, -1, -1);
+    return size;
+  }
+
+  /** Records that a VC of {@code implementation} was built since {@code m}. */
+  public void vc(Mark m, String file, String implementation, SmtTerm vc) {
+    Mark now = mark();
+    add(
+        m, now, "vc", file, implementation, -1, -1,
+        Statistics.nodesCount(vc), Statistics.printSize(vc));
+  }
+
+  /** Writes all the measurements so far to {@code file}. */
+  public void write(File file, StatsFormat format) throws IOException {
+    PrintWriter w = new PrintWriter(new FileWriter(file));
+    try {
+      if (format == StatsFormat.JSON) writeJson(w);
+      else writeCsv(w);
+    } finally {
+      w.close();
+    }
+  }
+
+  /** Returns the number of nodes in {@code ast}. */
+  public static long astSize(Ast ast) {
+    long result = 0;
+    Deque<Ast> toVisit = new ArrayDeque<Ast>();
+    if (ast != null) toVisit.addFirst(ast);
+    while (!toVisit.isEmpty()) {
+      ++result;
+      for (Ast c : toVisit.removeFirst().children()) toVisit.addFirst(c);
+    }
+    return result;
+  }
+
+  // === helpers ===
+  private void add(
+      Mark m,
+      Mark now,
+      String kind,
+      String file,
+      String name,
+      long astBefore,
+      long astAfter,
+      long vcNodes,
+      long vcSize
+  ) {
+    Object[] row = {
+      kind, file, name,
+      (now.wall - m.wall) / 1000000,
+      m.cpu < 0 ? -1 : (now.cpu - m.cpu) / 1000000,
+      m.allocated < 0 ? -1 : now.allocated - m.allocated,
+      astBefore, astAfter, vcNodes, vcSize
+    };
+    rows.add(row);
+    StringBuilder sb = new StringBuilder("profile");
+    for (int i = 0; i < row.length; ++i) {
+      if (row[i] instanceof Long && (Long) row[i] < 0) continue;
+      sb.append(' ').append(COLUMNS[i]).append('=').append(row[i]);
+    }
+    Main.log.say(LogCategories.STATS, LogLevel.INFO, sb.toString());
+  }
+
+  private long cpuTime() {
+    if (!threads.isCurrentThreadCpuTimeSupported()) return -1;
+    return threads.getCurrentThreadCpuTime();
+  }
+
+  private long allocatedBytes() {
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+    com.sun.management.ThreadMXBean t =
+        (com.sun.management.ThreadMXBean) threads;
+    if (!t.isThreadAllocatedMemorySupported()) return -1;
+    return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private void writeCsv(PrintWriter w) {
+    Joiner comma = Joiner.on(',');
+    w.println(comma.join(COLUMNS));
+    for (Object[] row : rows) {
+      String[] cells = new String[row.length];
+      for (int i = 0; i < row.length; ++i) {
+        if (row[i] instanceof String)
+          cells[i] = "\"" + ((String) row[i]).replace("\"", "\"\"") + "\"";
+        else
+          cells[i] = (Long) row[i] < 0 ? "" : row[i].toString();
+      }
+      w.println(comma.join(cells));
+    }
+  }
+
+  private void writeJson(PrintWriter w) {
+    w.println("[");
+    for (int r = 0; r < rows.size(); ++r) {
+      Object[] row = rows.get(r);
+      StringBuilder sb = new StringBuilder("  {");
+      boolean first = true;
+      for (int i = 0; i < row.length; ++i) {
+        if (row[i] instanceof Long && (Long) row[i] < 0) continue;
+        if (!first) sb.append(", ");
+        first = false;
+        sb.append('"').append(COLUMNS[i]).append("\": ");
+        if (row[i] instanceof String) jsonString((String) row[i], sb);
+        else sb.append(row[i]);
+      }
+      sb.append(r + 1 < rows.size() ? "}," : "}");
+      w.println(sb);
+    }
+    w.println("]");
+  }
+
+  private static void jsonString(String s, StringBuilder sb) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') sb.append('\\').append(c);
+      else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+      else sb.append(c);
+    }
+    sb.append('"');
+  }
+}
@@ -0,0 +1,134 @@
+package freeboogie;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import genericutils.Err;
+
+import freeboogie.ast.AstWriter;
+import freeboogie.ast.Program;
+import freeboogie.tc.TcInterface;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
+
+/**
+  Remembers on disk programs that were parsed and typechecked, so
+  that later runs can load them instead of doing the work again.
+
+  The key of an input file is a SHA-1 hash of its name, which
+  appears in locations, of its content, and of the schema of the
+  AST (see {@code AstWriter.SCHEMA}). What is stored is what the
+  typechecker saves (see {@code TcInterface.save}): the program
+  and the information computed about it, in binary form.
+
+  Each program is kept in a file whose name is the key. Files are
+  written atomically, so several runs may share a directory. A file
+  that can't be read, for example because it is truncated or
+  corrupt, is treated as missing and deleted.
+ */
+public class ProgramCache {
+  // change when the format of the files changes
+  private static final String VERSION = "1";
+
+  private final File dir;
+
+  private long hits;
+  private long misses;
+
+  /** Uses {@code dir} to store programs. */
+  public ProgramCache(File dir) {
+    this.dir = dir;
+    if (!dir.isDirectory() && !dir.mkdirs())
+      Err.warning("I can't create the cache directory " + dir + ".");
+  }
+
+  /** Returns whether this cache uses {@code dir}. */
+  public boolean isFor(File dir) {
+    return this.dir.equals(dir);
+  }
+
+  /** Returns the key of the input {@code file}. */
+  public String key(File file) throws IOException {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      md.update((VERSION + "\n" + AstWriter.SCHEMA + "\n").getBytes(Charsets.UTF_8));
+      md.update((file.getName() + "\n").getBytes(Charsets.UTF_8));
+      md.update(Files.toByteArray(file));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest()) sb.append(String.format("%02x", b & 0xff));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      Err.internal("SHA-1 is not available.");
+      return null;
+    }
+  }
+
+  /**
+    Loads into {@code tc} the program stored for {@code key}, and
+    returns it. Returns {@code null} if there is none.
+   */
+  public Program load(String key, TcInterface tc) {
+    File f = new File(dir, key);
+    if (f.exists()) {
+      DataInputStream in = null;
+      Exception failure;
+      try {
+        in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(f), 1 << 16));
+        Program result = tc.load(in);
+        ++hits;
+        return result;
+      } catch (IOException e) {
+        failure = e;
+      } catch (RuntimeException e) {
+        failure = e; // a corrupt file may break the reader anywhere
+      } finally {
+        Closeables.closeQuietly(in);
+      }
+      log("Can't read " + f + ": " + failure);
+      if (!f.delete()) log("Can't delete " + f + ".");
+    }
+    ++misses;
+    return null;
+  }
+
+  /** Stores the program last processed by {@code tc} under {@code key}. */
+  public void store(String key, TcInterface tc) {
+    File f = new File(dir, key);
+    File tmp = null;
+    DataOutputStream out = null;
+    try {
+      tmp = File.createTempFile(key, ".tmp", dir);
+      out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+      tc.save(out);
+      out.close();
+      out = null;
+      if (!tmp.renameTo(f)) log("Can't write " + f + ".");
+    } catch (IOException e) {
+      log("Can't write " + f + ": " + e.getMessage());
+    } finally {
+      Closeables.closeQuietly(out);
+      if (tmp != null) tmp.delete();
+    }
+  }
+
+  /** Returns how many loads found a program. */
+  public long hits() {
+    return hits;
+  }
+
+  /** Returns how many loads found nothing. */
+  public long misses() {
+    return misses;
+  }
+
+  // === helpers ===
+  private static void log(String s) {
+    Main.log.say(LogCategories.MAIN, LogLevel.WARNING, s);
+  }
+}
@@ -0,0 +1,138 @@
+package freeboogie;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import genericutils.Err;
+
+import freeboogie.cli.FbCliParseResult;
+import freeboogie.cli.FbCliParser;
+
+/**
+  Serves requests to check files, so that the JVM and the provers
+  stay warm between requests.
+
+  The server listens on a port of the loopback interface and handles
+  one request at a time. Requests are not authenticated: any local
+  user can make the server read and check files with its rights,
+  so don't serve on a machine shared with users you don't trust.
+
+  A request is a sequence of lines: the working directory of the
+  client, then the command line arguments of {@code fb}, one per
+  line, then an empty line. Relative paths in arguments are resolved
+  against the working directory of the client, if they name
+  something that exists. The reply is what {@code fb} would print,
+  on stdout and on stderr; the connection is closed at the end of
+  the reply.
+
+  All requests are handled by the same {@code Main}, which keeps the
+  provers alive as long as their configuration does not change. So
+  the prover is started once, not once per request.
+
+  A request that fails doesn't stop the server: the error is sent to
+  its client, and the provers are restarted for the next request.
+  Fatal errors, which would otherwise exit, are thrown as {@code
+  Err.Fatal} while serving.
+
+  A request with no arguments stops the server. The script {@code
+  fbc} is a client.
+ */
+public class Server {
+  private final Main main;
+  private final int port;
+
+  /** Prepares to serve on {@code port} by delegating to {@code main}. */
+  public Server(Main main, int port) {
+    this.main = main;
+    this.port = port;
+  }
+
+  /** Handles requests until one says to stop. */
+  public void serve() throws IOException {
+    ServerSocket listener =
+        new ServerSocket(port, 50, InetAddress.getByName(null));
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    stdout.println("Listening on port " + port + ".");
+    Err.exitOnFatal(false);
+    try {
+      while (true) {
+        Socket client = listener.accept();
+        try {
+          if (!handle(client)) return;
+        } catch (IOException e) {
+          stderr.println("Can't talk to a client: " + e.getMessage());
+        } finally {
+          System.setOut(stdout);
+          System.setErr(stderr);
+          client.close();
+        }
+      }
+    } finally {
+      Err.exitOnFatal(true);
+      main.terminate();
+      listener.close();
+    }
+  }
+
+  // === helpers ===
+
+  /*
+   * Handles the request of {@code client} and returns whether more
+   * requests should be handled.
+   */
+  private boolean handle(Socket client) throws IOException {
+    BufferedReader in = new BufferedReader(
+        new InputStreamReader(client.getInputStream(), Charsets.UTF_8));
+    String cwd = in.readLine();
+    if (cwd == null) return true;
+    File directory = new File(cwd);
+    List<String> args = Lists.newArrayList();
+    String line;
+    while ((line = in.readLine()) != null && !line.isEmpty())
+      args.add(resolve(line, directory));
+    if (args.isEmpty()) return false;
+
+    PrintStream reply = new PrintStream(client.getOutputStream(), true);
+    System.setOut(reply);
+    System.setErr(reply);
+    try {
+      FbCliParseResult pr =
+          FbCliParser.parse(args.toArray(new String[args.size()]), "fb");
+      if (!pr.successfulParse())
+        pr.printErrors(reply);
+      else if (pr.getOptionStore().isServeSet())
+        reply.println("I'm already serving.");
+      else
+        main.run(pr.getOptionStore());
+    } catch (Err.Fatal e) {
+      // the message was already printed
+      main.terminate();
+    } catch (Throwable e) {
+      reply.println("I failed: " + e);
+      e.printStackTrace(reply);
+      main.terminate();
+    }
+    reply.flush();
+    return true;
+  }
+
+  /*
+   * Resolves {@code arg}, or the value in {@code -option=arg},
+   * against {@code directory}, if it is a relative path that exists.
+   */
+  private static String resolve(String arg, File directory) {
+    int eq = arg.startsWith("-") ? arg.indexOf('=') : -1;
+    if (arg.startsWith("-") && eq < 0) return arg;
+    String value = arg.substring(eq + 1);
+    if (new File(value).isAbsolute()) return arg;
+    File f = new File(directory, value);
+    if (!f.exists()) return arg;
+    return arg.substring(0, eq + 1) + f.getPath();
+  }
+}
@@ -243,6 +243,14 @@ public class PrettyPrinter extends Transformer {
     say(ast.value().toString());
   }
 
+  @Override public void see(Cast ast) {
+    say("(");
+    ast.expr().eval(this);
+    say(" : ");
+    ast.type().eval(this);
+    say(")");
+  }
+
   @Override public void see(OldExpr ast) {
     say("old(");
     ast.expr().eval(this);
@@ -253,6 +261,11 @@ public class PrettyPrinter extends Transformer {
     ++skipVar;
     say("(");
     say(quantRep.get(ast.quant()));
+    if (!ast.typeVariables().isEmpty()) {
+      say("<");
+      printList(", ", ast.typeVariables());
+      say("> ");
+    }
     printList(", ", ast.vars());
     say(" :: ");
     printList(" ", ast.attributes());
@@ -0,0 +1,316 @@
+vim:ft=java:
+
+This template generates a binary writer and reader for ASTs.
+
+\def{smt}{\if_primitive{\Membertype}{\MemberType}}
+\def{mt}{\if_tagged{list}{ImmutableList<}{}\if_enum{\ClassName.}{}\smt\if_tagged{list}{>}{}}
+
+\file{AstWriter.java}
+/** Do NOT edit. See serializer.tpl instead. */
+package freeboogie.ast;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+  Writes ASTs in a compact binary form, which {@code AstReader}
+  reads back.
+
+  A node is written as a tag that identifies its class, followed by
+  its location and its members, in the order of the abstract
+  grammar. Each node gets an index when it is completely written.
+  A node that was written before, or that was given to the
+  constructor, is written again only as its index, so that the
+  reader restores sharing. This is what allows writing, besides
+  the program, maps whose keys and values are AST nodes, as long as
+  they are written with the same writer. Strings are also written
+  only once. Integers use a variable-length encoding.
+
+  The constant {@code SCHEMA} describes the abstract grammar. Data
+  written by a different grammar can't be read.
+ */
+public class AstWriter {
+  /** Describes the nodes this class knows how to write. */
+  public static final String SCHEMA =
+      "\classes{\if_terminal{\ClassName(\members[,]{\if_tagged{list}{[list] }{}\Membertype \memberName}) }{}}";
+
+  // the first tags are NULL and REF; the others are Tag.ordinal() + FIRST
+  static final int NULL = 0;
+  static final int REF = 1;
+  static final int FIRST = 2;
+
+  static enum Tag {
+    \classes{\if_terminal{\CLASS_NAME,}{}}
+  }
+
+  private static final Map<Class<? extends Ast>, Tag> tags = Maps.newHashMap();
+  static {
+    \classes{\if_terminal{tags.put(\ClassName.class, Tag.\CLASS_NAME);}{}}
+  }
+
+  private final DataOutput out;
+  private final IdentityHashMap<Ast, Integer> index =
+      new IdentityHashMap<Ast, Integer>();
+  private final Map<String, Integer> strings = Maps.newHashMap();
+
+  /**
+    Writes to {@code out}. The nodes {@code known} must be given,
+    in the same order, to the reader; they are written as references.
+   */
+  public AstWriter(DataOutput out, List<? extends Ast> known) {
+    this.out = out;
+    for (Ast a : known) index.put(a, index.size());
+  }
+
+  /** Writes {@code ast}, which may be {@code null}. */
+  public void write(Ast ast) throws IOException {
+    if (ast == null) {
+      writeInt(NULL);
+      return;
+    }
+    Integer i = index.get(ast);
+    if (i != null) {
+      writeInt(REF);
+      writeInt(i);
+      return;
+    }
+    switch (tags.get(ast.getClass())) {
+    \classes{\if_terminal{
+    case \CLASS_NAME:
+      write\ClassName((\ClassName) ast);
+      break;
+    }{}}
+    }
+    index.put(ast, index.size());
+  }
+
+  /** Writes the size of {@code asts} and then each of them. */
+  public void writeList(List<? extends Ast> asts) throws IOException {
+    writeInt(asts.size());
+    for (Ast a : asts) write(a);
+  }
+
+  /** Writes {@code i} using one byte for each 7 bits. */
+  public void writeInt(int i) throws IOException {
+    int v = (i << 1) ^ (i >> 31); // small negatives become small too
+    while ((v & ~0x7f) != 0) {
+      out.writeByte((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  public void writeBoolean(boolean b) throws IOException {
+    out.writeBoolean(b);
+  }
+
+  /** Writes {@code s}, which may be {@code null}. */
+  public void writeString(String s) throws IOException {
+    if (s == null) {
+      writeInt(NULL);
+      return;
+    }
+    Integer i = strings.get(s);
+    if (i != null) {
+      writeInt(FIRST + i);
+      return;
+    }
+    writeInt(REF);
+    out.writeUTF(s);
+    strings.put(s, strings.size());
+  }
+
+  public void writeListOfString(List<String> l) throws IOException {
+    writeInt(l.size());
+    for (String s : l) writeString(s);
+  }
+
+  public void writeFbInteger(FbInteger i) throws IOException {
+    byte[] value = i.value().toByteArray();
+    writeInt(value.length);
+    out.write(value);
+    writeInt(i.width());
+  }
+
+  private void writeLocation(FileLocation l) throws IOException {
+    if (l == FileLocation.unknown()) {
+      writeInt(0);
+      return;
+    }
+    writeInt(l.getLine() + 1);
+    writeInt(l.getColumn());
+    writeString(l.getFile());
+  }
+
+\classes{\if_terminal{
+  private void write\ClassName(\ClassName ast) throws IOException {
+    writeInt(FIRST + Tag.\CLASS_NAME.ordinal());
+    writeLocation(ast.loc());
+    \members{
+      \if_primitive{
+        \if_enum{
+          writeInt(ast.\memberName().ordinal());
+        }{
+          write\if_tagged{list}{ListOf}{}\MemberType(ast.\memberName());
+        }
+      }{
+        \if_tagged{list}{
+          writeList(ast.\memberName());
+        }{
+          write(ast.\memberName());
+        }
+      }
+    }
+  }
+}{}}
+}
+
+\file{AstReader.java}
+/** Do NOT edit. See serializer.tpl instead. */
+package freeboogie.ast;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import static freeboogie.ast.AstWriter.FIRST;
+import static freeboogie.ast.AstWriter.NULL;
+import static freeboogie.ast.AstWriter.REF;
+
+/**
+  Reads ASTs written by {@code AstWriter}. The reads must mirror the
+  writes: the same kinds of values, in the same order.
+ */
+public class AstReader {
+  private static final AstWriter.Tag[] tags = AstWriter.Tag.values();
+
+  private final DataInput in;
+  private final List<Ast> nodes = Lists.newArrayList();
+  private final List<String> strings = Lists.newArrayList();
+
+  /** Reads from {@code in}, with the nodes {@code known} given to the writer. */
+  public AstReader(DataInput in, List<? extends Ast> known) {
+    this.in = in;
+    nodes.addAll(known);
+  }
+
+  /** Reads a node, or {@code null}. */
+  public Ast read() throws IOException {
+    int tag = readInt();
+    if (tag == NULL) return null;
+    if (tag == REF) {
+      int i = readInt();
+      if (i < 0 || i >= nodes.size())
+        throw new IOException("Bad AST node reference " + i + ".");
+      return nodes.get(i);
+    }
+    if (tag < 0 || tag - FIRST >= tags.length)
+      throw new IOException("Unknown AST node tag " + tag + ".");
+    Ast result = null;
+    switch (tags[tag - FIRST]) {
+    \classes{\if_terminal{
+    case \CLASS_NAME:
+      result = read\ClassName();
+      break;
+    }{}}
+    }
+    nodes.add(result);
+    return result;
+  }
+
+  /** Reads a node of class {@code type}, or {@code null}. */
+  public <T extends Ast> T read(Class<T> type) throws IOException {
+    Ast result = read();
+    if (result != null && !type.isInstance(result)) {
+      throw new IOException(
+          "Expected " + type.getSimpleName() + " but found " +
+          result.getClass().getSimpleName() + ".");
+    }
+    return type.cast(result);
+  }
+
+  /** Reads what {@code AstWriter.writeList} wrote. */
+  public <T extends Ast> ImmutableList<T> readList(Class<T> type)
+  throws IOException {
+    int n = readInt();
+    ImmutableList.Builder<T> result = ImmutableList.builder();
+    for (int i = 0; i < n; ++i) result.add(read(type));
+    return result.build();
+  }
+
+  public int readInt() throws IOException {
+    int v = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readByte();
+      v |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) return (v >>> 1) ^ -(v & 1);
+    }
+    throw new IOException("Malformed integer.");
+  }
+
+  public boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  public String readString() throws IOException {
+    int i = readInt();
+    if (i == NULL) return null;
+    if (i == REF) {
+      strings.add(in.readUTF());
+      return strings.get(strings.size() - 1);
+    }
+    return strings.get(i - FIRST);
+  }
+
+  public ImmutableList<String> readListOfString() throws IOException {
+    int n = readInt();
+    ImmutableList.Builder<String> result = ImmutableList.builder();
+    for (int i = 0; i < n; ++i) result.add(readString());
+    return result.build();
+  }
+
+  public FbInteger readFbInteger() throws IOException {
+    byte[] value = new byte[readInt()];
+    in.readFully(value);
+    return new FbInteger(new BigInteger(value), readInt());
+  }
+
+  private FileLocation readLocation() throws IOException {
+    int line = readInt() - 1;
+    if (line < 0) return FileLocation.unknown();
+    int column = readInt();
+    return new FileLocation(readString(), line, column);
+  }
+
+\classes{\if_terminal{
+  private \ClassName read\ClassName() throws IOException {
+    FileLocation location = readLocation();
+    \members{
+      \mt \memberName =
+      \if_primitive{
+        \if_enum{
+          \ClassName.\Membertype.values()[readInt()];
+        }{
+          read\if_tagged{list}{ListOf}{}\MemberType();
+        }
+      }{
+        \if_tagged{list}{
+          readList(\MemberType.class);
+        }{
+          read(\MemberType.class);
+        }
+      }
+    }
+    return \ClassName.mk(\members[, ]{\memberName}, location);
+  }
+}{}}
+}
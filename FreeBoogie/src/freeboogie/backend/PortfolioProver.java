@@ -0,0 +1,251 @@
+package freeboogie.backend;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import freeboogie.Main;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
+
+/**
+ * Runs several provers on the same queries and believes the one
+ * that answers first.
+ *
+ * Each member is described by a string <tt>kind:command</tt>,
+ * where the kind is <tt>simplify</tt> or <tt>smtlib2</tt> and the
+ * command starts the prover. For example, <tt>simplify:z3 -si</tt>.
+ *
+ * Assumptions are sent to all members. A query is sent to all
+ * members at once, each in its own thread. The first answer is
+ * returned and the members that are still working are terminated.
+ * A member that was terminated, or that failed, is restarted before
+ * the next query and is told the current assumptions again. A query
+ * fails only if all members fail, and it times out if all members
+ * fail and some of them ran out of time.
+ *
+ * The members use the term builder of the portfolio. This is safe
+ * because builders are only read while queries are in progress.
+ *
+ * After each query the winner is logged, together with how many
+ * queries each member has won so far.
+ */
+public class PortfolioProver extends Prover<SmtTerm> {
+  private final ImmutableList<String> members;
+  private final List<Prover<SmtTerm>> provers; // null for dead ones
+  private final int[] wins;
+  private final ExecutorService executor;
+
+  private List<SmtTerm> sent; // the current assumptions, in order
+  private Prover<SmtTerm> lastWinner;
+
+  /**
+   * Starts the provers described by {@code members}.
+   *
+   * @throws ProverException if no prover can be started
+   */
+  public PortfolioProver(List<String> members) throws ProverException {
+    this.members = ImmutableList.copyOf(members);
+    provers = Lists.newArrayList();
+    wins = new int[members.size()];
+    sent = Lists.newArrayList();
+    builder = new SmtTermBuilder();
+    ProverException failure = null;
+    for (int i = 0; i < members.size(); ++i) {
+      provers.add(null);
+      try {
+        provers.set(i, start(i));
+      } catch (ProverException e) {
+        failure = e;
+      }
+    }
+    if (liveCount() == 0) {
+      throw new ProverException("I can't start any prover.", failure);
+    }
+    executor = Executors.newFixedThreadPool(
+        members.size(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("portfolio-%d")
+            .build());
+  }
+
+  @Override
+  protected void sendAssume(SmtTerm t) throws ProverException {
+    for (int i = 0; i < provers.size(); ++i) {
+      if (provers.get(i) == null) continue;
+      try {
+        provers.get(i).assume(t);
+      } catch (ProverException e) {
+        kill(i, e);
+      }
+    }
+    if (liveCount() == 0) throw new ProverException("All provers died.");
+    sent.add(t);
+  }
+
+  @Override
+  protected void sendRetract() throws ProverException {
+    sent.remove(sent.size() - 1);
+    for (int i = 0; i < provers.size(); ++i) {
+      if (provers.get(i) == null) continue;
+      try {
+        provers.get(i).retract();
+      } catch (ProverException e) {
+        kill(i, e);
+      }
+    }
+  }
+
+  @Override
+  public boolean isValid(final SmtTerm t) throws ProverException {
+    revive();
+    CompletionService<Boolean> race =
+        new ExecutorCompletionService<Boolean>(executor);
+    Map<Future<Boolean>, Integer> runners = Maps.newHashMap();
+    for (int i = 0; i < provers.size(); ++i) {
+      final Prover<SmtTerm> p = provers.get(i);
+      if (p == null) continue;
+      p.setTimeLimit(timeLimit);
+      runners.put(race.submit(new Callable<Boolean>() {
+        @Override public Boolean call() throws ProverException {
+          return p.isValid(t);
+        }
+      }), i);
+    }
+    if (runners.isEmpty()) throw new ProverException("All provers died.");
+
+    Boolean result = null;
+    int winner = -1;
+    boolean timedOut = false;
+    ProverException failure = null;
+    try {
+      for (int left = runners.size(); left > 0; --left) {
+        Future<Boolean> f = race.take();
+        int i = runners.get(f);
+        try {
+          if (result != null) {
+            f.get(); // a loser that finished before being terminated
+          } else {
+            result = f.get();
+            winner = i;
+            stopOthers(runners, f);
+          }
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof ProverTimeoutException) timedOut = true;
+          if (result == null && e.getCause() instanceof ProverException)
+            failure = (ProverException) e.getCause();
+          kill(i, e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      terminate();
+      throw new ProverException("Interrupted while waiting for provers.", e);
+    }
+
+    if (result == null) {
+      lastWinner = null;
+      if (timedOut) {
+        throw new ProverTimeoutException(
+            "No prover answered in " + timeLimit + "ms.");
+      }
+      throw new ProverException("All provers failed.", failure);
+    }
+    lastWinner = provers.get(winner);
+    ++wins[winner];
+    logWins(winner);
+    return result;
+  }
+
+  @Override
+  public String[][] getLabels() {
+    if (lastWinner == null) return new String[0][];
+    return lastWinner.getLabels();
+  }
+
+  @Override
+  public void terminate() {
+    for (int i = 0; i < provers.size(); ++i) {
+      if (provers.get(i) != null) provers.get(i).terminate();
+      provers.set(i, null);
+    }
+    executor.shutdownNow();
+    log("I tried to kill all the provers. Hope they're dead.");
+  }
+
+  // === helpers ===
+
+  private Prover<SmtTerm> start(int i) throws ProverException {
+    String member = members.get(i);
+    int colon = member.indexOf(':');
+    String kind = colon < 0 ? "" : member.substring(0, colon).trim();
+    String[] cmd = member.substring(colon + 1).trim().split("\\s+");
+    Prover<SmtTerm> result;
+    if (kind.equalsIgnoreCase("simplify"))
+      result = new SimplifyProver(cmd);
+    else if (kind.equalsIgnoreCase("smtlib2"))
+      result = new SmtLib2Prover(cmd);
+    else
+      throw new ProverException("Unknown kind of prover: " + member);
+    result.builder = builder;
+    return result;
+  }
+
+  // restarts dead members and tells them the current assumptions
+  private void revive() {
+    for (int i = 0; i < provers.size(); ++i) {
+      if (provers.get(i) != null) continue;
+      Prover<SmtTerm> p = null;
+      try {
+        p = start(i);
+        for (SmtTerm t : sent) p.assume(t);
+        provers.set(i, p);
+      } catch (ProverException e) {
+        if (p != null) p.terminate();
+        log("Can't restart " + members.get(i) + ": " + e);
+      }
+    }
+  }
+
+  // terminates the members that are still working on a query
+  private void stopOthers(Map<Future<Boolean>, Integer> runners, Future<?> w) {
+    for (Map.Entry<Future<Boolean>, Integer> r : runners.entrySet()) {
+      if (r.getKey() == w || r.getKey().isDone()) continue;
+      kill(r.getValue(), null);
+    }
+  }
+
+  private void kill(int i, Throwable reason) {
+    Prover<SmtTerm> p = provers.get(i);
+    if (p == null) return;
+    provers.set(i, null);
+    p.terminate();
+    if (reason != null) log("Dropped " + members.get(i) + ": " + reason);
+  }
+
+  private int liveCount() {
+    int result = 0;
+    for (Prover<SmtTerm> p : provers) if (p != null) ++result;
+    return result;
+  }
+
+  private void logWins(int winner) {
+    StringBuilder sb = new StringBuilder("portfolio_wins");
+    for (int i = 0; i < members.size(); ++i) {
+      sb.append(" [");
+      sb.append(members.get(i));
+      sb.append("]=");
+      sb.append(wins[i]);
+    }
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "portfolio_winner [" + members.get(winner) + "]");
+    Main.log.say(LogCategories.STATS, LogLevel.INFO, sb.toString());
+  }
+}
@@ -32,8 +32,11 @@ import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
  * should be thrown and the prover restarted. The user code
  * should be able to assume that the prover is in the state it
  * was before the failing operation was attempted.
- * 
- * TODO add properties, like timelimit
+ *
+ * A time limit may be set for {@code isValid()}. If the prover
+ * does not answer in time then a {@code ProverTimeoutException}
+ * is thrown and the prover must be restarted. Provers that answer
+ * immediately may ignore the limit.
  *
  * @param <T> the type of terms
  *
@@ -43,6 +46,8 @@ public abstract class Prover<T extends Term<T>> {
   protected FramedStack<T> assumptions;
 
   protected TermBuilder<T> builder;
+  protected long timeLimit; // in milliseconds; 0 means no limit
+
   protected void log(Supplier<String> s) {
     Main.log.say(LogCategories.PROVER, LogLevel.INFO, s);
   }
@@ -62,6 +67,20 @@ public abstract class Prover<T extends Term<T>> {
     return builder;
   }
 
+  /**
+   * Sets how many milliseconds a call to {@code isValid()} may
+   * take. Zero means that there is no limit.
+   */
+  public void setTimeLimit(long timeLimit) {
+    assert timeLimit >= 0;
+    this.timeLimit = timeLimit;
+  }
+
+  /** Returns the time limit for {@code isValid()}, in milliseconds. */
+  public long getTimeLimit() {
+    return timeLimit;
+  }
+
   /**
    * Adds {@code t} as an assumption. Should add successfully sent
    * assumptions to {@code assumptions}.
@@ -0,0 +1,17 @@
+package freeboogie.backend;
+
+/**
+ * Thrown when the prover does not answer a query in time. The
+ * prover is dead afterwards and should be restarted.
+ */
+@SuppressWarnings("serial")
+public class ProverTimeoutException extends ProverException {
+
+  /**
+   * Constructs a prover timeout exception.
+   * @param reason what went wrong
+   */
+  public ProverTimeoutException(String reason) {
+    super(reason);
+  }
+}
@@ -2,6 +2,17 @@ package freeboogie.backend;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import freeboogie.Main;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
 
 /**
  *  Starts a Simplify/Z3 subprocess and manages sending string
@@ -10,6 +21,21 @@ import java.util.*;
  *  and Z3 running in Simplify mode ("-si"). Also, the parsing
  *  should handle unexpected output gracefully.
  *
+ *  A query may be given a time limit. When it runs out, the child
+ *  is killed and {@code ProverTimeoutException} is thrown. The
+ *  same happens if the prover says something that is never
+ *  followed by a verdict, so a time limit also guards against
+ *  hanging in {@code parseResponse}.
+ *
+ *  Big commands and queries need not be built as strings: they
+ *  may be written piece by piece to {@code writer()}, and then
+ *  ended by {@code send()} or {@code check()}. What is written goes
+ *  through a buffer straight to the child. Only if the category
+ *  PROVER is logged is the command also kept, to be logged. If
+ *  writing a command fails midway, then it must be dropped by
+ *  {@code abandon()}: part of it may be in the pipe already, so
+ *  the child is stopped and the prover must be restarted.
+ *
  *  NOTE: This class was first developed for ESC/Java
  *
  *  @author rgrig
@@ -18,11 +44,29 @@ import java.util.*;
 public class SimplifyProcess {
   private Process simplify; // the child process
   private BufferedReader in; // this is how we read what the prover says
-  private PrintStream out; // this is how we tell stuff to the prover
+  private CountingOutputStream sent; // counts the bytes sent to the prover
+  private PrintWriter out; // this is how we tell stuff to the prover
+
+  // the command being written, which goes to out or to logged
+  private PrintWriter current;
+  private StringWriter logBuffer = new StringWriter();
+  private PrintWriter logged = new PrintWriter(logBuffer);
 
   private boolean alive; // is the prover alive?
   private ArrayList<String[]> labels;
 
+  // kills children that take too long to answer
+  private static final ScheduledExecutorService watchdog =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("prover-watchdog")
+              .build());
+
+  // guarded by this
+  private boolean querying; // are we waiting for a verdict?
+  private boolean timedOut; // did the watchdog kill the child?
+
   /**
    * The typical values for {@code cmd} are {@code ["simplify"]}
    * and {@code ["z3","/si"]}. This starts a process and the
@@ -35,7 +79,9 @@ public class SimplifyProcess {
       ProcessBuilder pb = new ProcessBuilder(cmd);
       simplify = pb.start();
       in = new BufferedReader(new InputStreamReader(simplify.getInputStream()));
-      out = new PrintStream(simplify.getOutputStream(), true);
+      sent = new CountingOutputStream(simplify.getOutputStream());
+      out = new PrintWriter(new BufferedWriter(
+          new OutputStreamWriter(sent), 1 << 16));
     } catch (Exception e) {
       if (simplify != null) stopProver();
       throw new ProverException("I can't run the prover.", e);
@@ -51,10 +97,82 @@ public class SimplifyProcess {
    *    or something else goes terribly wrong
    */
   public void sendCommand(String cmd) throws ProverException {
+    writer().print(cmd);
+    send();
+  }
+
+  /**
+   *  Returns where to write the next command, or the next query.
+   *  Once written, it must be ended by {@code send()} or {@code
+   *  check()}.
+   *  @throws ProverException if the prover is dead
+   */
+  public PrintWriter writer() throws ProverException {
     checkAlive();
-//System.out.println(cmd);
-    out.println(cmd);
-    checkOut();
+    if (current != null) return current;
+    if (Main.log.isEnabled(LogCategories.PROVER, LogLevel.INFO)) {
+      logBuffer.getBuffer().setLength(0);
+      current = logged;
+    } else current = out;
+    return current;
+  }
+
+  /**
+   *  Sends the command written to {@code writer()}, which is
+   *  expected to not produce any (important) response.
+   *  @throws ProverException if the provers seems to have died
+   */
+  public void send() throws ProverException {
+    endCommand();
+  }
+
+  /**
+   *  Sends the query written to {@code writer()} and waits at most
+   *  {@code timeLimit} milliseconds for the answer, like {@code
+   *  isValid()}.
+   */
+  public boolean check(long timeLimit) throws ProverException {
+    writer();
+    ScheduledFuture<?> kill = null;
+    synchronized (this) {
+      querying = true;
+      timedOut = false;
+    }
+    try {
+      if (timeLimit > 0) {
+        kill = watchdog.schedule(new Runnable() {
+          @Override public void run() { killIfQuerying(); }
+        }, timeLimit, TimeUnit.MILLISECONDS);
+      }
+      endCommand();
+      labels.clear();
+      boolean result = parseResponse();
+      if (hasTimedOut()) throw timeout(timeLimit);
+      return result;
+    } catch (ProverException e) {
+      if (hasTimedOut()) throw timeout(timeLimit);
+      throw e;
+    } finally {
+      synchronized (this) { querying = false; }
+      if (kill != null) kill.cancel(false);
+    }
+  }
+
+  /**
+   *  Drops the command being written to {@code writer()} and stops
+   *  the child, whose state is unknown because it may have received
+   *  part of the command. Returns the exception that explains why,
+   *  to be thrown so that the prover is restarted.
+   */
+  public ProverException abandon(Throwable reason) {
+    forgetCommand();
+    stopProver();
+    return new ProverException("I couldn't write the command.", reason);
+  }
+
+  /** Returns how many bytes were sent to the prover so far. */
+  public long sentBytes() {
+    return sent.getCount();
   }
 
   /**
@@ -63,20 +181,31 @@ public class SimplifyProcess {
    *  be obtained by a subsequent call to {@code getLabels}.
    */
   public boolean isValid(String q) throws ProverException {
-    checkAlive();
-//System.out.println(q);
-    out.println(q);
-    checkOut();
-    labels.clear();
-    return parseResponse();
+    return isValid(q, 0);
+  }
+
+  /**
+   *  Sends a query to the prover and waits at most {@code timeLimit}
+   *  milliseconds for the answer. A limit of zero means that we
+   *  wait forever.
+   *
+   *  @throws ProverTimeoutException if the prover does not answer
+   *    in time; the prover is killed in this case
+   */
+  public boolean isValid(String q, long timeLimit) throws ProverException {
+    writer().print(q);
+    return check(timeLimit);
   }
 
   /**
-   * Kills the child. (Or does nothing if he's already dead.)
+   * Kills the child. (Or does nothing if he's already dead.) This
+   * may be called from another thread while a query is in progress,
+   * in which case the query fails.
    */
   public void stopProver() {
     alive = false;
     out.close(); // TODO: safe to close twice?
+    simplify.destroy();
     try {
       simplify.waitFor();
     } catch (InterruptedException e) {
@@ -92,11 +221,50 @@ public class SimplifyProcess {
     return labels.toArray(new String[0][]);
   }
 
+  private synchronized void killIfQuerying() {
+    if (!querying) return;
+    timedOut = true;
+    alive = false;
+    simplify.destroy();
+  }
+
+  private synchronized boolean hasTimedOut() {
+    return timedOut;
+  }
+
+  private ProverTimeoutException timeout(long timeLimit) {
+    stopProver();
+    return new ProverTimeoutException(
+        "The prover did not answer in " + timeLimit + "ms.");
+  }
+
   private void checkAlive() throws ProverException {
     if (!alive) 
       throw new ProverException("Internal error: I shouldn't talk to a dead prover.");
   }
 
+  // ends the current command and flushes it to the prover
+  private void endCommand() throws ProverException {
+    try {
+      if (current == logged) {
+        String command = logBuffer.toString();
+        Main.log.say(LogCategories.PROVER, LogLevel.INFO, command);
+        out.print(command);
+      }
+    } finally {
+      forgetCommand();
+    }
+    out.println();
+    out.flush();
+    checkOut();
+  }
+
+  // forgets the command being written, and the logged copy of it
+  private void forgetCommand() {
+    current = null;
+    logBuffer.getBuffer().setLength(0);
+  }
+
   private void checkOut() throws ProverException {
     if (out.checkError()) {
       alive = false;
@@ -202,15 +370,32 @@ loop:
     }
   }
 
+  /**
+   *  Reads one line said by the prover, without the line terminator.
+   *  @throws ProverException if the prover seems to have died
+   */
+  protected String readLine() throws ProverException {
+    try {
+      String line = in.readLine();
+      if (line != null) return line;
+    } catch (IOException e) {
+      // handled below
+    }
+    stopProver();
+    throw new ProverException(
+        "Unexpected end of prover output. He probably died.");
+  }
+
   /**
    *  Wait for "Invalid"/"Valid"/"Bad input" followed by a dot 
    *  outside parantheses. Also, capture labels that are signaled 
    *  by "labels" followed by "(...)".
    *
-   *  TODO: This hangs for any other input. There should be
-   *        some mechanism to recover from such a situation.
+   *  This hangs for any other input, unless the query has a time
+   *  limit. Then the watchdog kills the child, and reading fails.
+   *  Subclasses that talk to other provers override this method.
    */
-  private boolean parseResponse() throws ProverException {
+  protected boolean parseResponse() throws ProverException {
     char c = ' ', cl; // last read character, and its lowercase version
     ParseState ps = ParseState.OUTSIDE;
     String tomatch = null; // the word we try to match
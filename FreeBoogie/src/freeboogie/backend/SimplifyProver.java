@@ -1,6 +1,6 @@
 package freeboogie.backend;
 
-import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
 
 import com.google.common.collect.ImmutableList;
@@ -30,7 +30,6 @@ import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
  */
 public class SimplifyProver extends Prover<SmtTerm> {
   private SimplifyProcess simplify;
-  private StringBuilder strBuilder;
 
   /**
    * Creates new {@code SimplifyProver}. It also tries to start the prover.
@@ -40,7 +39,6 @@ public class SimplifyProver extends Prover<SmtTerm> {
    */
   public SimplifyProver(String[] cmd) throws ProverException {
     simplify = new SimplifyProcess(cmd);
-    strBuilder = new StringBuilder();
     prepareTermBuilder();
   }
 
@@ -52,76 +50,93 @@ public class SimplifyProver extends Prover<SmtTerm> {
     builder = new SmtTermBuilder();
   }
 
-  // TODO treat everything that is registered in TermBuilder
-  //      and drop the toUpperCase()
-  private void printTerm(SmtTerm t, StringBuilder sb) {
-    if (t.id.startsWith("var")) {
-      sb.append((String)t.data);
-    } else if (t.id.startsWith("forall")) {
-      sb.append("(FORALL (");
-      printTerm(t.children.get(0), sb);
-      sb.append(") ");
-      printTerm(t.children.get(1), sb);
-      sb.append(")");
-    } else if (t.id.equals("literal_int") || t.id.equals("literal")) {
-      sb.append(t.data);
-    } else if (t.id.equals("literal_bool")) {
+  // dispatches on the operator code computed when the term was defined
+  private void printTerm(SmtTerm t, PrintWriter out) {
+    switch (t.def.op) {
+    case VAR:
+    case VAR_FORMULA:
+      out.print((String)t.data);
+      break;
+    case FORALL:
+      out.print("(FORALL (");
+      printTerm(t.children.get(0), out);
+      out.print(") ");
+      printTerm(t.children.get(1), out);
+      out.print(")");
+      break;
+    case LITERAL:
+    case LITERAL_INT:
+      out.print(t.data);
+      break;
+    case LITERAL_BOOL:
       if ((Boolean)t.data)
-        sb.append("term$$TRUE");
+        out.print("term$$TRUE");
       else
-        sb.append("term$$FALSE");
-    } else if (t.id.equals("literal_formula")) {
+        out.print("term$$FALSE");
+      break;
+    case LITERAL_FORMULA:
       if ((Boolean)t.data)
-        sb.append("TRUE");
+        out.print("TRUE");
       else
-        sb.append("FALSE");
-    } else if (t.id.equals("tuple")) {
-      printArgs(t.children, sb);
-    } else if (t.id.equals("distinct")) {
-      sb.append("(DISTINCT ");
-      printArgs(t.children, sb);
-      sb.append(")");
-    } else if (t.id.startsWith("cast")) {
-      printTerm(t.children.get(0), sb);
-    } else if (t.id.startsWith("eq")) {
-      sb.append("(EQ ");
-      printTerm(t.children.get(0), sb);
-      sb.append(" ");
-      printTerm(t.children.get(1), sb);
-      sb.append(")");
-    } else if (t.id.startsWith("neq")) {
-      sb.append("(NEQ ");
-      printTerm(t.children.get(0), sb);
-      sb.append(" ");
-      printTerm(t.children.get(1), sb);
-      sb.append(")");
-    } else if (t.id.startsWith("fun")) {
-      sb.append("(");
-      sb.append(t.id.substring(5));
-      printArgs(t.children, sb);
-      sb.append(")");
-    } else {
-      sb.append("(");
-      sb.append(t.id.toUpperCase());
-      printArgs(t.children, sb);
-      sb.append(")");
+        out.print("FALSE");
+      break;
+    case TUPLE:
+      printArgs(t.children, out);
+      break;
+    case DISTINCT:
+      out.print("(DISTINCT ");
+      printArgs(t.children, out);
+      out.print(")");
+      break;
+    case CAST:
+      printTerm(t.children.get(0), out);
+      break;
+    case EQ:
+      out.print("(EQ ");
+      printTerm(t.children.get(0), out);
+      out.print(" ");
+      printTerm(t.children.get(1), out);
+      out.print(")");
+      break;
+    case NEQ:
+      out.print("(NEQ ");
+      printTerm(t.children.get(0), out);
+      out.print(" ");
+      printTerm(t.children.get(1), out);
+      out.print(")");
+      break;
+    default:
+      out.print("(");
+      out.print(t.def.simplifyName);
+      printArgs(t.children, out);
+      out.print(")");
     }
   }
 
-  private void printArgs(List<SmtTerm> a, StringBuilder sb) {
+  // prints {@code t}, or abandons the command if that fails
+  private void write(SmtTerm t, PrintWriter out) throws ProverException {
+    try {
+      printTerm(t, out);
+    } catch (RuntimeException e) {
+      throw simplify.abandon(e);
+    } catch (StackOverflowError e) {
+      throw simplify.abandon(e);
+    }
+  }
+
+  private void printArgs(List<SmtTerm> a, PrintWriter out) {
     for (SmtTerm t : a) {
-      sb.append(" ");
-      printTerm(t, sb);
+      out.print(" ");
+      printTerm(t, out);
     }
   }
 
   protected void sendFatAssume(SmtTerm t) throws ProverException {
-    strBuilder.setLength(0);
-    strBuilder.append("(BG_PUSH ");
-    printTerm(t, strBuilder);
-    strBuilder.append(")");
-    simplify.sendCommand(strBuilder.toString());
-    log(strBuilder.toString());
+    PrintWriter out = simplify.writer();
+    out.print("(BG_PUSH ");
+    write(t, out);
+    out.print(")");
+    simplify.send();
   }
 
   @Override
@@ -133,18 +148,15 @@ public class SimplifyProver extends Prover<SmtTerm> {
   @Override
   protected void sendRetract() throws ProverException {
     simplify.sendCommand("(BG_POP)");
-    log("(BG_POP)");
   }
 
   @Override
   public boolean isValid(SmtTerm t) throws ProverException {
     Pair<SmtTerm, ImmutableList<SmtTerm>> p = SmtTerms.eliminateSharingPair(t, builder);
     sendFatAssume(builder.mk("and", p.second));
-    strBuilder.setLength(0);
-    printTerm(p.first, strBuilder);
-    log(strBuilder.toString());
+    write(p.first, simplify.writer());
     long startTime = System.nanoTime();
-    boolean r = simplify.isValid(strBuilder.toString());
+    boolean r = simplify.check(timeLimit);
     long endTime = System.nanoTime();
     long time = endTime - startTime;
     Main.log.say(
@@ -0,0 +1,37 @@
+package freeboogie.backend;
+
+/**
+ *  Starts a prover that speaks SMT-LIB 2 and parses its answers
+ *  to {@code check-sat} commands. The process handling, including
+ *  time limits, is the same as for {@code SimplifyProcess}.
+ *
+ *  The prover is expected to be silent after commands other than
+ *  {@code check-sat}, which is what it does if the option {@code
+ *  :print-success} is false. An error message that comes while
+ *  we wait for an answer is reported as a {@code ProverException}.
+ *  Lines that are not understood, such as warnings, are ignored.
+ */
+public class SmtLib2Process extends SimplifyProcess {
+  /**
+   * Starts the prover using the command line {@code cmd}.
+   *
+   * @throws ProverException if creating the process fails
+   */
+  public SmtLib2Process(String[] cmd) throws ProverException {
+    super(cmd);
+  }
+
+  /**
+   *  Waits for "unsat", "sat", or "unknown". Only "unsat" means
+   *  that the query is valid.
+   */
+  @Override protected boolean parseResponse() throws ProverException {
+    while (true) {
+      String line = readLine().trim();
+      if (line.equals("unsat")) return true;
+      if (line.equals("sat") || line.equals("unknown")) return false;
+      if (line.startsWith("(error"))
+        throw new ProverException("The prover says " + line);
+    }
+  }
+}
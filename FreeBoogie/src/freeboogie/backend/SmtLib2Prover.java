@@ -0,0 +1,400 @@
+package freeboogie.backend;
+
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import freeboogie.Main;
+import freeboogie.backend.TermDef.Op;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
+
+/**
+ * Used to interact with provers that understand SMT-LIB 2, such
+ * as Z3 run with <tt>-smt2 -in</tt>.
+ *
+ * Our terms are typed loosely, as they were designed for Simplify,
+ * which is untyped: An int may be used where a term is expected.
+ * Therefore all terms (of sorts TERM, BOOL, and INT) are sent as
+ * {@code Int} and all formulas as {@code Bool}. Uninterpreted
+ * symbols are functions on {@code Int}. Boolean terms are related
+ * to formulas by the axioms built in {@code TermOfExpr}, as for
+ * Simplify.
+ *
+ * Each symbol is declared the first time it is seen. Declarations
+ * are global, so they survive pops. A subterm that occurs more than
+ * once in some term we send is defined, also once, by {@code
+ * define-fun}, and is then referred to by name. So, later queries
+ * that contain it only send the name. Subterms of quantified
+ * formulas are always sent in full, because they may refer to
+ * bound variables.
+ *
+ * Each assumption is made in its own scope, which is popped when
+ * the assumption is retracted, as with BG_PUSH for Simplify. A
+ * query is defined as a Boolean constant and checked by {@code
+ * check-sat-assuming}, so it leaves no assertion behind.
+ */
+public class SmtLib2Prover extends Prover<SmtTerm> {
+  private static final Pattern SIMPLE_SYMBOL = Pattern.compile(
+      "[a-zA-Z~!@$%^&*_+=<>.?/-][0-9a-zA-Z~!@$%^&*_+=<>.?/-]*");
+
+  // marks the end of a quantifier body while printing
+  private static final Object END_BINDER = new Object();
+
+  private SmtLib2Process process;
+
+  private Set<String> declared;
+  private Map<SmtTerm, String> names; // of the defined subterms
+  private int queryCount;
+  private long sent; // bytes sent before the last query
+
+  /** Used while looking for symbols and shared subterms. */
+  private static class Visit {
+    final SmtTerm term;
+    final ImmutableSet<String> bound; // null outside quantifiers
+    final boolean exit; // are all children visited?
+
+    Visit(SmtTerm term, ImmutableSet<String> bound, boolean exit) {
+      this.term = term;
+      this.bound = bound;
+      this.exit = exit;
+    }
+  }
+
+  /**
+   * Creates a new {@code SmtLib2Prover} and starts the prover.
+   *
+   * @param cmd the command to use to start the prover
+   * @throws ProverException if the prover cannot be started
+   */
+  public SmtLib2Prover(String[] cmd) throws ProverException {
+    process = new SmtLib2Process(cmd);
+    declared = Sets.newHashSet();
+    names = Maps.newHashMap();
+    builder = new SmtTermBuilder();
+    process.sendCommand("(set-option :print-success false)");
+    process.sendCommand("(set-option :global-declarations true)");
+  }
+
+  @Override
+  protected void sendAssume(SmtTerm t) throws ProverException {
+    prepare(t);
+    process.sendCommand("(push 1)");
+    PrintWriter out = process.writer();
+    out.print("(assert ");
+    write(t, out);
+    out.print(")");
+    process.send();
+  }
+
+  @Override
+  protected void sendRetract() throws ProverException {
+    process.sendCommand("(pop 1)");
+  }
+
+  @Override
+  public boolean isValid(SmtTerm t) throws ProverException {
+    prepare(t);
+    String query = "query$$" + (++queryCount);
+    PrintWriter out = process.writer();
+    out.print("(define-fun ");
+    out.print(query);
+    out.print(" () Bool (not ");
+    write(t, out);
+    out.print("))");
+    process.send();
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "prover_chars " + (process.sentBytes() - sent));
+    sent = process.sentBytes();
+
+    String check = "(check-sat-assuming (" + query + "))";
+    long startTime = System.nanoTime();
+    boolean r = process.isValid(check, timeLimit);
+    long endTime = System.nanoTime();
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        String.format("provertime %.3fs", 1e-9 * (endTime - startTime)));
+    return r;
+  }
+
+  @Override
+  public String[][] getLabels() {
+    return new String[0][];
+  }
+
+  @Override
+  public void terminate() {
+    process.stopProver();
+    log("I tried to kill the prover. Hope it's dead.");
+  }
+
+  // === helpers ===
+
+  /*
+   * Declares the symbols of {@code t} that were not declared yet,
+   * and defines its shared subterms that were not defined yet. A
+   * subterm is defined after its children.
+   */
+  private void prepare(SmtTerm t) throws ProverException {
+    Map<SmtTerm, Integer> parents = Maps.newHashMap();
+    List<SmtTerm> postorder = Lists.newArrayList();
+    ArrayDeque<Visit> toVisit = new ArrayDeque<Visit>();
+    toVisit.addFirst(new Visit(t, null, false));
+    while (!toVisit.isEmpty()) {
+      Visit v = toVisit.removeFirst();
+      SmtTerm u = v.term;
+      ImmutableSet<String> bound = v.bound;
+      if (bound == null) {
+        if (v.exit) {
+          postorder.add(u);
+          continue;
+        }
+        if (names.containsKey(u)) continue;
+        Integer count = parents.get(u);
+        parents.put(u, count == null ? 1 : count + 1);
+        if (count != null) continue;
+        toVisit.addFirst(new Visit(u, null, true));
+      }
+      declare(u, bound);
+      if (isBinder(u)) {
+        ImmutableSet.Builder<String> inner = ImmutableSet.builder();
+        if (bound != null) inner.addAll(bound);
+        inner.add((String) u.children.get(0).data);
+        toVisit.addFirst(new Visit(u.children.get(1), inner.build(), false));
+      } else {
+        for (int i = u.children.size() - 1; i >= 0; --i)
+          toVisit.addFirst(new Visit(u.children.get(i), bound, false));
+      }
+    }
+    for (SmtTerm u : postorder) {
+      if (parents.get(u) < 2) continue;
+      if (u.children.isEmpty() || u.def.op == Op.TUPLE) continue;
+      String name = "share$$" + names.size();
+      PrintWriter out = process.writer();
+      out.print("(define-fun ");
+      out.print(name);
+      out.print(" () ");
+      out.print(sortOf(u));
+      out.print(" ");
+      write(u, out);
+      out.print(")");
+      process.send();
+      names.put(u, name);
+    }
+  }
+
+  // declares the symbol at the root of {@code t}, if needed
+  private void declare(SmtTerm t, Set<String> bound) throws ProverException {
+    switch (t.def.op) {
+    case VAR:
+    case VAR_FORMULA:
+      if (bound != null && bound.contains((String) t.data)) return;
+      declare(
+          symbol((String) t.data),
+          0,
+          t.def.op == Op.VAR_FORMULA ? "Bool" : "Int");
+      break;
+    case LITERAL:
+      declare(symbol((String) t.data), 0, "Int");
+      break;
+    case LITERAL_BOOL:
+      declare(booleanTerm((Boolean) t.data), 0, "Int");
+      break;
+    default:
+      if (uninterpreted(t)) declare(function(t), args(t).size(), "Int");
+    }
+  }
+
+  private void declare(String name, int arity, String sort)
+      throws ProverException {
+    if (!declared.add(name)) return;
+    PrintWriter out = process.writer();
+    out.print("(declare-fun ");
+    out.print(name);
+    out.print(" (");
+    for (int i = 0; i < arity; ++i) {
+      if (i > 0) out.print(" ");
+      out.print("Int");
+    }
+    out.print(") ");
+    out.print(sort);
+    out.print(")");
+    process.send();
+  }
+
+  // prints {@code t}, or abandons the command if that fails
+  private void write(SmtTerm t, PrintWriter out) throws ProverException {
+    try {
+      print(t, out);
+    } catch (RuntimeException e) {
+      throw process.abandon(e);
+    }
+  }
+
+  /*
+   * Prints {@code root}, using the names of defined subterms other
+   * than the root itself. An explicit stack is used because terms
+   * may be deep.
+   */
+  private void print(SmtTerm root, PrintWriter out) {
+    ArrayDeque<Object> toPrint = new ArrayDeque<Object>();
+    int binders = 0;
+    toPrint.addFirst(root);
+    while (!toPrint.isEmpty()) {
+      Object o = toPrint.removeFirst();
+      if (o == END_BINDER) {
+        --binders;
+        continue;
+      }
+      if (o instanceof String) {
+        out.append((String) o);
+        continue;
+      }
+      SmtTerm t = (SmtTerm) o;
+      String name = t == root || binders > 0 ? null : names.get(t);
+      if (name != null) {
+        out.append(name);
+        continue;
+      }
+      Op op = t.def.op;
+      switch (op) {
+      case VAR:
+      case VAR_FORMULA:
+      case LITERAL:
+        out.append(symbol((String) t.data));
+        break;
+      case LITERAL_INT:
+        String n = t.data.toString();
+        if (n.startsWith("-"))
+          out.append("(- ").append(n.substring(1)).append(")");
+        else
+          out.append(n);
+        break;
+      case LITERAL_BOOL:
+        out.append(booleanTerm((Boolean) t.data));
+        break;
+      case LITERAL_FORMULA:
+        out.append((Boolean) t.data ? "true" : "false");
+        break;
+      case FORALL:
+      case EXISTS:
+        ++binders;
+        out.append(op == Op.FORALL ? "(forall ((" : "(exists ((");
+        out.append(symbol((String) t.children.get(0).data));
+        out.append(" Int)) ");
+        later(toPrint, t.children.get(1), ")", END_BINDER);
+        break;
+      case CAST:
+        toPrint.addFirst(t.children.get(0));
+        break;
+      case NEQ:
+        out.append("(not (= ");
+        later(toPrint, t.children.get(0), " ", t.children.get(1), "))");
+        break;
+      default:
+        List<SmtTerm> args = args(t);
+        String f = builtin(t);
+        if (f == null) f = function(t);
+        if (args.isEmpty() && op == Op.AND) f = "true";
+        if (args.isEmpty() && op == Op.OR) f = "false";
+        if (args.size() < 2 && op == Op.DISTINCT) {
+          args = ImmutableList.of();
+          f = "true";
+        }
+        if (args.size() == 1 && (op == Op.AND || op == Op.OR)) {
+          toPrint.addFirst(args.get(0));
+        } else if (args.isEmpty()) {
+          out.append(f);
+        } else {
+          out.append("(").append(f);
+          toPrint.addFirst(")");
+          for (int i = args.size() - 1; i >= 0; --i) {
+            toPrint.addFirst(args.get(i));
+            toPrint.addFirst(" ");
+          }
+        }
+      }
+    }
+  }
+
+  // pushes {@code items} so that they are printed next, in order
+  private static void later(ArrayDeque<Object> toPrint, Object... items) {
+    for (int i = items.length - 1; i >= 0; --i) toPrint.addFirst(items[i]);
+  }
+
+  // the arguments of {@code t}, with the tuples spliced in
+  private static List<SmtTerm> args(SmtTerm t) {
+    boolean hasTuple = false;
+    for (SmtTerm c : t.children) hasTuple |= c.def.op == Op.TUPLE;
+    if (!hasTuple) return t.children;
+    List<SmtTerm> result = Lists.newArrayList();
+    for (SmtTerm c : t.children) {
+      if (c.def.op == Op.TUPLE) result.addAll(c.children);
+      else result.add(c);
+    }
+    return result;
+  }
+
+  // returns the SMT-LIB 2 name of an interpreted symbol, or null
+  private static String builtin(SmtTerm t) {
+    switch (t.def.op) {
+    case NOT: case AND: case OR: case ARITH: case DISTINCT: return t.id;
+    case IMPLIES: return "=>";
+    case IFF: case EQ: return "=";
+    case DIV: return "div";
+    case MOD: return "mod";
+    default: return null;
+    }
+  }
+
+  private static boolean uninterpreted(SmtTerm t) {
+    if (t.data != null) return false;
+    switch (t.def.op) {
+    case FUN: case MAP: case OTHER: return true;
+    default: return false;
+    }
+  }
+
+  /*
+   * Returns the declared name of an uninterpreted symbol. Maps may
+   * have any number of indices, and functions with the same name
+   * may come from different programs; so their names include the
+   * arity, which is what SMT-LIB 2 cares about.
+   */
+  private static String function(SmtTerm t) {
+    switch (t.def.op) {
+    case FUN:
+      return symbol("fun$$" + t.id.substring(5) + "@" + args(t).size());
+    case MAP:
+      return symbol(t.id + "@" + args(t).size());
+    default:
+      return symbol(t.id);
+    }
+  }
+
+  private static boolean isBinder(SmtTerm t) {
+    return t.def.op == Op.FORALL || t.def.op == Op.EXISTS;
+  }
+
+  private static String sortOf(SmtTerm t) {
+    return t.sort().isSubsortOf(Sort.FORMULA) ? "Bool" : "Int";
+  }
+
+  private static String booleanTerm(boolean b) {
+    return b ? "term$$TRUE" : "term$$FALSE";
+  }
+
+  private static String symbol(String s) {
+    if (SIMPLE_SYMBOL.matcher(s).matches()) return s;
+    return "|" + s.replace("|", "!").replace("\\", "!") + "|";
+  }
+}
@@ -1,24 +1,38 @@
 package freeboogie.backend;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Maps;
+import genericutils.HashConsTable;
 
 import java.util.*;
 
 /**
  * S-expressions.
  *
- * TODO Add hash-consing and see the performance difference.
+ * Terms are hash-consed: Structurally equal terms that are alive
+ * at the same time are the same object. The table used for this
+ * holds terms weakly and may be used from several threads. Its
+ * statistics can be obtained by calling {@code hashConsTable()}.
+ *
+ * Each term refers to the definition it was built from, so that
+ * printers can switch on {@code def.op}. Equality looks only at
+ * {@code id}, {@code data}, and {@code children}.
  *
  * @author rgrig 
  */
 public final class SmtTerm extends Term<SmtTerm> {
-  private static final HashMap<SmtTerm, SmtTerm> cache = Maps.newHashMap();
+  private static final HashConsTable<SmtTerm> cache =
+      new HashConsTable<SmtTerm>();
 
   private int hash;
 
+  // the size printed as a tree, or 0 if not computed yet
+  private volatile long printSize;
+
   /** The identifier or this term. */
   public final String id;
+
+  /** The definition of this term; its name is {@code id}. */
+  public final TermDef def;
   
   /** 
    * If {@code id} says this term is a constant then {@code data}
@@ -34,47 +48,44 @@ public final class SmtTerm extends Term<SmtTerm> {
   
   /**
    * Creates a new term represented by an s-expression.
-   * @param sort the sort of this term
-   * @param id the identifier of this term
+   * @param def the definition of this term
    * @param children the children of this term
    */
-  private SmtTerm(Sort sort, String id, ImmutableList<SmtTerm> children) {
-    super(sort); 
+  private SmtTerm(TermDef def, ImmutableList<SmtTerm> children) {
+    super(def.retSort); 
     assert children != null;
-    this.id = id;
+    this.id = def.name;
+    this.def = def;
     this.data = null;
     this.children = children;
 //System.out.println("s.mk> " + id + " " + children.size());
   }
 
   /** Creates a new constant. */
-  private SmtTerm(Sort sort, String id, Object data) {
-    super(sort); 
-    this.id = id;
+  private SmtTerm(TermDef def, Object data) {
+    super(def.retSort); 
+    this.id = def.name;
+    this.def = def;
     this.data = data;
     this.children = ImmutableList.of();
 //System.out.println("s.mk2> " + id + " " + data);
   }
 
-  public static SmtTerm mk(
-      Sort sort, 
-      String id, 
-      ImmutableList<SmtTerm> children
-  ) {
-    return hashCons(new SmtTerm(sort, id, children));
+  public static SmtTerm mk(TermDef def, ImmutableList<SmtTerm> children) {
+    return hashCons(new SmtTerm(def, children));
   }
 
-  public static SmtTerm mk(Sort sort, String id, Object data) {
-    return hashCons(new SmtTerm(sort, id, data));
+  public static SmtTerm mk(TermDef def, Object data) {
+    return hashCons(new SmtTerm(def, data));
   }
 
   private static SmtTerm hashCons(SmtTerm n) {
-    SmtTerm old = cache.get(n);
-    if (old == null)
-      cache.put(n, n);
-    else
-      n = old;
-    return n;
+    return cache.intern(n);
+  }
+
+  /** Returns the table used for hash-consing, for statistics. */
+  public static HashConsTable<SmtTerm> hashConsTable() {
+    return cache;
   }
 
   @Override
@@ -97,13 +108,58 @@ public final class SmtTerm extends Term<SmtTerm> {
     return hash;
   }
 
+  /**
+   * Returns the size of this term when printed as a tree, that is,
+   * without sharing. It is computed once, in time linear in the
+   * number of distinct subterms, and saturates at
+   * {@code Long.MAX_VALUE}.
+   */
+  public long printSize() {
+    if (printSize != 0) return printSize;
+    ArrayDeque<SmtTerm> toVisit = new ArrayDeque<SmtTerm>();
+    toVisit.addFirst(this);
+    while (!toVisit.isEmpty()) {
+      SmtTerm t = toVisit.peekFirst();
+      if (t.printSize != 0) {
+        toVisit.removeFirst();
+        continue;
+      }
+      long size = 1;
+      boolean ready = true;
+      for (SmtTerm c : t.children) {
+        long s = c.printSize;
+        if (s == 0) {
+          toVisit.addFirst(c);
+          ready = false;
+        } else size = size > Long.MAX_VALUE - s ? Long.MAX_VALUE : size + s;
+      }
+      if (ready) {
+        toVisit.removeFirst();
+        t.printSize = size;
+      }
+    }
+    return printSize;
+  }
+
   @Override
   public void collectAxioms(Set<SmtTerm> axiomBag) {
-    recCollectAxioms(axiomBag, new HashSet<SmtTerm>());
+    // depth first, with an explicit stack because terms may be deep
+    HashSet<SmtTerm> seen = new HashSet<SmtTerm>();
+    ArrayDeque<SmtTerm> toVisit = new ArrayDeque<SmtTerm>();
+    toVisit.addFirst(this);
+    while (!toVisit.isEmpty()) {
+      SmtTerm t = toVisit.removeFirst();
+      if (!seen.add(t)) continue;
+      synchronized (t) {
+        if (t.axioms != null) axiomBag.addAll(t.axioms);
+      }
+      for (int i = t.children.size() - 1; i >= 0; --i)
+        toVisit.addFirst(t.children.get(i));
+    }
   }
 
   @Override
-  public void addAxiom(SmtTerm t) {
+  public synchronized void addAxiom(SmtTerm t) {
     if (axioms == null) axioms = new HashSet<SmtTerm>();
     axioms.add(t);
   }
@@ -127,11 +183,4 @@ public final class SmtTerm extends Term<SmtTerm> {
     sb.append(")");
     return sb.toString();
   }
-
-  private void recCollectAxioms(Set<SmtTerm> axiomBag, HashSet<SmtTerm> seen) {
-    if (seen.contains(this)) return;
-    seen.add(this);
-    if (axioms != null) axiomBag.addAll(axioms);
-    for (SmtTerm t : children) t.recCollectAxioms(axiomBag, seen);
-  }
 }
@@ -13,24 +13,24 @@ public class SmtTermBuilder extends TermBuilder<SmtTerm> {
   private HashMap<String, SmtTerm> axioms = new HashMap<String, SmtTerm>();
 
   @Override
-  protected SmtTerm reallyMk(Sort sort, String termId, Object a) {
-    return SmtTerm.mk(sort, termId, a);
+  protected SmtTerm reallyMk(TermDef def, Object a) {
+    return SmtTerm.mk(def, a);
   }
 
   @Override
-  protected SmtTerm reallyMk(Sort sort, String termId, ImmutableList<SmtTerm> a) {
-    return SmtTerm.mk(sort, termId, a);
+  protected SmtTerm reallyMk(TermDef def, ImmutableList<SmtTerm> a) {
+    return SmtTerm.mk(def, a);
   }
 
   @Override
-  protected SmtTerm reallyMkNary(Sort sort, String termId, ImmutableList<SmtTerm> a) {
-    if (termId.equals("and") || termId.equals("or")) {
-      boolean id = termId.equals("or") ? false : true;
+  protected SmtTerm reallyMkNary(TermDef def, ImmutableList<SmtTerm> a) {
+    if (def.op == TermDef.Op.AND || def.op == TermDef.Op.OR) {
+      boolean id = def.op != TermDef.Op.OR;
       ImmutableList.Builder<SmtTerm> children = ImmutableList.builder();
       for (SmtTerm t : a) {
-        if (t.id.equals(termId))
+        if (t.def.op == def.op)
           children.addAll(t.children);
-        else if (!t.id.equals("literal_formula") || (Boolean)t.data != id)
+        else if (t.def.op != TermDef.Op.LITERAL_FORMULA || (Boolean)t.data != id)
           children.add(t);
       }
       a = children.build();
@@ -39,6 +39,6 @@ public class SmtTermBuilder extends TermBuilder<SmtTerm> {
       if (a.size() == 0)
         return mk("literal_formula", id);
     }
-    return SmtTerm.mk(sort, termId, a);
+    return SmtTerm.mk(def, a);
   }
 }
@@ -13,32 +13,25 @@ public final class SmtTerms {
   private SmtTerms() { /* forbid instantiation */ }
 
   // === Functions for eliminating sharing ===
-  
-  /** Passed around by functions that eliminate sharing. */
-  private static class EliminateSharingContext {
-    public HashMap<SmtTerm, Integer> parentCount =
-      new HashMap<SmtTerm, Integer>(31);
-    public HashMap<SmtTerm, Integer> sizes =
-      new HashMap<SmtTerm, Integer>(31);
-    public HashMap<String, SmtTerm> varDefs =
-      new HashMap<String, SmtTerm>(31);
-    public HashMap<SmtTerm, SmtTerm> oldToNew =
-      new HashMap<SmtTerm, SmtTerm>(31);
-    public HashMap<SmtTerm, SmtTerm> unshared =
-      new HashMap<SmtTerm, SmtTerm>(31);
-    public HashMap<SmtTerm, Position> position = 
-      new HashMap<SmtTerm, Position>(31);
-    public HashSet<SmtTerm> seen = new HashSet<SmtTerm>(31);
-    public TermBuilder<SmtTerm> term;
-  }
 
-  /** A position in a logical formula counts the parity of the number
-   *  of NOT parents. */
-  private static enum Position {
-    POSITIVE,
-    NEGATIVE,
-    UNKNOWN
-  }
+  /*
+    Sharing is eliminated in a few passes over arrays. First, the
+    distinct nodes of the DAG get dense ids in post-order, so that
+    children come before parents; this is the only place where terms
+    are looked up, and it is by identity, which is enough because
+    terms are hash-consed. Then, going from parents to children, the
+    passes mark the nodes reached through formula connectives and
+    compute the polarities in which they occur. Finally, going from
+    children to parents, each such node is rebuilt and, if it is
+    shared and big, it is replaced by a fresh variable. Each pass is
+    linear in the size of the DAG and none recurses, so huge VCs
+    don't blow the stack.
+   */
+
+  // polarities, as bitsets: a node in both is of unknown polarity
+  private static final byte POSITIVE = 1;
+  private static final byte NEGATIVE = 2;
+  private static final byte UNKNOWN = POSITIVE | NEGATIVE;
 
   /** 
     Eliminates the shared parts of {@code ts}. It returns the
@@ -46,32 +39,103 @@ public final class SmtTerms {
     builder {@code term} to create the modified term.
    */
   public static Pair<ImmutableList<SmtTerm>, ImmutableList<SmtTerm>> eliminateSharingPair(ImmutableList<SmtTerm> ts, TermBuilder<SmtTerm> term) {
-    ImmutableList.Builder<SmtTerm> newTerms = ImmutableList.builder();
-    EliminateSharingContext context = new EliminateSharingContext();
-    context.term = term;
-
-    for (SmtTerm t : ts)
-      countParents(t, context);
+    // number the nodes in post-order
+    IdentityHashMap<SmtTerm, Integer> ids =
+        new IdentityHashMap<SmtTerm, Integer>();
+    ArrayList<SmtTerm> nodes = new ArrayList<SmtTerm>();
+    ArrayDeque<SmtTerm> toVisit = new ArrayDeque<SmtTerm>();
+    int edgeCount = 0;
+    for (SmtTerm t : ts) toVisit.addLast(t);
+    while (!toVisit.isEmpty()) {
+      SmtTerm t = toVisit.peekFirst();
+      if (ids.containsKey(t)) {
+        toVisit.removeFirst();
+        continue;
+      }
+      boolean ready = true;
+      for (int i = t.children.size() - 1; i >= 0; --i) {
+        SmtTerm c = t.children.get(i);
+        if (!ids.containsKey(c)) {
+          toVisit.addFirst(c);
+          ready = false;
+        }
+      }
+      if (ready) {
+        toVisit.removeFirst();
+        ids.put(t, nodes.size());
+        nodes.add(t);
+        edgeCount += t.children.size();
+      }
+    }
 
-    for (SmtTerm t : ts)
-     newTerms.add(unshare(t, Position.NEGATIVE, context));
+    // the children of node i are child[firstChild[i] .. firstChild[i+1])
+    int n = nodes.size();
+    int[] firstChild = new int[n + 1];
+    int[] child = new int[edgeCount];
+    int[] parentCount = new int[n];
+    boolean[] atomic = new boolean[n];
+    for (int i = 0, k = 0; i < n; ++i) {
+      SmtTerm t = nodes.get(i);
+      firstChild[i] = k;
+      atomic[i] = t.data != null || !t.sort().isSubsortOf(Sort.FORMULA);
+      for (SmtTerm c : t.children) {
+        atomic[i] |= !c.sort().isSubsortOf(Sort.FORMULA);
+        ++parentCount[child[k++] = ids.get(c)];
+      }
+    }
+    firstChild[n] = edgeCount;
+
+    // find the nodes to rebuild and their polarities
+    byte[] polarity = new byte[n];
+    for (SmtTerm t : ts) polarity[ids.get(t)] |= NEGATIVE;
+    for (int i = n - 1; i >= 0; --i) {
+      if (polarity[i] == 0 || atomic[i]) continue;
+      byte p = polarity[i];
+      TermDef.Op op = nodes.get(i).def.op;
+      for (int k = firstChild[i]; k < firstChild[i + 1]; ++k) {
+        byte q;
+        switch (op) {
+        case NOT: q = not(p); break;
+        case AND: case OR: q = p; break;
+        case IMPLIES: q = k == firstChild[i] ? not(p) : p; break;
+        default: q = UNKNOWN;
+        }
+        polarity[child[k]] |= q;
+      }
+    }
 
+    // rebuild, extracting big shared nodes
+    SmtTerm[] unshared = new SmtTerm[n];
+    SmtTerm[] rebuilt = new SmtTerm[n];
     ImmutableList.Builder<SmtTerm> defs = ImmutableList.builder();
-    for (Map.Entry<String, SmtTerm> vd : context.varDefs.entrySet()) {
-      SmtTerm v = term.mk("var_formula", vd.getKey());
-      SmtTerm od = vd.getValue();
-      SmtTerm nd = context.oldToNew.get(od);
-      switch (context.position.get(od)) {
-      case POSITIVE:
-        defs.add(term.mk("implies", v, nd));
-        break;
-      case NEGATIVE:
-        defs.add(term.mk("implies", nd, v));
-        break;
-      default:
-        defs.add(term.mk("iff", v, nd));
+    for (int i = 0; i < n; ++i) {
+      SmtTerm t = nodes.get(i);
+      if (polarity[i] == 0 || atomic[i]) {
+        unshared[i] = t;
+        continue;
+      }
+      ImmutableList.Builder<SmtTerm> children = ImmutableList.builder();
+      for (int k = firstChild[i]; k < firstChild[i + 1]; ++k)
+        children.add(unshared[child[k]]);
+      rebuilt[i] = unshared[i] = term.mk(t.id, children.build());
+      if (worthExtracting(rebuilt[i].printSize(), parentCount[i])) {
+        SmtTerm v = term.mk("var_formula", Id.get("plucked"));
+        switch (polarity[i]) {
+        case POSITIVE:
+          defs.add(term.mk("implies", v, rebuilt[i]));
+          break;
+        case NEGATIVE:
+          defs.add(term.mk("implies", rebuilt[i], v));
+          break;
+        default:
+          defs.add(term.mk("iff", v, rebuilt[i]));
+        }
+        unshared[i] = v;
       }
     }
+
+    ImmutableList.Builder<SmtTerm> newTerms = ImmutableList.builder();
+    for (SmtTerm t : ts) newTerms.add(unshared[ids.get(t)]);
     return Pair.of(newTerms.build(), defs.build());
   }
 
@@ -89,88 +153,18 @@ public final class SmtTerms {
     return term.mk("implies", term.mk("and", p.second), p.first.get(0));
   }
 
-  private static void countParents(SmtTerm t, EliminateSharingContext context) {
-    if (context.seen.contains(t)) return;
-    context.seen.add(t);
-    for (SmtTerm c : t.children) {
-      Integer cnt = context.parentCount.get(c);
-      if (cnt == null) cnt = 0;
-      context.parentCount.put(c, cnt + 1);
-      countParents(c, context);
-    }
-  }
-
-  private static int getPrintSize(SmtTerm t, EliminateSharingContext context) {
-    Integer result = context.sizes.get(t);
-    if (result != null) return result;
-    result = 1;
-    for (SmtTerm c : t.children) result += getPrintSize(c, context);
-    context.sizes.put(t, result);
-    return result;
-  }
-
-  private static SmtTerm unshare(
-      SmtTerm t, 
-      Position p,
-      EliminateSharingContext context
-  ) {
-    assert t != null;
-    SmtTerm result = context.unshared.get(t);
-    if (t.data != null) result = t;
-    if (!t.sort().isSubsortOf(Sort.FORMULA)) result = t;
-    for (SmtTerm c : t.children)
-      if (!c.sort().isSubsortOf(Sort.FORMULA)) result = t;
-    if (result != null) {
-      setPosition(context, t, p);
-      return result;
-    }
-
-    ImmutableList.Builder<SmtTerm> children = ImmutableList.builder();
-    if ("not".equals(t.id))
-      children.add(unshare(t.children.get(0), not(p), context));
-    else if ("and".equals(t.id) || "or".equals(t.id))
-      for (SmtTerm c : t.children) children.add(unshare(c, p, context));
-    else if ("implies".equals(t.id)) {
-      children.add(unshare(t.children.get(0), not(p), context));
-      children.add(unshare(t.children.get(1), p, context));
-    } else {
-      for (SmtTerm c : t.children) 
-        children.add(unshare(c, Position.UNKNOWN, context));
-    }
-    result = context.term.mk(t.id, children.build());
-
-    int S = getPrintSize(result, context);
-    Integer P = context.parentCount.get(t);
-    if (P == null) P = 0;
-    if (S * P - S - P > 2) {
-      String id = Id.get("plucked");
-      context.varDefs.put(id, t);
-      context.oldToNew.put(t, result);
-      setPosition(context, t, p);
-      result = context.term.mk("var_formula", id);
-    }
-
-    context.unshared.put(t, result);
-    return result;
-  }
-
-  private static void setPosition(
-      EliminateSharingContext context, 
-      SmtTerm t, 
-      Position p
-  ) {
-    Position op = context.position.get(t);
-    if (op == null)
-      context.position.put(t, p);
-    else if (op != p)
-      context.position.put(t, Position.UNKNOWN);
+  /*
+    Replacing a node of print size S that has P parents by a variable
+    saves S*P-S-P nodes: S*P-P are saved at the parents and S are
+    needed for the definition. That is worth doing if it saves more
+    than 2. The test is written as (S-1)*(P-1) > 3 so that it does
+    not overflow.
+   */
+  private static boolean worthExtracting(long s, int p) {
+    return p > 1 && s - 1 > 3 / (p - 1);
   }
 
-  private static Position not(Position p) {
-    switch (p) {
-    case POSITIVE: return Position.NEGATIVE;
-    case NEGATIVE: return Position.POSITIVE;
-    default: return Position.UNKNOWN;
-    }
+  private static byte not(byte p) {
+    return (byte) (((p & POSITIVE) << 1) | ((p & NEGATIVE) >> 1));
   }
 }
@@ -1,7 +1,10 @@
 package freeboogie.backend;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
 
 /**
  * Experimental class used to collect statistics about terms.
@@ -9,30 +12,21 @@ import java.util.HashSet;
 public final class Statistics {
   private Statistics() { /* forbid instantiation */ }
 
-  public static int printSize(SmtTerm t) {
-    Integer result = sizes.get(t);
-    if (result != null) return result;
-    result = 1;
-    for (SmtTerm c : t.children) result += printSize(c);
-    sizes.put(t, result);
-    return result;
+  /** Returns the size of {@code t} when printed as a tree. */
+  public static long printSize(SmtTerm t) {
+    return t.printSize();
   }
 
-  private static HashMap<SmtTerm, Integer> sizes =
-    new HashMap<SmtTerm, Integer>(100003);
-
+  /** Returns the number of distinct subterms of {@code t}. */
   public static int nodesCount(SmtTerm t) {
-    seen.clear();
-    return recNodesCount(t);
-  }
-
-  private static HashSet<SmtTerm> seen = new HashSet<SmtTerm>(100003);
-
-  private static int recNodesCount(SmtTerm t) {
-    if (seen.contains(t)) return 0;
-    seen.add(t);
-    int result = 1;
-    for (SmtTerm c : t.children) result += recNodesCount(c);
-    return result;
+    Set<SmtTerm> seen = Sets.newHashSet();
+    Deque<SmtTerm> toVisit = new ArrayDeque<SmtTerm>();
+    toVisit.addFirst(t);
+    while (!toVisit.isEmpty()) {
+      SmtTerm u = toVisit.removeFirst();
+      if (!seen.add(u)) continue;
+      for (SmtTerm c : u.children) toVisit.addFirst(c);
+    }
+    return seen.size();
   }
 }
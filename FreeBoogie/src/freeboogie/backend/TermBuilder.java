@@ -132,7 +132,7 @@ public abstract class TermBuilder<T extends Term<T>> {
    * @param retSort {@code s}
    */
   public void def(String name, Sort[] argSorts, Sort retSort) {
-    termDefs.put(name, new TermDef(argSorts, retSort));
+    termDefs.put(name, new TermDef(name, argSorts, retSort));
   }
 
   /**
@@ -142,7 +142,7 @@ public abstract class TermBuilder<T extends Term<T>> {
    * @param retSort {@code sr}
    */
   public void def(String name, Sort naryArgSort, Sort retSort) {
-    termDefs.put(name, new TermDef(naryArgSort, retSort));
+    termDefs.put(name, new TermDef(name, naryArgSort, retSort));
   }
 
   /**
@@ -152,7 +152,7 @@ public abstract class TermBuilder<T extends Term<T>> {
    * @param retSort the prover sort
    */
   public void def(String name, Class cls, Sort retSort) {
-    termDefs.put(name, new TermDef(cls, retSort));
+    termDefs.put(name, new TermDef(name, cls, retSort));
   }
   
   /**
@@ -203,7 +203,7 @@ public abstract class TermBuilder<T extends Term<T>> {
       Err.internal("trying to build " + termId + " using " + a
         + " instead of something of type " + def.cls.getCanonicalName());
     }
-    return reallyMk(def.retSort, termId, a);
+    return reallyMk(def, a);
   }
 
   /** Helper for unary operators. */
@@ -235,7 +235,7 @@ public abstract class TermBuilder<T extends Term<T>> {
             + termId + "' where sort " + def.naryArgSort + " is expected.");
         }
       }
-      return reallyMkNary(def.retSort, termId, a);
+      return reallyMkNary(def, a);
     } else {
       assert def.argSorts.length == a.size();
       for (int i = 0; i < a.size(); ++i) {
@@ -245,7 +245,7 @@ public abstract class TermBuilder<T extends Term<T>> {
             + termId + "' where sort " + def.argSorts[i] + " is expected.");
         }
       }
-      return reallyMk(def.retSort, termId, a);
+      return reallyMk(def, a);
     }
   }
 
@@ -253,29 +253,29 @@ public abstract class TermBuilder<T extends Term<T>> {
    * Subclasses should either construct a tree ar communicate with
    * the prover such that the prover constructs a tree.
    * 
-   * @param termId the term to be constructed
+   * @param def the definition of the term to be constructed
    * @param a the argument
    * @return the constructed term
    */
-  protected abstract T reallyMk(Sort sort, String termId, Object a);
+  protected abstract T reallyMk(TermDef def, Object a);
   
   /**
    * Subclasses should either construct a tree ar communicate with
    * the prover such that the prover constructs a tree.
    * 
-   * @param termId the term to be constructed
+   * @param def the definition of the term to be constructed
    * @param a the arguments
    * @return the constructed term
    */
-  protected abstract T reallyMk(Sort sort, String termId, ImmutableList<T> a);
+  protected abstract T reallyMk(TermDef def, ImmutableList<T> a);
   
   /**
    * Subclasses should either construct a tree ar communicate with
    * the prover such that the prover constructs a tree.
    * 
-   * @param termId the term to be constructed
+   * @param def the definition of the term to be constructed
    * @param a the arguments
    * @return the constructed term
    */
-  protected abstract T reallyMkNary(Sort sort, String termId, ImmutableList<T> a);
+  protected abstract T reallyMkNary(TermDef def, ImmutableList<T> a);
 }
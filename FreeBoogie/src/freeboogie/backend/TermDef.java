@@ -22,15 +22,45 @@ import java.util.Arrays;
  * of the form {@code name : [sa] -> sr}, which specify one sort for the
  * argument and one sort for the result. These functions are called "nary".
  * 
- * NOTE that the name being defined is not stored in this class.
- * So, strictly speacking, this is a term sort. The names, and relationship
- * to their sorts, are handled by the {@code Builder}.
+ * The relationship between names and their definitions is handled
+ * by the {@code Builder}.
  * 
+ * The name is stored, together with an operator code that is
+ * computed from it once, when the term is defined. Provers switch on
+ * {@code op} when they print terms, instead of comparing strings.
+ *
  * TODO the terminology around here is not very clear
  *
  * @author rgrig 
  */
 public class TermDef {
+  /** Groups of terms that are handled alike when printed. */
+  public enum Op {
+    VAR, VAR_FORMULA,
+    LITERAL, LITERAL_INT, LITERAL_BOOL, LITERAL_FORMULA,
+    FORALL, EXISTS,
+    NOT, AND, OR, IMPLIES, IFF,
+    EQ, NEQ, DISTINCT,
+    ARITH, // +, -, *, <, <=, >, >=
+    DIV, MOD,
+    TUPLE, CAST,
+    FUN, // user defined functions, registered as funX_name
+    MAP, // map_select, map_update, ...
+    OTHER
+  }
+
+  /** The name being defined. */
+  public final String name;
+
+  /** How terms with this definition are printed. */
+  public final Op op;
+
+  /**
+   * The operator as printed in Simplify syntax: the name of the
+   * function for {@code FUN}, the upper-case name otherwise.
+   */
+  public final String simplifyName;
+
   /**
    * Represents the Java type that is mapped to a prover sort
    * by this (set of) term definition(s).
@@ -55,10 +85,14 @@ public class TermDef {
 
   /**
    * Constructs a typical definition {@code name : s1 x ... x sn -> s}.
+   * @param name a unique identifier
    * @param argSorts {@code s1 x ... x sn}
    * @param retSort {@code s}
    */
-  public TermDef(Sort[] argSorts, Sort retSort) {
+  public TermDef(String name, Sort[] argSorts, Sort retSort) {
+    this.name = name;
+    this.op = opOf(name);
+    this.simplifyName = simplifyNameOf(name, op);
     this.cls = null;
     this.argSorts = Arrays.copyOf(argSorts, argSorts.length);
     this.naryArgSort = null;
@@ -67,10 +101,14 @@ public class TermDef {
 
   /**
    * Constructs a term definition that maps a Java type to a prover sort.
+   * @param name a unique identifier
    * @param cls the Java type
    * @param retSort the prover sort
    */
-  public TermDef(Class cls, Sort retSort) {
+  public TermDef(String name, Class cls, Sort retSort) {
+    this.name = name;
+    this.op = opOf(name);
+    this.simplifyName = simplifyNameOf(name, op);
     this.cls = cls;
     this.argSorts = null;
     this.naryArgSort = null;
@@ -79,13 +117,50 @@ public class TermDef {
 
   /**
    * Constructs a term definition for nary terms.
+   * @param name a unique identifier
    * @param naryArgSort the sort of the arguments
    * @param retSort the sort of the result
    */
-  public TermDef(Sort naryArgSort, Sort retSort) {
+  public TermDef(String name, Sort naryArgSort, Sort retSort) {
+    this.name = name;
+    this.op = opOf(name);
+    this.simplifyName = simplifyNameOf(name, op);
     this.cls = null;
     this.argSorts = null;
     this.naryArgSort = naryArgSort;
     this.retSort = retSort;
   }
+
+  private static Op opOf(String name) {
+    if (name.equals("var_formula")) return Op.VAR_FORMULA;
+    if (name.startsWith("var")) return Op.VAR;
+    if (name.equals("literal")) return Op.LITERAL;
+    if (name.equals("literal_int")) return Op.LITERAL_INT;
+    if (name.equals("literal_bool")) return Op.LITERAL_BOOL;
+    if (name.equals("literal_formula")) return Op.LITERAL_FORMULA;
+    if (name.startsWith("forall")) return Op.FORALL;
+    if (name.startsWith("exists")) return Op.EXISTS;
+    if (name.equals("not")) return Op.NOT;
+    if (name.equals("and")) return Op.AND;
+    if (name.equals("or")) return Op.OR;
+    if (name.equals("implies")) return Op.IMPLIES;
+    if (name.equals("iff")) return Op.IFF;
+    if (name.startsWith("eq")) return Op.EQ;
+    if (name.startsWith("neq")) return Op.NEQ;
+    if (name.equals("distinct")) return Op.DISTINCT;
+    if (name.equals("/")) return Op.DIV;
+    if (name.equals("%")) return Op.MOD;
+    if (name.equals("+") || name.equals("-") || name.equals("*")
+        || name.equals("<") || name.equals("<=")
+        || name.equals(">") || name.equals(">=")) return Op.ARITH;
+    if (name.equals("tuple")) return Op.TUPLE;
+    if (name.startsWith("cast")) return Op.CAST;
+    if (name.startsWith("fun")) return Op.FUN;
+    if (name.startsWith("map_")) return Op.MAP;
+    return Op.OTHER;
+  }
+
+  private static String simplifyNameOf(String name, Op op) {
+    return op == Op.FUN ? name.substring(5) : name.toUpperCase();
+  }
 }
@@ -2,8 +2,8 @@ package freeboogie.backend.coq;
 
 import com.google.common.collect.ImmutableList;
 
-import freeboogie.backend.Sort;
 import freeboogie.backend.TermBuilder;
+import freeboogie.backend.TermDef;
 import freeboogie.backend.coq.representation.CTerm;
 
 
@@ -21,19 +21,19 @@ public class CoqNodeBuilder extends TermBuilder<CTerm> {
 
   
   @Override
-  protected CTerm reallyMk(Sort sort, String termId, Object a) {
+  protected CTerm reallyMk(TermDef def, Object a) {
       // TODO Auto-generated method stub
     return  null;
   }
 
   @Override
-  protected CTerm reallyMk(Sort sort, String termId, ImmutableList<CTerm> a) {
+  protected CTerm reallyMk(TermDef def, ImmutableList<CTerm> a) {
       // TODO Auto-generated method stub
     return  null;
   }
 
   @Override
-  protected CTerm reallyMkNary(Sort sort, String termId, ImmutableList<CTerm> a) {
+  protected CTerm reallyMkNary(TermDef def, ImmutableList<CTerm> a) {
       // TODO Auto-generated method stub
     return  null;
   }
@@ -0,0 +1,768 @@
+package freeboogie.bml;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.*;
+
+import b2bpl.bpl.BPLPrinter;
+import b2bpl.bpl.ast.*;
+import com.google.common.collect.*;
+import genericutils.Id;
+
+import freeboogie.ast.*;
+
+/**
+ * Converts a BoogiePL program built by BmlToBpl into a FreeBoogie AST,
+ * without printing it and parsing it back.
+ *
+ * The nodes get the locations that their text would have in the file
+ * written by BmlToBpl. To compute them the converter walks the tree the
+ * way {@code BPLPrinter} prints it, counting the characters it would
+ * print (but keeping none of them). Each visit builds the FreeBoogie
+ * node from the nodes its children left on a stack, in printing order.
+ *
+ * BmlToBpl speaks an older dialect of BoogiePL. The converter produces
+ * what FreeBoogie would have parsed from the closest text it accepts:
+ * {@code cast(e, T)} becomes {@code e : T}, {@code null} becomes an
+ * identifier, and the built-in types {@code ref}, {@code name}, and
+ * {@code any} become user types. Declarations for the ones that are
+ * used are added to the program: {@code any} is declared as a type
+ * variable of each function, procedure, and quantifier whose
+ * parameters mention it, and the others as global types ({@code null}
+ * as a constant of type {@code ref}). Parameterized types {@code <P>T} are converted to
+ * {@code T}, since FreeBoogie has no equivalent.
+ */
+public class BplConverter extends BPLPrinter {
+  private static final String ANY = BPLBuiltInType.ANY.getName();
+
+  private final Position position;
+  private String fileName;
+
+  // the FreeBoogie nodes of the children, in printing order
+  private ArrayList<Object> stack = Lists.newArrayList();
+
+  // the label of the block being visited, until its first command
+  private String label;
+
+  // the names of the built-in types of BmlToBpl that are used
+  private Set<String> builtInTypes = Sets.newHashSet();
+  private boolean nullUsed;
+
+  public BplConverter() {
+    this(new Position());
+  }
+
+  private BplConverter(Position position) {
+    super(new PrintWriter(position));
+    this.position = position;
+  }
+
+  /**
+   * Returns the FreeBoogie AST of {@code program}, whose locations refer
+   * to {@code fileName}.
+   */
+  public Program convert(BPLProgram program, String fileName) {
+    this.fileName = fileName;
+    position.reset();
+    stack.clear();
+    builtInTypes.clear();
+    nullUsed = false;
+    program.accept(this);
+    return (Program) pop();
+  }
+
+  // === helpers ===
+
+  private FileLocation loc() {
+    return new FileLocation(fileName, position.line, position.column);
+  }
+
+  private void push(Object node) { stack.add(node); }
+  private Object pop() { return stack.remove(stack.size() - 1); }
+
+  /* Pops all the nodes above {@code base}, which are of type {@code t}. */
+  private <T> ImmutableList<T> popList(int base, Class<T> t) {
+    List<Object> top = stack.subList(base, stack.size());
+    ImmutableList.Builder<T> result = ImmutableList.builder();
+    for (Object node : top) result.add(t.cast(node));
+    top.clear();
+    return result.build();
+  }
+
+  /* Pops the top {@code count} nodes, which are of type {@code t}. */
+  private <T> ImmutableList<T> popLast(int count, Class<T> t) {
+    return popList(stack.size() - count, t);
+  }
+
+  private ImmutableList<String> labels() {
+    if (label == null) return ImmutableList.of();
+    ImmutableList<String> result = ImmutableList.of(label);
+    label = null;
+    return result;
+  }
+
+  private static ImmutableList<Attribute> noAttributes() {
+    return ImmutableList.of();
+  }
+
+  private static ImmutableList<Type> noTypes() {
+    return ImmutableList.of();
+  }
+
+  /* Returns {@code any} if it is the type of some of {@code vars}. */
+  private static ImmutableList<Identifier> typeArgs(
+      Iterable<VariableDecl> vars
+  ) {
+    for (VariableDecl v : vars)
+      if (mentionsAny(v.type())) return AstUtils.ids(ANY);
+    return AstUtils.ids();
+  }
+
+  private static boolean mentionsAny(Type t) {
+    if (t instanceof UserType) return ((UserType) t).name().equals(ANY);
+    if (!(t instanceof MapType)) return false;
+    MapType mt = (MapType) t;
+    for (Type it : mt.idxTypes()) if (mentionsAny(it)) return true;
+    return mentionsAny(mt.elemType());
+  }
+
+  /*
+    Transforms
+      a[b][c] := e
+    into
+      a := a[b := a[b][c := e]]
+    like the parser does.
+   */
+  private static OneAssignment desugarMapAssignment(Expr l, Expr r) {
+    if (l instanceof MapSelect) {
+      MapSelect ms = (MapSelect) l;
+      return desugarMapAssignment(
+          ms.map().clone(),
+          MapUpdate.mk(ms.map(), ms.idx(), r, ms.loc()));
+    }
+    Identifier id = (Identifier) l;
+    return OneAssignment.mk(id, r, id.loc());
+  }
+
+  // === declarations ===
+
+  @Override public Object visitProgram(BPLProgram program) {
+    FileLocation loc = new FileLocation(fileName, 1, 1);
+    super.visitProgram(program);
+    ImmutableList.Builder<TypeDecl> types = ImmutableList.builder();
+    ImmutableList.Builder<Axiom> axioms = ImmutableList.builder();
+    ImmutableList.Builder<VariableDecl> variables = ImmutableList.builder();
+    ImmutableList.Builder<ConstDecl> constants = ImmutableList.builder();
+    ImmutableList.Builder<FunctionDecl> functions = ImmutableList.builder();
+    ImmutableList.Builder<Procedure> procedures = ImmutableList.builder();
+    ImmutableList.Builder<Implementation> implementations =
+        ImmutableList.builder();
+    Set<String> declaredTypes = Sets.newHashSet();
+    Set<String> declaredIds = Sets.newHashSet();
+    for (Declaration d : popList(0, Declaration.class)) {
+      if (d instanceof TypeDecl) {
+        types.add((TypeDecl) d);
+        declaredTypes.add(((TypeDecl) d).name());
+      } else if (d instanceof Axiom) {
+        axioms.add((Axiom) d);
+      } else if (d instanceof VariableDecl) {
+        variables.add((VariableDecl) d);
+        declaredIds.add(((VariableDecl) d).name());
+      } else if (d instanceof ConstDecl) {
+        constants.add((ConstDecl) d);
+        declaredIds.add(((ConstDecl) d).name());
+      } else if (d instanceof FunctionDecl) {
+        functions.add((FunctionDecl) d);
+      } else if (d instanceof Procedure) {
+        procedures.add((Procedure) d);
+      } else {
+        implementations.add((Implementation) d);
+      }
+    }
+    for (String t : Ordering.natural().sortedCopy(builtInTypes)) {
+      if (declaredTypes.contains(t)) continue;
+      types.add(TypeDecl.mk(
+          noAttributes(), false, t, AstUtils.ids(), null,
+          FileLocation.unknown()));
+    }
+    if (nullUsed && !declaredIds.contains("null")) {
+      constants.add(ConstDecl.mk(
+          noAttributes(),
+          "null",
+          UserType.mk(
+              BPLBuiltInType.REF.getName(), noTypes(), FileLocation.unknown()),
+          false,
+          FileLocation.unknown()));
+    }
+    push(Program.mk(
+        fileName,
+        types.build(),
+        axioms.build(),
+        variables.build(),
+        constants.build(),
+        functions.build(),
+        procedures.build(),
+        implementations.build(),
+        loc));
+    return null;
+  }
+
+  @Override public Object visitAxiom(BPLAxiom axiom) {
+    FileLocation loc = loc();
+    super.visitAxiom(axiom);
+    Expr e = (Expr) pop();
+    push(Axiom.mk(noAttributes(), Id.get("unnamed"), AstUtils.ids(), e, loc));
+    return null;
+  }
+
+  @Override public Object visitConstantDeclaration(
+      BPLConstantDeclaration declaration
+  ) {
+    int base = stack.size();
+    super.visitConstantDeclaration(declaration);
+    for (VariableDecl v : popList(base, VariableDecl.class)) {
+      push(ConstDecl.mk(
+          noAttributes(), v.name(), v.type(), true, v.loc()));
+    }
+    return null;
+  }
+
+  @Override public Object visitImplementation(
+      BPLImplementation implementation
+  ) {
+    FileLocation loc = loc();
+    super.visitImplementation(implementation);
+    Body body = (Body) pop();
+    ImmutableList<VariableDecl> results = popLast(
+        implementation.getOutParameters().length, VariableDecl.class);
+    ImmutableList<VariableDecl> args = popLast(
+        implementation.getInParameters().length, VariableDecl.class);
+    push(Implementation.mk(
+        noAttributes(),
+        Signature.mk(
+            implementation.getProcedureName(),
+            typeArgs(Iterables.concat(args, results)),
+            args,
+            results,
+            loc),
+        body,
+        loc));
+    return null;
+  }
+
+  @Override public Object visitProcedure(BPLProcedure procedure) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitProcedure(procedure);
+    Implementation implementation = null;
+    if (procedure.getImplementation() != null)
+      implementation = (Implementation) pop();
+    ImmutableList.Builder<PreSpec> pre = ImmutableList.builder();
+    ImmutableList.Builder<PostSpec> post = ImmutableList.builder();
+    ImmutableList.Builder<ModifiesSpec> modifies = ImmutableList.builder();
+    int specCount = procedure.getSpecification() == null
+        ? 0 : procedure.getSpecification().getClauses().length;
+    for (Specification s : popLast(specCount, Specification.class)) {
+      if (s instanceof PreSpec) pre.add((PreSpec) s);
+      else if (s instanceof PostSpec) post.add((PostSpec) s);
+      else modifies.add((ModifiesSpec) s);
+    }
+    ImmutableList<VariableDecl> results = popLast(
+        procedure.getOutParameters().length, VariableDecl.class);
+    ImmutableList<VariableDecl> args = popList(base, VariableDecl.class);
+    push(Procedure.mk(
+        noAttributes(),
+        Signature.mk(
+            procedure.getName(),
+            typeArgs(Iterables.concat(args, results)),
+            args,
+            results,
+            loc),
+        pre.build(),
+        post.build(),
+        modifies.build(),
+        loc));
+    if (implementation != null) push(implementation);
+    return null;
+  }
+
+  @Override public Object visitTypeDeclaration(
+      BPLTypeDeclaration declaration
+  ) {
+    FileLocation loc = loc();
+    super.visitTypeDeclaration(declaration);
+    for (String name : declaration.getTypeNames()) {
+      push(TypeDecl.mk(
+          noAttributes(), false, name, AstUtils.ids(), null, loc));
+    }
+    return null;
+  }
+
+  @Override public Object visitVariable(BPLVariable variable) {
+    FileLocation loc = loc();
+    super.visitVariable(variable);
+    Expr where = variable.getWhereClause() == null? null : (Expr) pop();
+    Type type = (Type) pop();
+    push(VariableDecl.mk(
+        noAttributes(), variable.getName(), type, AstUtils.ids(), where, loc));
+    return null;
+  }
+
+  @Override public Object visitFunction(BPLFunction function) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitFunction(function);
+    ImmutableList<VariableDecl> results = function.getOutParameter() == null
+        ? ImmutableList.<VariableDecl>of()
+        : popLast(1, VariableDecl.class);
+    ImmutableList<VariableDecl> args = popList(base, VariableDecl.class);
+    ImmutableList<Identifier> typeArgs =
+        typeArgs(Iterables.concat(args, results));
+    boolean first = true;
+    for (String name : function.getNames()) {
+      if (!first) {
+        args = AstUtils.cloneListOfVariableDecl(args);
+        results = AstUtils.cloneListOfVariableDecl(results);
+        typeArgs = AstUtils.cloneListOfIdentifier(typeArgs);
+      }
+      first = false;
+      push(FunctionDecl.mk(
+          noAttributes(),
+          Signature.mk(name, typeArgs, args, results, loc),
+          loc));
+    }
+    return null;
+  }
+
+  @Override public Object visitFunctionParameter(
+      BPLFunctionParameter parameter
+  ) {
+    FileLocation loc = loc();
+    super.visitFunctionParameter(parameter);
+    String name = parameter.getName();
+    push(VariableDecl.mk(
+        noAttributes(),
+        name == null? Id.get("unnamed") : name,
+        (Type) pop(),
+        AstUtils.ids(),
+        null,
+        loc));
+    return null;
+  }
+
+  @Override public Object visitRequiresClause(BPLRequiresClause clause) {
+    FileLocation loc = loc();
+    super.visitRequiresClause(clause);
+    push(PreSpec.mk(clause.isFree(), AstUtils.ids(), (Expr) pop(), loc));
+    return null;
+  }
+
+  @Override public Object visitModifiesClause(BPLModifiesClause clause) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitModifiesClause(clause);
+    push(ModifiesSpec.mk(false, popList(base, Identifier.class), loc));
+    return null;
+  }
+
+  @Override public Object visitEnsuresClause(BPLEnsuresClause clause) {
+    FileLocation loc = loc();
+    super.visitEnsuresClause(clause);
+    push(PostSpec.mk(clause.isFree(), AstUtils.ids(), (Expr) pop(), loc));
+    return null;
+  }
+
+  // === bodies and commands ===
+
+  @Override public Object visitImplementationBody(
+      BPLImplementationBody body
+  ) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitImplementationBody(body);
+    // like the parser, add a return if there is no final goto
+    FileLocation end = new FileLocation(
+        fileName, position.line, position.column - 1);
+    ImmutableList.Builder<VariableDecl> vars = ImmutableList.builder();
+    ImmutableList.Builder<Command> commands = ImmutableList.builder();
+    Command last = null;
+    for (Object node : popList(base, Ast.class)) {
+      if (node instanceof VariableDecl) vars.add((VariableDecl) node);
+      else commands.add(last = (Command) node);
+    }
+    if (!(last instanceof GotoCmd)) {
+      commands.add(GotoCmd.mk(
+          ImmutableList.<String>of(), ImmutableList.<String>of(), end));
+    }
+    ImmutableList<Command> cs = commands.build();
+    push(Body.mk(vars.build(), Block.mk(cs, cs.get(0).loc()), loc));
+    return null;
+  }
+
+  @Override public Object visitBasicBlock(BPLBasicBlock block) {
+    label = block.getLabel();
+    return super.visitBasicBlock(block);
+  }
+
+  @Override public Object visitAssertCommand(BPLAssertCommand command) {
+    FileLocation loc = loc();
+    super.visitAssertCommand(command);
+    push(AssertAssumeCmd.mk(
+        labels(),
+        AssertAssumeCmd.CmdType.ASSERT,
+        AstUtils.ids(),
+        command.getExpression() == null
+            ? BooleanLiteral.mk(BooleanLiteral.Type.TRUE, loc)
+            : (Expr) pop(),
+        loc));
+    return null;
+  }
+
+  @Override public Object visitAssumeCommand(BPLAssumeCommand command) {
+    FileLocation loc = loc();
+    super.visitAssumeCommand(command);
+    push(AssertAssumeCmd.mk(
+        labels(),
+        AssertAssumeCmd.CmdType.ASSUME,
+        AstUtils.ids(),
+        command.getExpression() == null
+            ? BooleanLiteral.mk(BooleanLiteral.Type.TRUE, loc)
+            : (Expr) pop(),
+        loc));
+    return null;
+  }
+
+  @Override public Object visitAssignmentCommand(
+      BPLAssignmentCommand command
+  ) {
+    FileLocation loc = loc();
+    super.visitAssignmentCommand(command);
+    Expr r = (Expr) pop();
+    Expr l = (Expr) pop();
+    push(AssignmentCmd.mk(
+        labels(), ImmutableList.of(desugarMapAssignment(l, r)), loc));
+    return null;
+  }
+
+  @Override public Object visitCallCommand(BPLCallCommand command) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitCallCommand(command);
+    ImmutableList<Expr> args =
+        popLast(command.getArguments().length, Expr.class);
+    push(CallCmd.mk(
+        labels(),
+        command.getProcedureName(),
+        noTypes(),
+        popList(base, Identifier.class),
+        args,
+        loc));
+    return null;
+  }
+
+  @Override public Object visitHavocCommand(BPLHavocCommand command) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitHavocCommand(command);
+    push(HavocCmd.mk(labels(), popList(base, Identifier.class), loc));
+    return null;
+  }
+
+  @Override public Object visitGotoCommand(BPLGotoCommand command) {
+    FileLocation loc = loc();
+    super.visitGotoCommand(command);
+    push(GotoCmd.mk(
+        labels(), ImmutableList.copyOf(command.getTargetLabels()), loc));
+    return null;
+  }
+
+  @Override public Object visitReturnCommand(BPLReturnCommand command) {
+    FileLocation loc = loc();
+    super.visitReturnCommand(command);
+    push(GotoCmd.mk(labels(), ImmutableList.<String>of(), loc));
+    return null;
+  }
+
+  // === expressions ===
+
+  @Override public Object visitArrayExpression(BPLArrayExpression expr) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitArrayExpression(expr);
+    ImmutableList<Expr> idx = popList(base + 1, Expr.class);
+    push(MapSelect.mk((Expr) pop(), idx, loc));
+    return null;
+  }
+
+  private void pushBinaryOp(BinaryOp.Op op, FileLocation loc) {
+    Expr right = (Expr) pop();
+    Expr left = (Expr) pop();
+    push(BinaryOp.mk(op, left, right, loc));
+  }
+
+  @Override public Object visitBinaryArithmeticExpression(
+      BPLBinaryArithmeticExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitBinaryArithmeticExpression(expr);
+    BinaryOp.Op op;
+    switch (expr.getOperator()) {
+      case PLUS: op = BinaryOp.Op.PLUS; break;
+      case MINUS: op = BinaryOp.Op.MINUS; break;
+      case TIMES: op = BinaryOp.Op.MUL; break;
+      case DIVIDE: op = BinaryOp.Op.DIV; break;
+      default: op = BinaryOp.Op.MOD;
+    }
+    pushBinaryOp(op, loc);
+    return null;
+  }
+
+  @Override public Object visitBinaryLogicalExpression(
+      BPLBinaryLogicalExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitBinaryLogicalExpression(expr);
+    BinaryOp.Op op;
+    switch (expr.getOperator()) {
+      case AND: op = BinaryOp.Op.AND; break;
+      case OR: op = BinaryOp.Op.OR; break;
+      case IMPLIES: op = BinaryOp.Op.IMPLIES; break;
+      default: op = BinaryOp.Op.EQUIV;
+    }
+    pushBinaryOp(op, loc);
+    return null;
+  }
+
+  @Override public Object visitEqualityExpression(
+      BPLEqualityExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitEqualityExpression(expr);
+    pushBinaryOp(
+        expr.getOperator() == BPLEqualityExpression.Operator.EQUALS
+            ? BinaryOp.Op.EQ : BinaryOp.Op.NEQ,
+        loc);
+    return null;
+  }
+
+  @Override public Object visitPartialOrderExpression(
+      BPLPartialOrderExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitPartialOrderExpression(expr);
+    pushBinaryOp(BinaryOp.Op.SUBTYPE, loc);
+    return null;
+  }
+
+  @Override public Object visitRelationalExpression(
+      BPLRelationalExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitRelationalExpression(expr);
+    BinaryOp.Op op;
+    switch (expr.getOperator()) {
+      case LESS: op = BinaryOp.Op.LT; break;
+      case GREATER: op = BinaryOp.Op.GT; break;
+      case LESS_EQUAL: op = BinaryOp.Op.LE; break;
+      default: op = BinaryOp.Op.GE;
+    }
+    pushBinaryOp(op, loc);
+    return null;
+  }
+
+  @Override public Object visitCastExpression(BPLCastExpression expr) {
+    FileLocation loc = loc();
+    super.visitCastExpression(expr);
+    Type type = (Type) pop();
+    push(Cast.mk((Expr) pop(), type, loc));
+    return null;
+  }
+
+  @Override public Object visitFunctionApplication(
+      BPLFunctionApplication expr
+  ) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitFunctionApplication(expr);
+    push(FunctionApp.mk(
+        expr.getFunctionName(), noTypes(), popList(base, Expr.class), loc));
+    return null;
+  }
+
+  @Override public Object visitBoolLiteral(BPLBoolLiteral literal) {
+    FileLocation loc = loc();
+    super.visitBoolLiteral(literal);
+    push(BooleanLiteral.mk(
+        literal.getValue()
+            ? BooleanLiteral.Type.TRUE : BooleanLiteral.Type.FALSE,
+        loc));
+    return null;
+  }
+
+  @Override public Object visitIntLiteral(BPLIntLiteral literal) {
+    FileLocation loc = loc();
+    super.visitIntLiteral(literal);
+    // the parser sees a negative literal as a unary minus
+    BigInteger value = BigInteger.valueOf(literal.getValue());
+    if (value.signum() >= 0) {
+      push(NumberLiteral.mk(new FbInteger(value, -1), loc));
+    } else {
+      FileLocation digits =
+          new FileLocation(fileName, loc.getLine(), loc.getColumn() + 1);
+      push(UnaryOp.mk(
+          UnaryOp.Op.MINUS,
+          NumberLiteral.mk(new FbInteger(value.negate(), -1), digits),
+          digits));
+    }
+    return null;
+  }
+
+  @Override public Object visitNullLiteral(BPLNullLiteral literal) {
+    FileLocation loc = loc();
+    super.visitNullLiteral(literal);
+    nullUsed = true;
+    builtInTypes.add(BPLBuiltInType.REF.getName());
+    push(Identifier.mk("null", noTypes(), loc));
+    return null;
+  }
+
+  @Override public Object visitOldExpression(BPLOldExpression expr) {
+    FileLocation loc = loc();
+    super.visitOldExpression(expr);
+    push(OldExpr.mk((Expr) pop(), loc));
+    return null;
+  }
+
+  @Override public Object visitQuantifierExpression(
+      BPLQuantifierExpression expr
+  ) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitQuantifierExpression(expr);
+    Expr body = (Expr) pop();
+    int triggerCount = 0;
+    for (BPLTrigger trigger : expr.getTriggers())
+      if (trigger != null) ++triggerCount;
+    ImmutableList<Attribute> triggers =
+        popLast(triggerCount, Attribute.class);
+    ImmutableList<VariableDecl> vars = popList(base, VariableDecl.class);
+    push(Quantifier.mk(
+        expr.getOperator() == BPLQuantifierExpression.Operator.FORALL
+            ? Quantifier.QuantType.FORALL : Quantifier.QuantType.EXISTS,
+        typeArgs(vars),
+        vars,
+        triggers,
+        body,
+        loc));
+    return null;
+  }
+
+  @Override public Object visitLogicalNotExpression(
+      BPLLogicalNotExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitLogicalNotExpression(expr);
+    push(UnaryOp.mk(UnaryOp.Op.NOT, (Expr) pop(), loc));
+    return null;
+  }
+
+  @Override public Object visitUnaryMinusExpression(
+      BPLUnaryMinusExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitUnaryMinusExpression(expr);
+    push(UnaryOp.mk(UnaryOp.Op.MINUS, (Expr) pop(), loc));
+    return null;
+  }
+
+  @Override public Object visitVariableExpression(
+      BPLVariableExpression expr
+  ) {
+    FileLocation loc = loc();
+    super.visitVariableExpression(expr);
+    push(Identifier.mk(expr.getIdentifier(), noTypes(), loc));
+    return null;
+  }
+
+  @Override public Object visitTrigger(BPLTrigger trigger) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitTrigger(trigger);
+    push(Attribute.mk("trigger", popList(base, Expr.class), loc));
+    return null;
+  }
+
+  // === types ===
+
+  @Override public Object visitBuiltInType(BPLBuiltInType type) {
+    FileLocation loc = loc();
+    super.visitBuiltInType(type);
+    if (type == BPLBuiltInType.BOOL)
+      push(PrimitiveType.mk(PrimitiveType.Ptype.BOOL, -1, loc));
+    else if (type == BPLBuiltInType.INT)
+      push(PrimitiveType.mk(PrimitiveType.Ptype.INT, -1, loc));
+    else {
+      if (type != BPLBuiltInType.ANY) builtInTypes.add(type.getName());
+      push(UserType.mk(type.getName(), noTypes(), loc));
+    }
+    return null;
+  }
+
+  @Override public Object visitTypeName(BPLTypeName type) {
+    FileLocation loc = loc();
+    super.visitTypeName(type);
+    push(UserType.mk(type.getName(), noTypes(), loc));
+    return null;
+  }
+
+  @Override public Object visitArrayType(BPLArrayType type) {
+    FileLocation loc = loc();
+    int base = stack.size();
+    super.visitArrayType(type);
+    Type elemType = (Type) pop();
+    push(MapType.mk(
+        AstUtils.ids(), popList(base, Type.class), elemType, loc));
+    return null;
+  }
+
+  @Override public Object visitParameterizedType(BPLParameterizedType type) {
+    super.visitParameterizedType(type);
+    Type t = (Type) pop();
+    pop(); // the parameter
+    push(t);
+    return null;
+  }
+
+  /*
+    Keeps track of the line and column where the next character
+    would be printed, and discards the characters.
+   */
+  private static class Position extends Writer {
+    int line;
+    int column;
+
+    void reset() { line = column = 1; }
+
+    @Override public void write(char[] buf, int off, int len) {
+      for (int i = off; i < off + len; ++i) {
+        if (buf[i] == '\n') {
+          ++line;
+          column = 1;
+        } else if (buf[i] != '\r') ++column;
+      }
+    }
+
+    @Override public void write(String s, int off, int len) {
+      for (int i = off; i < off + len; ++i) {
+        char c = s.charAt(i);
+        if (c == '\n') {
+          ++line;
+          column = 1;
+        } else if (c != '\r') ++column;
+      }
+    }
+
+    @Override public void flush() {}
+    @Override public void close() {}
+  }
+}
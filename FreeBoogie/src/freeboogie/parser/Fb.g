@@ -239,10 +239,10 @@ scope {
     { $proc_decl::pre = ImmutableList.builder();
       $proc_decl::post = ImmutableList.builder();
       $proc_decl::modifies = ImmutableList.builder(); }
-    p='procedure' signature ';'? spec_list
+    p='procedure' attributes signature ';'? spec_list
     { if (ok) {
       procedureDeclBuilder.add(Procedure.mk(
-          ImmutableList.<Attribute>of(),
+          $attributes.v,
           $signature.v,
           $proc_decl::pre.build(),
           $proc_decl::post.build(),
@@ -251,7 +251,7 @@ scope {
     (body
     { if (ok) {
       implementationBuilder.add(Implementation.mk(
-          ImmutableList.<Attribute>of(),
+          AstUtils.cloneListOfAttribute($attributes.v),
           TypeUtils.stripDep($signature.v).clone(),
           $body.v,
           tokLoc($p))); }}
@@ -259,10 +259,10 @@ scope {
 ;
 
 impl_decl:
-    s='implementation' signature body
+    s='implementation' attributes signature body
     { if (ok) {
       implementationBuilder.add(Implementation.mk(
-          ImmutableList.<Attribute>of(),
+          $attributes.v,
           $signature.v,
           $body.v,
           tokLoc($s))); }}
@@ -13,7 +13,9 @@ import freeboogie.ast.*;
   Constructs a flowgraph of blocks for each implementation.
 
   After {@code process(ast)} you can ask {@code flowGraph(body)}
-  to get a {@code SimpleGraph&lt;Command&gt;}.
+  to get a {@code SimpleGraph&lt;Command&gt;}. When only some
+  implementations change, {@code update()} rebuilds only their
+  flow graphs.
   Processing throws {@code ErrorsFoundException} when there are
   undefined labels or multiply defined labels.
   Unreachability warnings are printed.
@@ -120,6 +122,30 @@ public class FlowGraphMaker extends Transformer {
     return ast;
   }
 
+  /** Drops the flow graphs of {@code removed} and constructs
+      flow graphs for {@code added}. Warnings are printed only
+      for {@code added}. */
+  public void update(
+      Iterable<Implementation> removed,
+      Iterable<Implementation> added
+  ) throws ErrorsFoundException {
+    nextCommand.clear();
+    enclosingScope.clear();
+    warnings.clear();
+    errors = Lists.newArrayList();
+    for (Implementation i : removed) {
+      flowGraphs.remove(i);
+      labelsCollector.forget(i);
+    }
+    labelsCollector.process(added);
+    for (Implementation i : added) {
+      i.eval(this);
+      flowGraphs.get(i).freeze();
+    }
+    FbError.reportAll(warnings);
+    if (!errors.isEmpty()) throw new ErrorsFoundException(errors);
+  }
+
 
   /** Returns the command flow graph for {@code body}. */
   public SimpleGraph<Command> flowGraph(Implementation implementation) {
@@ -133,10 +159,13 @@ public class FlowGraphMaker extends Transformer {
   // === helpers ===
 
   private void dfs(Command c) {
-    if (seenCommands.contains(c)) return;
-    seenCommands.add(c);
-    Set<Command> children = currentFlowGraph.to(c);
-    for (Command d : children) dfs(d);
+    ArrayDeque<Command> toVisit = new ArrayDeque<Command>();
+    toVisit.addFirst(c);
+    while (!toVisit.isEmpty()) {
+      c = toVisit.removeFirst();
+      if (!seenCommands.add(c)) continue;
+      for (Command d : currentFlowGraph.to(c)) toVisit.addFirst(d);
+    }
   }
 
   // BEGIN top-level methods {{{
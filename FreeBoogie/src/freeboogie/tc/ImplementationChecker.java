@@ -50,6 +50,30 @@ public class ImplementationChecker extends Transformer {
     return errors;
   }
   
+  /**
+   * Processes {@code implementations}, adding the results to the
+   * maps {@code ip} and {@code pm}, which may come from an earlier
+   * run.
+   * @param implementations the implementations to check
+   * @param g the globals collector that can resolve procedure names
+   * @param ip the map from implementations to procedures
+   * @param pm the map from implementation to procedure parameters
+   * @return the detected problems
+   */
+  public List<FbError> process(
+      Iterable<Implementation> implementations,
+      GlobalsCollector g,
+      UsageToDefMap<Implementation, Procedure> ip,
+      UsageToDefMap<VariableDecl, VariableDecl> pm
+  ) {
+    errors = Lists.newArrayList();
+    gc = g;
+    implProc = ip;
+    paramMap = pm;
+    for (Implementation i : implementations) i.eval(this);
+    return errors;
+  }
+
   /**
    * Returns the map linking procedures to their usages.
    * @return the map linking procedures to their usages
@@ -23,6 +23,10 @@ import freeboogie.ast.*;
   of a command using {@code labels(implementation, command)}.  Find some
   (random) label of a command using {@code someLabel(implementation, command)}.
 
+  After some implementations are replaced you may {@code forget()} the old
+  ones and {@code process()} the new ones, instead of processing the whole
+  program again.
+
   You may also find all commands under a body, including those nested in other
   commands, using {@code allCommands(implementation)}.
  */
@@ -67,6 +71,24 @@ public class LabelsCollector extends Transformer {
   public void process(Program ast) throws ErrorsFoundException {
     repeatedLabels.clear();
     ast.eval(this);
+    reportRepeatedLabels();
+  }
+
+  public void process(Iterable<Implementation> implementations)
+  throws ErrorsFoundException {
+    repeatedLabels.clear();
+    for (Implementation i : implementations) i.eval(this);
+    reportRepeatedLabels();
+  }
+
+  public void forget(Implementation implementation) {
+    for (Command c : allCommands.removeAll(implementation)) {
+      for (String l : labels.removeAll(c))
+        command.remove(Pair.of(implementation, l));
+    }
+  }
+
+  private void reportRepeatedLabels() throws ErrorsFoundException {
     if (!repeatedLabels.isEmpty()) {
       List<FbError> errors = Lists.newArrayList();
       for (Pair<Implementation, String> p : repeatedLabels) {
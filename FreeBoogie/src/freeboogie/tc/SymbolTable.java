@@ -27,4 +27,13 @@ public class SymbolTable {
   /** Type variables. */
   public UsageToDefMap<UserType, Identifier> typeVars
     = new UsageToDefMap<UserType, Identifier>();
+
+  /** Removes {@code ast} from all members. */
+  public void forget(Ast ast) {
+    types.forget(ast);
+    procs.forget(ast);
+    funcs.forget(ast);
+    ids.forget(ast);
+    typeVars.forget(ast);
+  }
 }
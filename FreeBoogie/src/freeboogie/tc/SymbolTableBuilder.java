@@ -48,6 +48,27 @@ public class SymbolTableBuilder extends Transformer implements StbInterface {
     return p;
   }
 
+  /**
+   * Adds to {@code st} the usages and the local definitions from
+   * {@code implementations}. Global names are resolved by {@code
+   * g}, which is assumed to be up to date. This is used to update
+   * a symbol table after some implementations were replaced.
+   */
+  public void process(
+      Iterable<Implementation> implementations,
+      SymbolTable st,
+      GlobalsCollector g
+  ) throws ErrorsFoundException {
+    localVarDecl = new StackedHashMap<String, VariableDecl>();
+    typeVarDecl = new StackedHashMap<String, Identifier>();
+    symbolTable = st;
+    gc = g;
+    lookInLocalScopes = true;
+    errors = new ArrayList<FbError>();
+    for (Implementation i : implementations) i.eval(this);
+    if (!errors.isEmpty()) throw new ErrorsFoundException(errors);
+  }
+
   @Override public SymbolTable st() { return symbolTable; }
   @Override public GlobalsCollector gc() { return gc; }
 
@@ -1,5 +1,8 @@
 package freeboogie.tc;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import genericutils.SimpleGraph;
@@ -31,6 +34,13 @@ public interface TcInterface {
    */
   Program process(Program p) throws ErrorsFoundException;
 
+  /**
+   * Returns the program returned by the last successful call to
+   * {@code process}. All the other information refers to it.
+   * @return the last typechecked program, or {@code null}
+   */
+  Program getAST();
+
   /**
    * Returns the flow graph of {@code bdy}.
    * @param bdy the body whose flow graph is requested
@@ -65,5 +75,22 @@ public interface TcInterface {
    * @return the symbol table
    */
   SymbolTable st(); 
+
+  /**
+   * Writes the program returned by {@code getAST()} and all the
+   * information about it, so that {@code load} can restore them.
+   * @param out where to write
+   */
+  void save(DataOutput out) throws IOException;
+
+  /**
+   * Restores what {@code save} wrote, as if the saved program were
+   * just processed.
+   * @param in where to read from
+   * @return the restored program
+   * @throws IOException if {@code in} can't be read or does not
+   *     hold what {@code save} wrote
+   */
+  Program load(DataInput in) throws IOException;
 }
 
@@ -1,17 +1,29 @@
 package freeboogie.tc;
 
 //{{{ imports
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigInteger;
 import java.util.*;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.collect.UnmodifiableIterator;
 import genericutils.*;
+import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.CommonTokenStream;
 
 import freeboogie.Main;
 import freeboogie.ast.*;
+import freeboogie.parser.FbLexer;
+import freeboogie.parser.FbParser;
 import static freeboogie.cli.FbCliOptionsInterface.*;
 //}}}
 
@@ -28,6 +40,21 @@ import static freeboogie.cli.FbCliOptionsInterface.*;
 
   Type checking assumes that type synonyms were desugared.
 
+  Most stages of the pipeline change only some implementations,
+  and the AST is immutable, so the unchanged parts of the new
+  program are shared with the previous one. If the global
+  declarations of the new program are exactly (by reference) those
+  of the last processed program, then only the implementations
+  that are not shared are checked. The symbol table, the flow
+  graphs, and the types computed for the old implementations are
+  reused, after dropping the information about nodes that are
+  gone. Otherwise the whole program is checked.
+
+  The last checked program can be saved together with what was
+  computed about it, and loaded later instead of being checked
+  again. Flow graphs and global names are not saved; they are
+  recomputed when loading.
+
   @author rgrig
  */
 public class TypeChecker extends Evaluator<Type> implements TcInterface {
@@ -48,6 +75,10 @@ public class TypeChecker extends Evaluator<Type> implements TcInterface {
   private static final PrimitiveType errType =
       PrimitiveType.mk(PrimitiveType.Ptype.ERROR, -1, FileLocation.unknown());
 
+  // nodes that save() refers to, instead of writing them
+  private static final ImmutableList<Ast> knownNodes =
+      ImmutableList.<Ast>of(boolType, intType, errType);
+
   private SymbolTable st;
   private GlobalsCollector gc;
   private FlowGraphMaker flowGraphs;
@@ -103,6 +134,12 @@ public class TypeChecker extends Evaluator<Type> implements TcInterface {
 
     typeVar = new StackedHashMap<Identifier, Type>();
     enclosingTypeVar = new StackedHashMap<Identifier, Identifier>();
+
+    // forget the last AST, in case we fail half way
+    Program previous = this.ast;
+    this.ast = null;
+    if (previous != null && sameGlobals(previous, ast))
+      return processChangedImplementations(previous, ast);
     implicitSpec = Maps.newHashMap();
 
     // build symbol table
@@ -131,6 +168,12 @@ public class TypeChecker extends Evaluator<Type> implements TcInterface {
 
     if (!errors.isEmpty()) throw new ErrorsFoundException(errors);
 
+    this.ast = ast;
+    return ast;
+  }
+
+  @Override
+  public Program getAST() {
     return ast;
   }
 
@@ -169,9 +212,208 @@ public class TypeChecker extends Evaluator<Type> implements TcInterface {
   public SymbolTable st() {
     return st;
   }
+
+  @Override
+  public void save(DataOutput out) throws IOException {
+    Preconditions.checkState(ast != null, "There is no typechecked program.");
+    Set<Ast> nodes = Sets.newHashSet();
+    collectNodes(ast, nodes);
+    AstWriter w = new AstWriter(out, knownNodes);
+    w.write(ast);
+    writeMap(w, st.types);
+    writeMap(w, st.procs);
+    writeMap(w, st.funcs);
+    writeMap(w, st.ids);
+    writeMap(w, st.typeVars);
+    writeMap(w, implProc);
+    writeMap(w, paramMap);
+
+    // the cache may also have types of nodes from earlier programs
+    List<Map.Entry<Ast, Type>> types = Lists.newArrayList();
+    for (Map.Entry<Ast, Type> e : evalCache.entrySet())
+      if (nodes.contains(e.getKey())) types.add(e);
+    w.writeInt(types.size());
+    for (Map.Entry<Ast, Type> e : types) {
+      w.write(e.getKey());
+      w.write(e.getValue());
+    }
+    w.writeInt(implicitSpec.size());
+    for (Map.Entry<Ast, Map<Identifier, Type>> e : implicitSpec.entrySet()) {
+      w.write(e.getKey());
+      w.writeInt(e.getValue().size());
+      for (Map.Entry<Identifier, Type> f : e.getValue().entrySet()) {
+        w.write(f.getKey());
+        w.write(f.getValue());
+      }
+    }
+  }
+
+  @Override
+  public Program load(DataInput in) throws IOException {
+    ast = null; // in case we fail half way
+    try {
+      return read(in);
+    } catch (RuntimeException e) {
+      // corrupt input may break the reader or the stages anywhere
+      throw new IOException("The saved program is malformed.", e);
+    } catch (AssertionError e) {
+      // ... or the invariants of the nodes it builds
+      throw new IOException("The saved program is malformed.", e);
+    }
+  }
   // END public interface }}}
 
   // BEGIN helper methods {{{
+  private Program read(DataInput in) throws IOException {
+    AstReader r = new AstReader(in, knownNodes);
+    Program p = r.read(Program.class);
+    if (p == null) throw new IOException("There is no program.");
+    st = new SymbolTable();
+    readMap(r, st.types, UserType.class, TypeDecl.class);
+    readMap(r, st.procs, CallCmd.class, Procedure.class);
+    readMap(r, st.funcs, FunctionApp.class, FunctionDecl.class);
+    readMap(r, st.ids, Identifier.class, IdDecl.class);
+    readMap(r, st.typeVars, UserType.class, Identifier.class);
+    implProc = new UsageToDefMap<Implementation, Procedure>();
+    readMap(r, implProc, Implementation.class, Procedure.class);
+    paramMap = new UsageToDefMap<VariableDecl, VariableDecl>();
+    readMap(r, paramMap, VariableDecl.class, VariableDecl.class);
+    evalCache = Maps.newHashMap();
+    for (int n = r.readInt(); n > 0; --n)
+      evalCache.put(r.read(), r.read(Type.class));
+    implicitSpec = Maps.newHashMap();
+    for (int n = r.readInt(); n > 0; --n) {
+      Ast a = r.read();
+      Map<Identifier, Type> spec = Maps.newHashMap();
+      for (int m = r.readInt(); m > 0; --m)
+        spec.put(r.read(Identifier.class), r.read(Type.class));
+      implicitSpec.put(a, spec);
+    }
+
+    gc = new GlobalsCollector();
+    flowGraphs = new FlowGraphMaker();
+    try {
+      if (!gc.process(p).isEmpty()) throw new ErrorsFoundException();
+      flowGraphs.process(p);
+    } catch (ErrorsFoundException e) {
+      throw new IOException("The saved program has errors.");
+    }
+    errors = Lists.newArrayList();
+    this.ast = p;
+    return p;
+  }
+
+  /* Checks the implementations of |ast| that are not in |previous|,
+    assuming that the global declarations did not change. */
+  private Program processChangedImplementations(
+      Program previous,
+      Program ast
+  ) throws ErrorsFoundException {
+    Set<Implementation> removed =
+        Sets.newHashSet(previous.implementations());
+    List<Implementation> added = Lists.newArrayList();
+    for (Implementation i : ast.implementations())
+      if (!removed.remove(i)) added.add(i);
+    final int addedCount = added.size();
+    final int total = ast.implementations().size();
+    info(new Supplier<String>() {
+      @Override public String get() {
+        return "Incremental typecheck of " + addedCount + " out of " +
+            total + " implementations.";
+      }
+    });
+    forget(removed, added);
+
+    new SymbolTableBuilder().process(added, st, gc);
+    errors = new ImplementationChecker().process(
+        added, gc, implProc, paramMap);
+    if (!errors.isEmpty()) throw new ErrorsFoundException(errors);
+    flowGraphs.update(removed, added);
+    AstUtils.evalListOfImplementation(ImmutableList.copyOf(added), this);
+    if (!errors.isEmpty()) throw new ErrorsFoundException(errors);
+
+    this.ast = ast;
+    return ast;
+  }
+
+  /* Returns whether |a| and |b| have the same global declarations,
+    except implementations. */
+  private static boolean sameGlobals(Program a, Program b) {
+    return
+        sameElements(a.types(), b.types()) &&
+        sameElements(a.axioms(), b.axioms()) &&
+        sameElements(a.variables(), b.variables()) &&
+        sameElements(a.constants(), b.constants()) &&
+        sameElements(a.functions(), b.functions()) &&
+        sameElements(a.procedures(), b.procedures());
+  }
+
+  private static boolean sameElements(
+      ImmutableList<? extends Ast> a,
+      ImmutableList<? extends Ast> b
+  ) {
+    if (a == b) return true;
+    if (a.size() != b.size()) return false;
+    for (int i = 0; i < a.size(); ++i) if (a.get(i) != b.get(i)) return false;
+    return true;
+  }
+
+  /* Drops the information about the nodes of |removed| that do not
+    also appear in |added|. Nodes shared with |added| are processed
+    again, which updates their information. */
+  private void forget(
+      Collection<Implementation> removed,
+      Collection<Implementation> added
+  ) {
+    Set<Ast> live = Sets.newHashSet();
+    for (Implementation i : added) collectNodes(i, live);
+    Set<Ast> dead = Sets.newHashSet();
+    for (Implementation i : removed) collectDeadNodes(i, live, dead);
+    for (Ast a : dead) {
+      st.forget(a);
+      paramMap.forget(a);
+      evalCache.remove(a);
+      implicitSpec.remove(a);
+    }
+    for (Implementation i : removed) implProc.forget(i);
+  }
+
+  private static void collectNodes(Ast a, Set<Ast> nodes) {
+    nodes.add(a);
+    for (Ast c : a.children()) collectNodes(c, nodes);
+  }
+
+  // Since the AST is a tree, shared nodes have only shared descendants.
+  private static void collectDeadNodes(Ast a, Set<Ast> live, Set<Ast> dead) {
+    if (live.contains(a)) return;
+    dead.add(a);
+    for (Ast c : a.children()) collectDeadNodes(c, live, dead);
+  }
+
+  private static <U extends Ast, D extends Ast> void writeMap(
+      AstWriter w,
+      UsageToDefMap<U, D> map
+  ) throws IOException {
+    w.writeInt(map.allDefs().size());
+    for (D d : map.allDefs()) w.write(d);
+    w.writeInt(map.allUsages().size());
+    for (U u : map.allUsages()) {
+      w.write(u);
+      w.write(map.def(u));
+    }
+  }
+
+  private static <U extends Ast, D extends Ast> void readMap(
+      AstReader r,
+      UsageToDefMap<U, D> map,
+      Class<U> usageType,
+      Class<D> defType
+  ) throws IOException {
+    for (int n = r.readInt(); n > 0; --n) map.seenDef(r.read(defType));
+    for (int n = r.readInt(); n > 0; --n)
+      map.put(r.read(usageType), r.read(defType));
+  }
+
   private static void info(String s) {
     Main.log.say(LogCategories.TYPECHECK, LogLevel.INFO, s);
   }
@@ -737,4 +979,54 @@ public class TypeChecker extends Evaluator<Type> implements TcInterface {
     return null;
   }
   // END keep track of type variables }}}
+
+  // BEGIN testing {{{
+  /**
+   * Typechecks the file {@code args[0]}, and then, incrementally,
+   * the same program with the implementations of {@code args[1]}
+   * that differ. The two files should have the same global
+   * declarations. Errors and the TYPECHECK log go to stderr.
+   *
+   * @param args the two files
+   * @throws Exception thrown if a file can't be read
+   */
+  public static void main(String[] args) throws Exception {
+    Main.log.sink(System.err);
+    Main.log.level(LogLevel.INFO);
+    Main.log.enable(LogCategories.TYPECHECK);
+    Program first = parse(args[0]);
+    Program second = parse(args[1]);
+    if (first == null || second == null) return;
+    TypeChecker tc = new TypeChecker();
+    try {
+      first = tc.process(first);
+      ImmutableList.Builder<Implementation> implementations =
+          ImmutableList.builder();
+      for (int i = 0; i < first.implementations().size(); ++i) {
+        Implementation a = first.implementations().get(i);
+        Implementation b = second.implementations().get(i);
+        implementations.add(text(a).equals(text(b)) ? a : b);
+      }
+      tc.process(first.withImplementations(implementations.build()));
+      System.out.println("No errors.");
+    } catch (ErrorsFoundException e) {
+      e.report();
+    }
+  }
+
+  private static Program parse(String file) throws Exception {
+    FbLexer lexer = new FbLexer(new ANTLRFileStream(file));
+    FbParser parser = new FbParser(new CommonTokenStream(lexer));
+    parser.fileName = new File(file).getName();
+    return parser.program();
+  }
+
+  private static String text(Ast ast) {
+    StringWriter text = new StringWriter();
+    PrettyPrinter pp = new PrettyPrinter();
+    pp.writer(text);
+    ast.eval(pp);
+    return text.toString();
+  }
+  // END testing }}}
 }
@@ -34,7 +34,11 @@ public class UsageToDefMap<U, D> {
     * @param d the definition
     */
    public void put(U u, D d) {
-     usageToDef.put(u, d);
+     D old = usageToDef.put(u, d);
+     if (old != null && old != d) {
+       HashSet<U> oldUsages = defToUsage.get(old);
+       if (oldUsages != null) oldUsages.remove(u);
+     }
      HashSet<U> usages = getUsages(d);
      usages.add(u);
      defToUsage.put(d, usages);
@@ -48,6 +52,20 @@ public class UsageToDefMap<U, D> {
      getUsages(d);
    }
    
+   /**
+    * Removes {@code x}, both as a usage and as a definition. The
+    * usages of {@code x} are not removed, so they should be either
+    * forgotten or connected to some other definition.
+    * @param x the usage or definition to forget
+    */
+   public void forget(Object x) {
+     if (usageToDef.containsKey(x)) {
+       HashSet<U> usages = defToUsage.get(usageToDef.remove(x));
+       if (usages != null) usages.remove(x);
+     }
+     defToUsage.remove(x);
+   }
+
    /**
     * Returns the definition of a usage.
     * @param u the usage
@@ -67,6 +85,23 @@ public class UsageToDefMap<U, D> {
      return defToUsage.get(d);
    }
 
+   /**
+    * Returns all usages. The user should not modify the result.
+    * @return the usages
+    */
+   public Set<U> allUsages() {
+     return usageToDef.keySet();
+   }
+
+   /**
+    * Returns all definitions, including those without usages. The
+    * user should not modify the result.
+    * @return the definitions
+    */
+   public Set<D> allDefs() {
+     return defToUsage.keySet();
+   }
+
    /**
     * Returns the number of definitions.
     * @return the number of definitions
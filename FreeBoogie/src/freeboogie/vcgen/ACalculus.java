@@ -1,8 +1,5 @@
 package freeboogie.vcgen;
 
-import java.util.HashMap;
-
-import com.google.common.collect.Maps;
 import genericutils.Logger;
 import genericutils.SimpleGraph;
 
@@ -21,11 +18,11 @@ import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
  * @param <T> the type of terms
  */
 public abstract class ACalculus<T extends Term<T>> {
-  /** the preconditions of each command. */
-  protected final HashMap<Command, T> preCache = Maps.newHashMap();
+  /** the preconditions of each command, indexed by flow graph ids. */
+  protected T[] preCache;
 
-  /** the postconditions of each command. */
-  protected final HashMap<Command, T> postCache = Maps.newHashMap();
+  /** the postconditions of each command, indexed by flow graph ids. */
+  protected T[] postCache;
 
   /** builds terms for a specific theorem prover. */
   protected TermBuilder<T> term;
@@ -37,6 +34,9 @@ public abstract class ACalculus<T extends Term<T>> {
 
   protected boolean assumeAsserts;
 
+  /** the asserts checked by {@code vc()}, indexed by ids; null means all */
+  private boolean[] checked;
+
   /** the current body which is being inspected. */
   private Body currentBody;
 
@@ -52,9 +52,11 @@ public abstract class ACalculus<T extends Term<T>> {
     this.tc = tc;
   }
 
+  @SuppressWarnings("unchecked")
   public void resetCache() {
-    preCache.clear();
-    postCache.clear();
+    int n = flow == null? 0 : flow.nodeCount();
+    preCache = (T[]) new Term<?>[n];
+    postCache = (T[]) new Term<?>[n];
   }
 
   public Body currentBody() {
@@ -74,9 +76,44 @@ public abstract class ACalculus<T extends Term<T>> {
     currentBody = implementation.body();
     assert flow.isFrozen() : "please freeze flowgraph first";
     assert !flow.hasCycle() : "please cut loops first";
+    checked = null;
     resetCache();
   }
 
+  /**
+    Returns the ids of the asserts in the current flow graph, in
+    topological order.
+   */
+  public int[] asserts() {
+    int[] order = flow.topologicalOrder();
+    int n = 0;
+    for (int b : order) if (isAssert(flow.nodeAt(b))) ++n;
+    int[] result = new int[n];
+    n = 0;
+    for (int b : order) if (isAssert(flow.nodeAt(b))) result[n++] = b;
+    return result;
+  }
+
+  /**
+    Makes the following calls to {@code vc()} check only the asserts
+    with the given ids, until the next {@code prepareFor()}. The
+    other asserts are ignored, or assumed if asserts are assumed.
+    If {@code ids} is {@code null} then all asserts are checked.
+   */
+  public void checkOnly(int[] ids) {
+    if (ids == null) {
+      checked = null;
+      return;
+    }
+    checked = new boolean[flow.nodeCount()];
+    for (int b : ids) checked[b] = true;
+  }
+
+  /** Returns whether the command with id {@code b} should be checked. */
+  protected boolean isChecked(int b) {
+    return checked == null || checked[b];
+  }
+
   /**
    * Returns a verification condition for the whole flow graph.
    * @return a term representing the vc
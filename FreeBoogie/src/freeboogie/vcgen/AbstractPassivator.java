@@ -27,19 +27,20 @@ import freeboogie.tc.*;
   written by a node is not the same as the one read by one of
   its successors (according the the scheme above).
 
-  The read and write indexes are attached to commands by
-  subclasses when the functions {@code readIndex(cmd, cache)}
-  and {@code writeIndex(cmd, cache)} are called.
-
-  Subclasses *may*:
-    - find the parents and the children of a command using
-      {@code parents(cmd)} and {@code children(cmd)}
-    - find if a command reads or writes using {@code reads(cmd)}
-      and {@code writes(cmd)}
-  Subclasses *must*:
-    - store the results they compute in the caches that are
-      accessed using {@code readIndexCache()} and {@code 
-      writeIndexCache()}
+  Variables are numbered once per implementation, commands are
+  identified by their ids in the (frozen) flow graph, and all
+  indexes are computed in one pass over the commands, in
+  topological order. The indexes of a command are kept in an array
+  that has one element per written variable. A command that does
+  not write shares its write array with its read array, and a
+  command with only one predecessor shares its read array with the
+  write array of that predecessor. Arrays are never modified once
+  they are computed.
+
+  Subclasses decide only what is the read index of a command with
+  several predecessors, by implementing {@code merge(ws)}. The
+  write index is always the read index plus one if the command
+  writes the variable, and the read index otherwise.
 
   @author rgrig
  */
@@ -83,13 +84,12 @@ public abstract class AbstractPassivator extends Transformer {
     Renaming could be done here and adding assume could be done in
     a different transformer if this one gets big.
    */
-  private HashMap<VariableDecl, HashMap<Command, Integer>> readIdx;
-  private HashMap<VariableDecl, HashMap<Command, Integer>> writeIdx;
-  private HashMap<VariableDecl, Integer> toReport;
+  private HashMap<VariableDecl, Integer> varIds;
+  private VariableDecl[] vars; // written by the current implementation
+  private int[][] readIdx;  // [command][variable], by flow graph ids
+  private int[][] writeIdx; // [command][variable]
 
   private Command currentCommand;
-  private VariableDecl currentVar;
-  private HashSet<VariableDecl> allWritten; // by the current implementation
   private ImmutableList.Builder<VariableDecl> newLocals;
 
   private ArrayDeque<Command> trailingCommands = new ArrayDeque<Command>();
@@ -98,53 +98,16 @@ public abstract class AbstractPassivator extends Transformer {
   private int belowOld;
   private boolean inResults;
 
-  // === used by subclasses ===
   private HashMap<VariableDecl, Integer> newVarsCnt;
-  private HashMap<Command, HashSet<VariableDecl>> commandWs;
-  private HashMap<Command, HashSet<VariableDecl>> commandRs;
   private ReadWriteSetFinder rwsf;
-  private HashMap<Command, Integer> currentReadIdxCache;
-  private HashMap<Command, Integer> currentWriteIdxCache;
   private SimpleGraph<Command> currentFG;
 
-  abstract int computeReadIndex(Command c);
-  abstract int computeWriteIndex(Command c);
-
-  Set<Command> parents(Command c) {
-    return currentFG.from(c);
-  }
-
-  Set<Command> children(Command c) {
-    return currentFG.to(c);
-  }
-
-  boolean writes(Command c) {
-    HashSet<VariableDecl> ws = commandWs.get(c);
-    if (ws == null) {
-      ws = Sets.newLinkedHashSet();
-      for (VariableDecl vd : rwsf.get(c).second) ws.add(vd);
-      commandWs.put(c, ws);
-    }
-    return ws.contains(currentVar);
-  }
-
-  boolean reads(Command c) {
-    HashSet<VariableDecl> rs = commandRs.get(c);
-    if (rs == null) {
-      rs = Sets.newLinkedHashSet();
-      for (VariableDecl vd : rwsf.get(c).first) rs.add(vd);
-      commandRs.put(c, rs);
-    }
-    return rs.contains(currentVar);
-  }
-
-  Map<Command, Integer> readIndexCache() {
-    return currentReadIdxCache;
-  }
-
-  Map<Command, Integer> writeIndexCache() {
-    return currentWriteIdxCache;
-  }
+  /**
+    Returns the read indexes of a command whose predecessors have
+    the write indexes {@code ws}. There are at least two
+    predecessors. The result must be a fresh array.
+   */
+  abstract int[] merge(int[][] ws);
 
   // === transformers ===
 
@@ -152,11 +115,7 @@ public abstract class AbstractPassivator extends Transformer {
   @Override public Program eval(Program program) {
     ImmutableList<Implementation> implementations = program.implementations();
     ImmutableList<VariableDecl> variables = program.variables();
-    readIdx = Maps.newHashMap();
-    writeIdx = Maps.newHashMap();
     newVarsCnt = Maps.newHashMap();
-    toReport = Maps.newHashMap();
-    commandWs = Maps.newHashMap();
     rwsf = new ReadWriteSetFinder(tc.st());
     implementations = AstUtils.evalListOfImplementation(implementations, this);
     if (!newVarsCnt.isEmpty()) {
@@ -197,30 +156,20 @@ public abstract class AbstractPassivator extends Transformer {
       return implementation;
     }
     
-    // collect all variables that are assigned to
+    // number the variables that are assigned to
     Pair<CSeq<VariableDecl>, CSeq<VariableDecl>> rwIds = 
         implementation.eval(rwsf);
-    allWritten = Sets.newLinkedHashSet();
-    for (VariableDecl vd : rwIds.second) allWritten.add(vd);
-
-    // figure out read and write indexes
-    for (VariableDecl vd : allWritten) {
-      currentVar = vd;
-      currentReadIdxCache = Maps.newLinkedHashMap();
-      currentWriteIdxCache = Maps.newLinkedHashMap();
-      readIdx.put(vd, currentReadIdxCache);
-      writeIdx.put(vd, currentWriteIdxCache);
-      currentFG.iterNode(new Closure<Command>() {
-        @Override public void go(Command c) {
-          computeReadIndex(c);
-          computeWriteIndex(c);
-        }
-      });
-      Integer maxVersion = newVarsCnt.get(currentVar);
+    varIds = Maps.newLinkedHashMap();
+    for (VariableDecl vd : rwIds.second)
+      if (!varIds.containsKey(vd)) varIds.put(vd, varIds.size());
+    vars = varIds.keySet().toArray(new VariableDecl[varIds.size()]);
+
+    computeIndexes();
+    for (int v = 0; v < vars.length; ++v) {
+      Integer maxVersion = newVarsCnt.get(vars[v]);
       if (maxVersion == null) maxVersion = 0;
-      for (int version : currentWriteIdxCache.values()) 
-        maxVersion = Math.max(maxVersion, version);
-      newVarsCnt.put(currentVar, maxVersion);
+      for (int[] w : writeIdx) maxVersion = Math.max(maxVersion, w[v]);
+      newVarsCnt.put(vars[v], maxVersion);
     }
 
     // transform the body and the out parameters
@@ -424,15 +373,41 @@ public abstract class AbstractPassivator extends Transformer {
   // END other visitors }}}
 
   // === helpers ===
-  private int getIdx(
-      HashMap<VariableDecl, HashMap<Command, Integer> > cache, 
-      VariableDecl vd
-  ) {
-    Map<Command, Integer> m = cache.get(vd);
-    if (m == null || belowOld > 0) 
-      return 0; // this variable is never written to
-    Integer idx = m.get(currentCommand);
-    return idx == null? 0 : idx;
+  private void computeIndexes() {
+    int n = currentFG.nodeCount();
+    readIdx = new int[n][];
+    writeIdx = new int[n][];
+    int[] none = new int[vars.length];
+    for (int c : currentFG.topologicalOrder()) {
+      int pb = currentFG.parentsBegin(c);
+      int pe = currentFG.parentsEnd(c);
+      int[] r;
+      if (pb == pe) r = none;
+      else if (pb + 1 == pe) r = writeIdx[currentFG.parentAt(pb)];
+      else {
+        int[][] ws = new int[pe - pb][];
+        for (int e = pb; e < pe; ++e)
+          ws[e - pb] = writeIdx[currentFG.parentAt(e)];
+        r = merge(ws);
+      }
+      readIdx[c] = r;
+
+      int[] w = r;
+      for (VariableDecl vd : rwsf.get(currentFG.nodeAt(c)).second) {
+        int v = varIds.get(vd);
+        if (w == r) w = r.clone();
+        if (w[v] == r[v]) ++w[v];
+      }
+      writeIdx[c] = w;
+    }
+  }
+
+  private int getIdx(int[][] idx, VariableDecl vd) {
+    if (belowOld > 0) return 0;
+    Integer v = varIds.get(vd);
+    if (v == null) return 0; // this variable is never written to
+    int c = currentFG.id(currentCommand);
+    return c == -1? 0 : idx[c][v];
   }
 
   private String name(String prefix, int count) {
@@ -443,9 +418,13 @@ public abstract class AbstractPassivator extends Transformer {
   private ArrayDeque<Command> getCopyCommands(Command ca, Command cb) {
     ImmutableList<String> labels = ImmutableList.of(Id.get("copy"));
     ArrayDeque<Command> result = new ArrayDeque<Command>();
-    for (VariableDecl v : allWritten) {
-      int wi = writeIdx.get(v).get(ca);
-      int ri = readIdx.get(v).get(cb);
+    int[] ws = writeIdx[currentFG.id(ca)];
+    int[] rs = readIdx[currentFG.id(cb)];
+    if (ws == rs) return result;
+    for (int i = 0; i < vars.length; ++i) {
+      VariableDecl v = vars[i];
+      int wi = ws[i];
+      int ri = rs[i];
       if (ri == wi) continue;
       result.add(AssertAssumeCmd.mk(
           labels,
@@ -6,12 +6,22 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+import freeboogie.Main;
 import freeboogie.ast.*;
 import freeboogie.backend.*;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
 
 /**
  * Sends global axioms to the prover. These include Boogie axioms
  * and axioms for uniqueness of constants.
+ *
+ * If a relevance depth is set, then {@code process()} sends nothing.
+ * Instead, {@code axiomsFor()} gives the axioms relevant to one
+ * implementation, which should be assumed only while checking it.
+ * An axiom is relevant if it is at most depth hops away from the
+ * implementation, as computed by {@code DependencyCollector}; and
+ * only the relevant unique constants are said to be distinct.
  * @param <T> the type of terms
  */
 public class AxiomSender<T extends Term<T>> extends Transformer {
@@ -20,12 +30,35 @@ public class AxiomSender<T extends Term<T>> extends Transformer {
   private Set<T> axioms = Sets.newHashSet();
   private List<String> uniqConst = Lists.newArrayList();
 
+  private int depth = -1; // negative means that all axioms are global
+  private Program program;
+  private DependencyCollector dependencies;
+
   public void setProver(Prover<T> prover) {
     this.prover = prover;
     this.term = prover.getBuilder();
   }
 
+  /** Sets the builder, for when only {@code axiomsFor()} is used. */
+  public void setBuilder(TermBuilder<T> term) {
+    this.term = term;
+  }
+
+  /**
+   * Sets how many hops away from an implementation an axiom may be
+   * and still be relevant. A negative {@code depth} means that all
+   * axioms are sent by {@code process()}, which is the default.
+   */
+  public void relevanceDepth(int depth) {
+    this.depth = depth;
+  }
+
   public void process(Program p) throws ProverException {
+    program = p;
+    if (depth >= 0) {
+      dependencies = new DependencyCollector(p);
+      return;
+    }
     axioms.clear();
     uniqConst.clear();
     p.eval(this);
@@ -38,6 +71,36 @@ public class AxiomSender<T extends Term<T>> extends Transformer {
     for (T t : axioms) prover.assume(t);
   }
 
+  /**
+   * Returns the axioms relevant to {@code implementation} of the
+   * last processed program, or nothing if no relevance depth is set.
+   */
+  public Set<T> axiomsFor(Implementation implementation) {
+    Set<T> result = Sets.newHashSet();
+    if (depth < 0) return result;
+    Set<Declaration> relevant = dependencies.dependencies(
+        ImmutableList.of(implementation), depth);
+    int count = 0;
+    for (Axiom a : program.axioms()) {
+      if (!relevant.contains(a)) continue;
+      T t = term.of(a.expr());
+      result.add(t);
+      t.collectAxioms(result);
+      ++count;
+    }
+    ImmutableList.Builder<T> uc = ImmutableList.builder();
+    for (ConstDecl c : program.constants()) {
+      if (c.uniq() && relevant.contains(c))
+        uc.add(term.mk("var", "term$$" + c.name()));
+    }
+    result.add(term.mk("distinct", uc.build()));
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "relevant_axioms " + count + " " + program.axioms().size());
+    return result;
+  }
+
   @Override public void see(Axiom axiom) {
     T a = term.of(axiom.expr());
     axioms.add(a);
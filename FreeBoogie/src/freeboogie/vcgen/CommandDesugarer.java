@@ -53,8 +53,9 @@ public class CommandDesugarer extends Transformer {
   @Override public Body eval(Body body) {
     newVars = ImmutableList.builder();
     Block nb = (Block) body.block().eval(this);
-    newVars.addAll(body.vars());
-    return Body.mk(newVars.build(), nb, body.loc());
+    ImmutableList<VariableDecl> vars = newVars.addAll(body.vars()).build();
+    if (nb == body.block() && vars.size() == body.vars().size()) return body;
+    return Body.mk(vars, nb, body.loc());
   }
 
   @Override public Block eval(Block block) {
@@ -68,7 +69,7 @@ public class CommandDesugarer extends Transformer {
       Command nc = (Command) c.eval(this);
       newCommands.addAll(equivCmds.peekFirst());
       if (nc != null)  newCommands.add(nc);
-      same = equivCmds.isEmpty() && nc == c;
+      same &= equivCmds.peekFirst().isEmpty() && nc == c;
     }
     equivCmds.removeFirst();
     toSubstitute.removeFirst();
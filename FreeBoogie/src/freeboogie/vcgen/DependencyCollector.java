@@ -0,0 +1,151 @@
+package freeboogie.vcgen;
+
+import java.util.*;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import freeboogie.ast.*;
+import freeboogie.tc.GlobalsCollector;
+
+/**
+  Finds the global declarations of a program on which some given
+  declarations depend.
+
+  Dependencies are found by name, using {@code GlobalsCollector},
+  so the program need not be typechecked. A local variable that
+  has the same name as a global one keeps the global declaration
+  alive, which is harmless. An axiom is a dependency if it
+  mentions a function or a constant that is a dependency, or if
+  it mentions no function and no constant at all. In turn, an
+  axiom that is a dependency brings in everything it mentions.
+
+  What each declaration mentions is computed once, so asking for
+  the dependencies of many roots in the same program is cheap.
+
+  The search may be limited to axioms that are at most a given
+  number of hops away from the roots: An axiom that constrains a
+  root, or something a root mentions, is one hop away; an axiom
+  that constrains something mentioned by an axiom that is one hop
+  away is two hops away; and so on.
+ */
+public class DependencyCollector extends Transformer {
+  private final GlobalsCollector gc;
+
+  // what each declaration mentions, computed lazily
+  private final Map<Declaration, Set<Declaration>> mentions =
+      Maps.newHashMap();
+
+  // axioms that mention no function and no constant
+  private final List<Axiom> freeAxioms = Lists.newArrayList();
+
+  // functions and constants to the axioms that mention them
+  private final SetMultimap<Declaration, Axiom> axiomsOf =
+      HashMultimap.create();
+
+  // used while visiting
+  private Set<Declaration> mentioned;
+
+  /** Prepares to find dependencies in {@code program}. */
+  public DependencyCollector(Program program) {
+    gc = new GlobalsCollector();
+    gc.process(program); // errors are reported by the typechecker
+    for (Axiom a : program.axioms()) {
+      boolean constrainsSomething = false;
+      for (Declaration d : mentions(a)) {
+        if (d instanceof FunctionDecl || d instanceof ConstDecl) {
+          axiomsOf.put(d, a);
+          constrainsSomething = true;
+        }
+      }
+      if (!constrainsSomething) freeAxioms.add(a);
+    }
+  }
+
+  /** Returns the procedure named {@code name}, or {@code null}. */
+  public Procedure procedure(String name) {
+    return gc.procDef(name);
+  }
+
+  /**
+    Returns {@code roots} together with all the global declarations
+    they depend on.
+   */
+  public Set<Declaration> dependencies(
+      Collection<? extends Declaration> roots
+  ) {
+    return dependencies(roots, -1);
+  }
+
+  /**
+    Returns {@code roots} together with the global declarations
+    they depend on, keeping only axioms that are at most {@code
+    hops} away. A negative {@code hops} means no limit.
+   */
+  public Set<Declaration> dependencies(
+      Collection<? extends Declaration> roots,
+      int hops
+  ) {
+    Set<Declaration> result = Sets.newHashSet();
+    Deque<Declaration> toVisit = new ArrayDeque<Declaration>();
+    Deque<Declaration> nextHop = new ArrayDeque<Declaration>();
+    for (Declaration d : roots) keep(d, result, toVisit);
+    for (Axiom a : freeAxioms) keep(a, result, toVisit);
+    for (int hop = 0; !toVisit.isEmpty(); ++hop) {
+      boolean more = hops < 0 || hop < hops;
+      while (!toVisit.isEmpty()) {
+        Declaration d = toVisit.removeFirst();
+        for (Declaration m : mentions(d)) keep(m, result, toVisit);
+        if (more) for (Axiom a : axiomsOf.get(d)) keep(a, result, nextHop);
+      }
+      Deque<Declaration> t = toVisit; toVisit = nextHop; nextHop = t;
+    }
+    return result;
+  }
+
+  // === helpers ===
+  private static void keep(
+      Declaration d,
+      Set<Declaration> kept,
+      Deque<Declaration> toVisit
+  ) {
+    if (d != null && kept.add(d)) toVisit.addLast(d);
+  }
+
+  private Set<Declaration> mentions(Declaration d) {
+    Set<Declaration> result = mentions.get(d);
+    if (result == null) {
+      mentioned = Sets.newHashSet();
+      d.eval(this);
+      result = mentioned;
+      result.remove(null);
+      mentioned = null;
+      mentions.put(d, result);
+    }
+    return result;
+  }
+
+  // === visitors ===
+  @Override public void see(Identifier identifier) {
+    mentioned.add(gc.idDef(identifier.id()));
+    super.see(identifier);
+  }
+
+  @Override public void see(FunctionApp functionApp) {
+    mentioned.add(gc.funDef(functionApp.function()));
+    super.see(functionApp);
+  }
+
+  @Override public void see(CallCmd callCmd) {
+    mentioned.add(gc.procDef(callCmd.procedure()));
+    super.see(callCmd);
+  }
+
+  @Override public void see(UserType userType) {
+    mentioned.add(gc.typeDef(userType.name()));
+    super.see(userType);
+  }
+}
@@ -145,29 +145,49 @@ public class HavocMaker extends CommandDesugarer {
 
   // === scc ===
 
+  // explicit stacks are used because flow graphs may be deep
+
   private void dfs1(Command b) {
     if (seen.contains(b)) return;
     seen.add(b);
-//System.out.println("dfs1 " + b.getName());
-    for (Command c : flowGraph.to(b)) dfs1(c);
-    dfs2order.add(b);
+    ArrayDeque<Command> stack = new ArrayDeque<Command>();
+    ArrayDeque<Iterator<Command>> next = new ArrayDeque<Iterator<Command>>();
+    stack.addFirst(b);
+    next.addFirst(flowGraph.to(b).iterator());
+    while (!stack.isEmpty()) {
+      if (next.peekFirst().hasNext()) {
+        Command c = next.peekFirst().next();
+        if (seen.contains(c)) continue;
+        seen.add(c);
+        stack.addFirst(c);
+        next.addFirst(flowGraph.to(c).iterator());
+      } else {
+        next.removeFirst();
+        dfs2order.add(stack.removeFirst());
+      }
+    }
   }
 
   private void dfs2(Command b) {
+    ArrayDeque<Command> toVisit = new ArrayDeque<Command>();
     scc.put(b, sccIndex);
-    sccSize.set(sccIndex, 1 + sccSize.get(sccIndex));
-//System.out.println("dfs2 " + b.getName() + ", idx " + sccIndex);
-
-    Pair<CSeq<VariableDecl>, CSeq<VariableDecl>> rwVars = b.eval(rw);
-    for (VariableDecl vd : rwVars.second)
-      sccAssignedVars.add(vd.name());
-
-    for (Command c : flowGraph.from(b)) {
-      Integer cScc = scc.get(c);
-      if (cScc == null)
-        dfs2(c);
-      else if (cScc != sccIndex)
-        sccOfEntryPoint.put(b, sccIndex);
+    toVisit.addFirst(b);
+    while (!toVisit.isEmpty()) {
+      b = toVisit.removeFirst();
+      sccSize.set(sccIndex, 1 + sccSize.get(sccIndex));
+
+      Pair<CSeq<VariableDecl>, CSeq<VariableDecl>> rwVars = b.eval(rw);
+      for (VariableDecl vd : rwVars.second)
+        sccAssignedVars.add(vd.name());
+
+      for (Command c : flowGraph.from(b)) {
+        Integer cScc = scc.get(c);
+        if (cScc == null) {
+          scc.put(c, sccIndex);
+          toVisit.addFirst(c);
+        } else if (cScc != sccIndex)
+          sccOfEntryPoint.put(b, sccIndex);
+      }
     }
   }
 }
@@ -1,12 +1,7 @@
 package freeboogie.vcgen;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Sets;
 import genericutils.Err;
-import genericutils.Pair;
 import genericutils.SimpleGraph;
 
 import freeboogie.ast.*;
@@ -18,19 +13,21 @@ import freeboogie.ast.*;
 public class LoopCutter extends CommandDesugarer {
   private SimpleGraph<Command> currentFG;
 
-  private HashSet<Command> seen = Sets.newHashSet();
-  private HashSet<Command> done = Sets.newHashSet();
-  private HashSet<Pair<Command, Command>> toRemove = Sets.newHashSet();
+  // indexed by flow graph ids of commands and of edges
+  private boolean[] seen;
+  private boolean[] done;
+  private boolean[] toRemove;
   private boolean hasStuck;
 
   // === transformer methods ===
 
   @Override public Implementation eval(Implementation implementation) {
-    seen.clear();
-    done.clear();
-    toRemove.clear();
     currentFG = tc.flowGraph(implementation);
-    dfs(implementation.body().block().commands().get(0));
+    int n = currentFG.nodeCount();
+    seen = new boolean[n];
+    done = new boolean[n];
+    toRemove = new boolean[n == 0? 0 : currentFG.childrenEnd(n - 1)];
+    dfs(currentFG.id(implementation.body().block().commands().get(0)));
     Body newBody = (Body) implementation.body().eval(this);
     if (newBody != implementation.body()) {
       implementation = Implementation.mk(
@@ -47,13 +44,16 @@ public class LoopCutter extends CommandDesugarer {
   }
 
   @Override public Command eval(GotoCmd command) {
-    if (!done.contains(command)) return null;
+    int b = currentFG.id(command);
+    if (!done[b]) return null;
     ImmutableList.Builder<String> builder = ImmutableList.builder();
-    for (Command c : currentFG.to(command)) {
-      if (!toRemove.contains(Pair.of(command, c))) 
-        builder.add(c.labels().get(0));
+    int end = currentFG.childrenEnd(b);
+    for (int e = currentFG.childrenBegin(b); e < end; ++e) {
+      if (!toRemove[e]) 
+        builder.add(currentFG.nodeAt(currentFG.childAt(e)).labels().get(0));
     }
     ImmutableList<String> newSuccessors = builder.build();
+    if (newSuccessors.equals(command.successors())) return command;
     if (newSuccessors.isEmpty() && !command.successors().isEmpty())
       addEquivalentCommand(AstUtils.stuckCmd(command.labels(), command.loc()));
     return GotoCmd.mk(command.labels(), newSuccessors, command.loc());
@@ -76,10 +76,10 @@ public class LoopCutter extends CommandDesugarer {
   }
 
   private Command processCommand(Command command) {
-    if (!done.contains(command)) return null;
-    Set<Command> next = currentFG.to(command);
-    assert next.size() == 1;
-    if (toRemove.contains(Pair.of(command, next.iterator().next()))) {
+    int b = currentFG.id(command);
+    if (!done[b]) return null;
+    assert currentFG.childrenEnd(b) - currentFG.childrenBegin(b) == 1;
+    if (toRemove[currentFG.childrenBegin(b)]) {
       addEquivalentCommand(command);
       return GotoCmd.mk(noString, noString, command.loc());
     }
@@ -92,15 +92,31 @@ public class LoopCutter extends CommandDesugarer {
 
   // === depth first search for back edges ===
 
-  private void dfs(Command b) {
-    seen.add(b);
-    for (Command c : currentFG.to(b)) {
-      if (done.contains(c)) continue;
-      if (seen.contains(c))
-        toRemove.add(Pair.of(b, c));
-      else
-        dfs(c);
+  private void dfs(int root) {
+    // explicit stack, because flow graphs may be deep
+    int[] stack = new int[seen.length];
+    int[] next = new int[seen.length]; // the next out-edge to follow
+    int top = 0;
+    stack[0] = root;
+    next[root] = currentFG.childrenBegin(root);
+    seen[root] = true;
+    while (top >= 0) {
+      int b = stack[top];
+      if (next[b] < currentFG.childrenEnd(b)) {
+        int e = next[b]++;
+        int c = currentFG.childAt(e);
+        if (done[c]) continue;
+        if (seen[c])
+          toRemove[e] = true;
+        else {
+          seen[c] = true;
+          next[c] = currentFG.childrenBegin(c);
+          stack[++top] = c;
+        }
+      } else {
+        done[b] = true;
+        --top;
+      }
     }
-    done.add(b);
   }
 }
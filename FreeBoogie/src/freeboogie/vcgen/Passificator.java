@@ -1,11 +1,5 @@
 package freeboogie.vcgen;
 
-import java.util.TreeSet;
-
-import com.google.common.collect.Sets;
-
-import freeboogie.ast.Command;
-
 /**
   Computes the read index and the write index using the
   algorithm in ESC/Java.
@@ -19,29 +13,18 @@ import freeboogie.ast.Command;
   @author rgrig
  */
 public class Passificator extends AbstractPassivator {
-  int computeReadIndex(Command c) {
-    Integer alreadyComputed = readIndexCache().get(c);
-    if (alreadyComputed != null) return alreadyComputed;
-
-    int ri = 0;
-    TreeSet<Integer> wm = Sets.newTreeSet();
-    for (Command m : parents(c)) wm.add(computeWriteIndex(m));
-    if (!wm.isEmpty()) {
-      ri = wm.last();
-      if (wm.size() > 1) ++ri; // for some strange reason
+  int[] merge(int[][] ws) {
+    int[] ri = new int[ws[0].length];
+    for (int v = 0; v < ri.length; ++v) {
+      int first = ws[0][v];
+      int max = first;
+      boolean allEqual = true;
+      for (int m = 1; m < ws.length; ++m) {
+        max = Math.max(max, ws[m][v]);
+        allEqual &= ws[m][v] == first;
+      }
+      ri[v] = allEqual? max : max + 1; // for some strange reason
     }
-    readIndexCache().put(c, ri);
     return ri;
   }
-
-  int computeWriteIndex(Command c) {
-    Integer alreadyComputed = writeIndexCache().get(c);
-    if (alreadyComputed != null) return alreadyComputed;
-
-    int wi = computeReadIndex(c);
-    if (writes(c)) ++wi;
-    writeIndexCache().put(c, wi);
-    return wi;
-  }
 }
-
@@ -1,7 +1,5 @@
 package freeboogie.vcgen;
 
-import freeboogie.ast.Command;
-
 /**
   Computes the read index and the write index, optimizing the
   total number of variable versions.
@@ -14,24 +12,11 @@ import freeboogie.ast.Command;
   @author rgrig
  */
 public class Passivator extends AbstractPassivator {
-  int computeReadIndex(Command c) {
-    Integer alreadyComputed = readIndexCache().get(c);
-    if (alreadyComputed != null) return alreadyComputed;
-
-    int ri = 0;
-    for (Command pre : parents(c))
-      ri = Math.max(ri, computeWriteIndex(pre));
-    readIndexCache().put(c, ri);
+  int[] merge(int[][] ws) {
+    int[] ri = ws[0].clone();
+    for (int m = 1; m < ws.length; ++m)
+      for (int v = 0; v < ri.length; ++v)
+        ri[v] = Math.max(ri[v], ws[m][v]);
     return ri;
   }
-
-  int computeWriteIndex(Command c) {
-    Integer alreadyComputed = writeIndexCache().get(c);
-    if (alreadyComputed != null) return alreadyComputed;
-
-    int wi = computeReadIndex(c);
-    if (writes(c)) ++wi;
-    writeIndexCache().put(c, wi);
-    return wi;
-  }
 }
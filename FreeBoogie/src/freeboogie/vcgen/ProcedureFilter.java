@@ -0,0 +1,70 @@
+package freeboogie.vcgen;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import freeboogie.ast.*;
+import freeboogie.tc.TcInterface;
+
+/**
+  Keeps only the implementations whose name matches a regular
+  expression, and only the global declarations they depend on.
+
+  This is meant to be the first stage, so that the rest of the
+  pipeline handles only what is needed to check the selected
+  implementations. It does not typecheck its result: The next
+  stage is expected to do it.
+
+  The selected implementations keep their procedures alive. The
+  other dependencies are found by {@code DependencyCollector}.
+ */
+public class ProcedureFilter extends Transformer {
+  private final Pattern selected;
+
+  private Set<Declaration> kept;
+
+  /** Keep implementations whose names match {@code regex}. */
+  public ProcedureFilter(String regex) {
+    selected = Pattern.compile(regex);
+  }
+
+  @Override public Program process(Program program, TcInterface tc) {
+    this.tc = tc;
+    DependencyCollector dc = new DependencyCollector(program);
+
+    List<Declaration> roots = Lists.newArrayList();
+    ImmutableList.Builder<Implementation> implementations =
+        ImmutableList.builder();
+    for (Implementation i : program.implementations()) {
+      if (!selected.matcher(i.sig().name()).matches()) continue;
+      implementations.add(i);
+      roots.add(i);
+      Procedure p = dc.procedure(i.sig().name());
+      if (p != null) roots.add(p);
+    }
+    kept = dc.dependencies(roots);
+
+    return Program.mk(
+        program.fileName(),
+        onlyKept(program.types()),
+        onlyKept(program.axioms()),
+        onlyKept(program.variables()),
+        onlyKept(program.constants()),
+        onlyKept(program.functions()),
+        onlyKept(program.procedures()),
+        implementations.build(),
+        program.loc());
+  }
+
+  // === helpers ===
+  private <D extends Declaration> ImmutableList<D> onlyKept(
+      ImmutableList<D> declarations
+  ) {
+    List<D> result = Lists.newArrayList();
+    for (D d : declarations) if (kept.contains(d)) result.add(d);
+    return ImmutableList.copyOf(result);
+  }
+}
@@ -0,0 +1,206 @@
+package freeboogie.vcgen;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import freeboogie.Main;
+import freeboogie.ast.Program;
+import freeboogie.backend.*;
+import freeboogie.tc.TcInterface;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
+
+/**
+  Keeps a fixed number of provers and uses them to check queries
+  concurrently.
+
+  Before checking queries you must {@code load()} a program.
+  This registers its function symbols with each prover and sends
+  it the global axioms. The same is done for the builder returned
+  by {@code getBuilder()}, which should be used to construct the
+  queries, but which is not attached to any prover.
+
+  The method {@code check()} returns immediately. The query is
+  handled by the first prover that becomes idle. If a prover
+  fails then it is replaced by a fresh one, and the failure is
+  reported through the returned future. A fresh prover is loaded
+  with the last program before it checks its first query; if that
+  fails, then so does the query.
+
+  If a relevance depth is set, then {@code load()} sends no axioms:
+  The caller is expected to pass the relevant ones with each query.
+
+  Provers are made by the factory given to the constructor. The
+  threads used by the pool are daemons, so they do not keep the
+  JVM alive.
+ */
+public class ProverPool {
+  private final Supplier<Prover<SmtTerm>> factory;
+  private final BlockingQueue<Prover<SmtTerm>> idle;
+  private final Set<Prover<SmtTerm>> unloaded; // idle but not loaded
+  private final ExecutorService executor;
+  private final int size;
+
+  private TermBuilder<SmtTerm> builder;
+  private int axiomDepth = -1;
+  private Program program;
+  private TcInterface tc;
+
+  /**
+    Starts {@code size} provers obtained from {@code factory}. The
+    factory is expected to return provers that have one frame of
+    assumptions already pushed; {@code load()} replaces the
+    content of the bottom frame.
+   */
+  public ProverPool(int size, Supplier<Prover<SmtTerm>> factory) {
+    Preconditions.checkArgument(size > 0);
+    this.size = size;
+    this.factory = factory;
+    idle = new ArrayBlockingQueue<Prover<SmtTerm>>(size);
+    unloaded = Sets.newSetFromMap(
+        new ConcurrentHashMap<Prover<SmtTerm>, Boolean>());
+    for (int i = 0; i < size; ++i) idle.add(factory.get());
+    executor = Executors.newFixedThreadPool(
+        size,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("prover-%d")
+            .build());
+    builder = new SmtTermBuilder();
+  }
+
+  /** Returns the number of provers in this pool. */
+  public int size() {
+    return size;
+  }
+
+  /**
+    Returns a builder that knows about the functions of the
+    last loaded program. Use it to construct queries.
+   */
+  public TermBuilder<SmtTerm> getBuilder() {
+    return builder;
+  }
+
+  /** See {@code AxiomSender.relevanceDepth()}. */
+  public void relevanceDepth(int depth) {
+    axiomDepth = depth;
+  }
+
+  /**
+    Prepares all provers for checking queries about {@code program}.
+    No query should be in progress. If some prover fails, then it
+    is replaced by a fresh one and the exception is rethrown. The
+    provers that were not loaded load the program when they are
+    first used.
+   */
+  public void load(Program program, TcInterface tc) throws ProverException {
+    this.program = program;
+    this.tc = tc;
+    registerFunctions(builder);
+    List<Prover<SmtTerm>> provers = Lists.newArrayList();
+    idle.drainTo(provers);
+    assert provers.size() == size : "There are queries in progress.";
+    ProverException failure = null;
+    for (Prover<SmtTerm> p : provers) {
+      unloaded.add(p);
+      if (failure == null) {
+        try {
+          load(p);
+        } catch (ProverException e) {
+          failure = e;
+          p = replace(p);
+        }
+      }
+      idle.add(p);
+    }
+    if (failure != null) throw failure;
+  }
+
+  /**
+    Schedules the check of {@code vc} in the context of {@code
+    axioms} (in addition to the global ones). The future holds
+    whether {@code vc} is valid. If the prover fails, then getting
+    the result throws an {@code ExecutionException} that wraps a
+    {@code ProverException}. The prover may spend at most {@code
+    timeLimit} milliseconds on the query; zero means no limit.
+   */
+  public Future<Boolean> check(
+      final SmtTerm vc,
+      Set<SmtTerm> axioms,
+      final long timeLimit
+  ) {
+    final ImmutableSet<SmtTerm> localAxioms = ImmutableSet.copyOf(axioms);
+    return executor.submit(new Callable<Boolean>() {
+      @Override public Boolean call() throws Exception {
+        Prover<SmtTerm> p = idle.take();
+        try {
+          if (unloaded.contains(p)) load(p);
+          p.setTimeLimit(timeLimit);
+          p.push();
+          for (SmtTerm t : localAxioms) p.assume(t);
+          boolean result = p.isValid(vc);
+          p.pop();
+          return result;
+        } catch (ProverException e) {
+          p = restart(p);
+          throw e;
+        } finally {
+          idle.put(p);
+        }
+      }
+    });
+  }
+
+  /** Kills all provers. The pool should not be used afterwards. */
+  public void terminate() {
+    executor.shutdownNow();
+    for (Prover<SmtTerm> p : idle) p.terminate();
+  }
+
+  // === helpers ===
+  private void load(Prover<SmtTerm> p) throws ProverException {
+    registerFunctions(p.getBuilder());
+    AxiomSender<SmtTerm> axiomSender = new AxiomSender<SmtTerm>();
+    axiomSender.setProver(p);
+    axiomSender.relevanceDepth(axiomDepth);
+    p.pop();
+    axiomSender.process(program);
+    p.push();
+    unloaded.remove(p);
+  }
+
+  private void registerFunctions(TermBuilder<SmtTerm> b) {
+    FunctionRegisterer functionRegisterer = new FunctionRegisterer();
+    b.setTypeChecker(tc);
+    functionRegisterer.setBuilder(b);
+    b.popDef();
+    functionRegisterer.process(program, tc);
+    b.pushDef();
+  }
+
+  private Prover<SmtTerm> restart(Prover<SmtTerm> p) {
+    Main.log.say(
+        LogCategories.VCGEN,
+        LogLevel.WARNING,
+        "Restarting a prover from the pool.");
+    return replace(p);
+  }
+
+  // terminates {@code p} and returns a fresh prover that isn't loaded
+  private Prover<SmtTerm> replace(Prover<SmtTerm> p) {
+    unloaded.remove(p);
+    p.terminate();
+    p = factory.get();
+    unloaded.add(p);
+    return p;
+  }
+}
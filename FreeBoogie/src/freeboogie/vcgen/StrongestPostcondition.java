@@ -1,9 +1,5 @@
 package freeboogie.vcgen;
 
-import java.util.ArrayList;
-
-import genericutils.Closure;
-
 import freeboogie.ast.Command;
 import freeboogie.backend.Term;
 import freeboogie.tc.TcInterface;
@@ -56,52 +52,47 @@ import com.google.common.collect.ImmutableList;
  */
 public class StrongestPostcondition<T extends Term<T>> extends ACalculus<T> {
   /**
-   * Returns the precondition of {@code b}, which must be in
-   * the last set flow graph.
+   * Computes the precondition and the postcondition of all the
+   * commands in the last set flow graph. The commands are processed
+   * in topological order, so that the preconditions of a command
+   * are known when its postcondition is needed.
    */
-  private T pre(Command b) {
-    T r = preCache.get(b);
-    if (r != null) return r;
-    ImmutableList.Builder<T> toOr = ImmutableList.builder();
-    for (Command p : flow.from(b)) 
-      toOr.add(post(p));
-    ImmutableList<T> or = toOr.build();
-    if (or.isEmpty())
-      r = trueTerm;
-    else
-      r = term.mk("or", or);
-    preCache.put(b, r);
-    return r;
-  }
+  private void computeAll() {
+    for (int b : flow.topologicalOrder()) {
+      ImmutableList.Builder<T> toOr = ImmutableList.builder();
+      for (int e = flow.parentsBegin(b); e < flow.parentsEnd(b); ++e)
+        toOr.add(postCache[flow.parentAt(e)]);
+      ImmutableList<T> or = toOr.build();
+      T r;
+      if (or.isEmpty())
+        r = trueTerm;
+      else
+        r = term.mk("or", or);
+      preCache[b] = r;
 
-  private T post(Command b) {
-    T r = postCache.get(b);
-    if (r != null) return r;
-    r = pre(b);
-    if (assumeAsserts || isAssume(b))
-      r = term.mk("and", r, term(b));
-    postCache.put(b, r);
-    return r;
+      Command c = flow.nodeAt(b);
+      if (assumeAsserts || isAssume(c))
+        r = term.mk("and", r, term(c));
+      postCache[b] = r;
+    }
   }
 
   /**
-   * Returns the verification condition for a particular command.
-   * If {@code cmd} is an assume then I return TRUE.
+   * Returns the verification condition for the command with id
+   * {@code b}. If it is an assume, or an assert that should not be
+   * checked, then I return TRUE. The preconditions must be computed.
    */
-  protected T vc(Command b) {
-    if (!isAssert(b)) return trueTerm;
-    return term.mk("implies", pre(b), term(b));
+  protected T vc(int b) {
+    Command c = flow.nodeAt(b);
+    if (!isAssert(c) || !isChecked(b)) return trueTerm;
+    return term.mk("implies", preCache[b], term(c));
   }
 
   @Override
   public T vc() {
-    final ImmutableList.Builder<T> vcs = ImmutableList.builder();
-    flow.iterNode(new Closure<Command>() {
-      @Override
-      public void go(Command b) {
-        vcs.add(vc(b));
-      }
-    });
+    computeAll();
+    ImmutableList.Builder<T> vcs = ImmutableList.builder();
+    for (int b = 0; b < flow.nodeCount(); ++b) vcs.add(vc(b));
     return term.mk("and", vcs.build());
   }
 }
@@ -1,13 +1,22 @@
 package freeboogie.vcgen;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import genericutils.HashConsTable;
 import genericutils.Logger;
 
 import freeboogie.Main;
+import freeboogie.Profile;
 import freeboogie.ast.*;
 import freeboogie.backend.*;
 import freeboogie.cli.FbCliOptionsInterface;
@@ -34,6 +43,34 @@ import static freeboogie.cli.FbCliOptionsInterface.ReportOn;
   This class handles restarting the prover in case a
   communication problem, a segfault, or some other horrible
   situation arises.
+
+  If more than one job is requested, then the VCs are still built
+  one by one, but they are checked concurrently by a {@code
+  ProverPool}. The results are reported after the whole file is
+  processed, in the order in which implementations appear.
+
+  Each query may be given a time limit, either for the whole run
+  or for one implementation, by the attribute {@code {:timeLimit
+  N}}, where {@code N} is in seconds. A query that runs out of time
+  gets the verdict "T/O" and the prover is restarted.
+
+  If a cache directory is given, then verdicts are looked up in a
+  {@code VerificationCache} before building the VC, and conclusive
+  verdicts are stored there.
+
+  If an axiom depth is given, then global axioms are not sent once
+  per file. Instead, the queries for each implementation come with
+  the axioms that {@code AxiomSender} finds relevant to it.
+
+  The VC of an implementation may be split into several queries,
+  each checking a group of asserts that are consecutive in the
+  topological order of the flow graph; the other asserts are
+  ignored. The queries are independent, so with several jobs they
+  are checked concurrently. The verdict is "NOK" if some query is
+  invalid, "T/O" if some query runs out of time, and " OK" if all
+  queries are valid. When splitting is on, a query with more than
+  one assert that runs out of time is split in two halves, which
+  are checked again.
  */
 public class VcGenerator extends Transformer {
   public void log(String s) {
@@ -47,6 +84,37 @@ public class VcGenerator extends Transformer {
   private AxiomSender<SmtTerm> axiomSender;
   private Set<SmtTerm> lowLevelAxiomBag;
 
+  /** The queries sent for one implementation. */
+  private static class Check {
+    final Implementation implementation;
+    final String key; // in the cache, or null
+    final Set<SmtTerm> axioms; // relevant to the implementation
+
+    // the asserts checked by each query, and the verdicts
+    final List<int[]> parts = Lists.newArrayList();
+    final List<Future<Boolean>> results = Lists.newArrayList();
+
+    Check(Implementation implementation, String key, Set<SmtTerm> axioms) {
+      this.implementation = implementation;
+      this.key = key;
+      this.axioms = axioms;
+    }
+  }
+
+  // used only when several provers run in parallel
+  private ProverPool pool;
+  private List<Check> pendingChecks = Lists.newArrayList();
+
+  // used only when verdicts are cached on disk
+  private VerificationCache cache;
+
+  // whether some prover in use is the one that always says yes
+  // because the configured one couldn't start; its verdicts aren't
+  // cached, since the cache key names the configured prover
+  private volatile boolean fellBack;
+
+  private Profile profile; // null if VCs are not measured
+
   private StringBuilder sb = new StringBuilder();
   private FbCliOptionsInterface opt;
   private Program program;
@@ -58,6 +126,7 @@ public class VcGenerator extends Transformer {
         "Reinitializing VcGenerator.");
     if (prover != null) prover.terminate();
     prover = null;
+    if (pool == null) fellBack = false;
     initialize(opt);
     prepare();
   }
@@ -69,13 +138,69 @@ public class VcGenerator extends Transformer {
       default: vcgen = new StrongestPostcondition<SmtTerm>(); break;
     }
     vcgen.assumeAsserts(opt.isAssumeAssertsSet());
-    prover = new YesSmtProver();
+    functionRegisterer = new FunctionRegisterer();
+    // NOTE: the axiom sender is kept, because after a restart it must
+    // still know the dependencies of the current program
+    if (axiomSender == null) axiomSender = new AxiomSender<SmtTerm>();
+    axiomSender.relevanceDepth(opt.getAxiomDepth());
+    lowLevelAxiomBag = Sets.newHashSet();
+    if (!opt.isCacheDirSet()) cache = null;
+    else {
+      String configuration =
+          opt.getProverOpt() + " " + opt.getProverCommandLineOpt() + " " +
+          opt.getVcMethodOpt() + " " + opt.isAssumeAssertsSet() + " " +
+          opt.getAxiomDepth();
+      if (cache == null || !cache.isFor(opt.getCacheDir(), configuration))
+        cache = new VerificationCache(opt.getCacheDir(), configuration);
+    }
+    if (opt.getJobs() > 1) {
+      if (pool == null) {
+        pool = new ProverPool(opt.getJobs(), new Supplier<Prover<SmtTerm>>() {
+          @Override public Prover<SmtTerm> get() { return startProver(); }
+        });
+      }
+      // NOTE: the pool is kept by later runs, which may change the depth
+      pool.relevanceDepth(opt.getAxiomDepth());
+      return;
+    }
+    if (prover == null) prover = startProver();
+  }
+
+  /** Measures the building of VCs, unless {@code profile} is null. */
+  public void profile(Profile profile) {
+    this.profile = profile;
+  }
+
+  /** Kills the provers. */
+  public void terminate() {
+    if (prover != null) prover.terminate();
+    if (pool != null) pool.terminate();
+    prover = null;
+    pool = null;
+    fellBack = false;
+  }
+
+  /**
+    Starts a prover as configured by the options and pushes one
+    frame of assumptions. If the prover cannot be started then
+    the one that always says yes is used.
+   */
+  private Prover<SmtTerm> startProver() {
+    Prover<SmtTerm> result = new YesSmtProver();
     try {
       switch (opt.getProverOpt()) {
         case SIMPLIFY:
-          prover = new SimplifyProver(
+          result = new SimplifyProver(
               opt.getProverCommandLineOpt().split("\\s+"));
           break;
+        case SMTLIB2:
+          result = new SmtLib2Prover(
+              opt.getProverCommandLineOpt().split("\\s+"));
+          break;
+        case PORTFOLIO:
+          result = new PortfolioProver(Arrays.asList(
+              opt.getProverCommandLineOpt().split("\\s*;\\s*")));
+          break;
       }
     } catch (ProverException e) {
       Main.out.say(
@@ -86,23 +211,29 @@ public class VcGenerator extends Transformer {
           LogCategories.VCGEN,
           LogLevel.WARNING,
           "ProverException: " + e);
+      fellBack = true;
     }
-    try { prover.push(); }
+    try { result.push(); }
     catch (ProverException e) {
       Main.out.say(
           ReportOn.MAIN,
           ReportLevel.NORMAL,
           "The prover can't hear me. Falling back to my dear YesMan.");
-      prover = new YesSmtProver();
-      try { prover.push(); } catch (ProverException f) { assert false; }
+      result = new YesSmtProver();
+      fellBack = true;
+      try { result.push(); } catch (ProverException f) { assert false; }
     }
-    functionRegisterer = new FunctionRegisterer();
-    axiomSender = new AxiomSender<SmtTerm>();
-    lowLevelAxiomBag = Sets.newHashSet();
+    return result;
   }
 
   private void prepare() {
     vcgen.typeChecker(tc);
+    if (pool != null) {
+      builder = pool.getBuilder();
+      vcgen.setBuilder(builder);
+      axiomSender.setBuilder(builder);
+      return;
+    }
     builder = prover.getBuilder();
     builder.setTypeChecker(tc);
     vcgen.setBuilder(builder);
@@ -122,28 +253,37 @@ public class VcGenerator extends Transformer {
     Preconditions.checkNotNull(tc);
     this.tc = tc;
     this.program = program;
-    prepare();
 
     // send global axioms
     try {
-      prover.pop();
-      axiomSender.process(program);
-      prover.push();
+      if (pool != null) pool.load(program, tc);
+      prepare();
+      if (pool == null) {
+        prover.pop();
+        axiomSender.process(program);
+        prover.push();
+      } else if (opt.getAxiomDepth() >= 0) axiomSender.process(program);
     } catch (ProverException e) {
       Main.out.say(
           ReportOn.MAIN,
           ReportLevel.NORMAL,
           "The prover can't handle " + program.fileName() + ". Skipping.");
-      prover.terminate();
-      reinitialize();
+      if (pool == null) {
+        prover.terminate();
+        reinitialize();
+      }
       return program;
     }
     log("Sent global axioms for file " + program.fileName() + ".");
 
     // do the verification
+    if (cache != null) cache.setProgram(program);
     Program x = (Program) program.eval(this);
     assert x == program;
+    reportPendingChecks();
     log("Finished checking file " + program.fileName() + ".");
+    logTermStatistics();
+    logCacheStatistics();
     return program;
   }
 
@@ -151,20 +291,244 @@ public class VcGenerator extends Transformer {
     Signature sig = implementation.sig();
     log("Checking implementation " + sig.name() + " at " + sig.loc());
 //System.out.println("body " + (vcgen.typeChecker() != null));
+    String key = null;
+    if (cache != null) {
+      key = cache.key(implementation);
+      Boolean valid = cache.lookup(key);
+      if (valid != null) {
+        log("Found a cached verdict for " + sig.name() + ".");
+        Check check = new Check(implementation, null, null);
+        check.parts.add(null);
+        check.results.add(Futures.immediateFuture(valid));
+        finish(check);
+        return;
+      }
+    }
+    Check check = new Check(
+        implementation,
+        key,
+        axiomSender.axiomsFor(implementation));
     vcgen.prepareFor(implementation);
+    for (int[] part : split(vcgen.asserts())) send(check, part);
+    finish(check);
+  }
+
+  // === helpers ===
+
+  /**
+    Splits {@code asserts} into as many groups as requested by the
+    command line. Returns one group with all asserts if splitting
+    is off, or if there are no asserts.
+   */
+  private List<int[]> split(int[] asserts) {
+    List<int[]> result = Lists.newArrayList();
+    int n = opt.getVcSplit();
+    if (n == 0 || n > asserts.length) n = asserts.length;
+    if (n <= 1) {
+      result.add(asserts);
+      return result;
+    }
+    for (int i = 0; i < n; ++i) {
+      result.add(Arrays.copyOfRange(
+          asserts,
+          i * asserts.length / n,
+          (i + 1) * asserts.length / n));
+    }
+    return result;
+  }
+
+  /**
+    Sends the query that checks the asserts {@code part} of the
+    implementation of {@code check}.
+   */
+  private void send(Check check, int[] part) {
+    // NOTE: the calculus is replaced when the prover is restarted
+    if (vcgen.currentBody() != check.implementation.body())
+      vcgen.prepareFor(check.implementation);
+    Profile.Mark mark = profile == null? null : profile.mark();
+    vcgen.checkOnly(part);
     SmtTerm vc = vcgen.vc();
     lowLevelAxiomBag.clear();
     vc.collectAxioms(lowLevelAxiomBag);
-    sb.setLength(0);
+    if (profile != null) {
+      profile.vc(
+          mark,
+          program.fileName(),
+          check.implementation.sig().name(),
+          vc);
+    }
+    lowLevelAxiomBag.addAll(check.axioms);
+    long timeLimit = timeLimit(check.implementation);
+    check.parts.add(part);
+    if (pool != null)
+      check.results.add(pool.check(vc, lowLevelAxiomBag, timeLimit));
+    else
+      check.results.add(checkNow(vc, lowLevelAxiomBag, timeLimit));
+  }
+
+  /**
+    Checks {@code vc} with the only prover and returns the verdict,
+    or the exception, as a future. The prover is restarted if it
+    fails.
+   */
+  private Future<Boolean> checkNow(
+      SmtTerm vc,
+      Set<SmtTerm> axioms,
+      long timeLimit
+  ) {
     try {
+      prover.setTimeLimit(timeLimit);
       prover.push();
-      for (SmtTerm t : lowLevelAxiomBag) prover.assume(t);
-      sb.append(prover.isValid(vc)? " OK" : "NOK");
+      for (SmtTerm t : axioms) prover.assume(t);
+      boolean valid = prover.isValid(vc);
       prover.pop();
+      return Futures.immediateFuture(valid);
     } catch (ProverException e) {
-      sb.append("  ?");
-      reinitialize();
+      restartProver();
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /** Reports {@code check} now, or later if provers run in parallel. */
+  private void finish(Check check) {
+    if (pool != null) pendingChecks.add(check);
+    else report(check);
+  }
+
+  /**
+    Waits for the verdicts of the queries of {@code check}, merges
+    them, and reports the result. Queries that run out of time may
+    be split further, in which case more queries are sent.
+   */
+  private void report(Check check) {
+    boolean invalid = false;
+    boolean timedOut = false;
+    boolean failed = false;
+    // NOTE: |check.results| may grow while iterating
+    for (int i = 0; i < check.results.size(); ++i) {
+      try {
+        if (!check.results.get(i).get()) invalid = true;
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof ProverTimeoutException)) {
+          Main.log.say(
+              LogCategories.VCGEN,
+              LogLevel.WARNING,
+              "The prover failed: " + e.getCause());
+          failed = true;
+        } else if (!resplit(check, check.parts.get(i))) timedOut = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failed = true;
+      }
+    }
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "vc_queries " + check.results.size());
+    if (!invalid && (timedOut || failed)) {
+      report(timedOut? "T/O" : "  ?", check.implementation);
+      return;
+    }
+    if (check.key != null && !fellBack) cache.store(check.key, !invalid);
+    report(verdict(!invalid), check.implementation);
+  }
+
+  /**
+    Sends two queries, one for each half of {@code part}, if it has
+    more than one assert and splitting is on. Returns whether it
+    did.
+   */
+  private boolean resplit(Check check, int[] part) {
+    if (opt.getVcSplit() == 1 || part == null || part.length < 2)
+      return false;
+    log("Splitting a query that ran out of time.");
+    send(check, Arrays.copyOfRange(part, 0, part.length / 2));
+    send(check, Arrays.copyOfRange(part, part.length / 2, part.length));
+    return true;
+  }
+
+  /**
+    Returns the time limit for checking {@code implementation},
+    in milliseconds. The attribute {@code timeLimit} of the
+    implementation wins over the one of its procedure, which wins
+    over the command line.
+   */
+  private long timeLimit(Implementation implementation) {
+    Integer seconds = timeLimit(implementation.attributes());
+    if (seconds == null) {
+      Procedure procedure = tc.implProc().def(implementation);
+      if (procedure != null) seconds = timeLimit(procedure.attributes());
+    }
+    if (seconds == null) seconds = opt.getTimeLimit();
+    return 1000L * Math.max(0, seconds);
+  }
+
+  private Integer timeLimit(ImmutableList<Attribute> attributes) {
+    for (Attribute a : attributes) {
+      if (!a.type().equals("timeLimit")) continue;
+      if (a.exprs().size() == 1 && a.exprs().get(0) instanceof NumberLiteral)
+        return ((NumberLiteral) a.exprs().get(0)).value().value().intValue();
+      Main.log.say(
+          LogCategories.VCGEN,
+          LogLevel.WARNING,
+          "Ignoring malformed timeLimit attribute at " + a.loc());
     }
+    return null;
+  }
+
+  /**
+    Replaces the prover by a fresh one, which knows the global
+    axioms of the current program.
+   */
+  private void restartProver() {
+    reinitialize();
+    try {
+      prover.pop();
+      axiomSender.process(program);
+      prover.push();
+    } catch (ProverException e) {
+      Main.log.say(
+          LogCategories.VCGEN,
+          LogLevel.WARNING,
+          "The restarted prover can't handle " + program.fileName());
+    }
+  }
+  private void reportPendingChecks() {
+    for (Check check : pendingChecks) report(check);
+    pendingChecks.clear();
+  }
+
+  private void logTermStatistics() {
+    HashConsTable<SmtTerm> terms = SmtTerm.hashConsTable();
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "term_table_live " + terms.liveSize());
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        String.format("term_table_hitrate %.3f", terms.hitRate()));
+  }
+
+  private void logCacheStatistics() {
+    if (cache == null) return;
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "cache_hits " + cache.hits());
+    Main.log.say(
+        LogCategories.STATS,
+        LogLevel.INFO,
+        "cache_misses " + cache.misses());
+  }
+
+  private static String verdict(boolean valid) {
+    return valid? " OK" : "NOK";
+  }
+
+  private void report(String verdict, Implementation implementation) {
+    sb.setLength(0);
+    sb.append(verdict);
     sb.append(": ");
     sb.append(implementation.sig().name());
     sb.append(" at ");
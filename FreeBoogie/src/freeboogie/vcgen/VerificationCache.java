@@ -0,0 +1,182 @@
+package freeboogie.vcgen;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import genericutils.Err;
+
+import freeboogie.Main;
+import freeboogie.ast.*;
+import static freeboogie.cli.FbCliOptionsInterface.LogCategories;
+import static freeboogie.cli.FbCliOptionsInterface.LogLevel;
+
+/**
+  Remembers on disk which implementations were found correct or
+  incorrect, so that they need not be sent to the prover again in
+  a later run.
+
+  The key of an implementation is a SHA-1 hash of a text that
+  contains the prover configuration, the global declarations the
+  implementation depends on (see {@code DependencyCollector}), and
+  the implementation itself, all pretty-printed. The implementation
+  is expected to be passivated. Identifiers generated by FreeBoogie
+  (such as {@code $$if~a}) depend on what else is in the file, so
+  they are renamed in the order in which they appear in the text.
+
+  Each verdict is kept in a file whose name is the key. Files are
+  written atomically, so several runs may share a directory.
+  Inconclusive answers (prover failures, timeouts) are not cached.
+ */
+public class VerificationCache {
+  private static final Pattern GENERATED_ID =
+      Pattern.compile("\\$\\$[\\w.]+~[a-z]+");
+  private static final String VALID = "valid";
+  private static final String INVALID = "invalid";
+
+  private final File dir;
+  private final String configuration;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private Program program;
+  private DependencyCollector dependencies;
+
+  /**
+    Uses {@code dir} to store verdicts. The string {@code
+    configuration} should identify the prover and any option that
+    may change its verdicts.
+   */
+  public VerificationCache(File dir, String configuration) {
+    this.dir = dir;
+    this.configuration = configuration;
+    if (!dir.isDirectory() && !dir.mkdirs())
+      Err.warning("I can't create the cache directory " + dir + ".");
+  }
+
+  /** Returns whether this cache uses {@code dir} and {@code configuration}. */
+  public boolean isFor(File dir, String configuration) {
+    return this.dir.equals(dir) && this.configuration.equals(configuration);
+  }
+
+  /** Computes keys for implementations of {@code program}. */
+  public void setProgram(Program program) {
+    this.program = program;
+    dependencies = new DependencyCollector(program);
+  }
+
+  /** Returns the key of {@code implementation}. */
+  public String key(Implementation implementation) {
+    Set<Declaration> deps = dependencies.dependencies(
+        ImmutableList.of(implementation));
+    StringWriter text = new StringWriter();
+    PrettyPrinter pp = new PrettyPrinter();
+    pp.writer(text);
+    text.write(configuration);
+    text.write("\n");
+    printKept(program.types(), deps, pp);
+    printKept(program.axioms(), deps, pp);
+    printKept(program.variables(), deps, pp);
+    printKept(program.constants(), deps, pp);
+    printKept(program.functions(), deps, pp);
+    printKept(program.procedures(), deps, pp);
+    implementation.eval(pp);
+    return sha1(renameGenerated(text.toString()));
+  }
+
+  /**
+    Returns the verdict stored for {@code key}, or {@code null} if
+    there is none.
+   */
+  public Boolean lookup(String key) {
+    File f = new File(dir, key);
+    String verdict = null;
+    try {
+      if (f.exists()) verdict = Files.toString(f, Charsets.UTF_8).trim();
+    } catch (IOException e) {
+      log("Can't read " + f + ": " + e.getMessage());
+    }
+    if (VALID.equals(verdict) || INVALID.equals(verdict)) {
+      hits.incrementAndGet();
+      return VALID.equals(verdict);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /** Remembers that the implementation with {@code key} is {@code valid}. */
+  public void store(String key, boolean valid) {
+    File f = new File(dir, key);
+    try {
+      File tmp = File.createTempFile(key, ".tmp", dir);
+      Files.write(valid? VALID : INVALID, tmp, Charsets.UTF_8);
+      if (!tmp.renameTo(f)) {
+        tmp.delete();
+        log("Can't write " + f + ".");
+      }
+    } catch (IOException e) {
+      log("Can't write " + f + ": " + e.getMessage());
+    }
+  }
+
+  /** Returns how many lookups found a verdict. */
+  public long hits() {
+    return hits.get();
+  }
+
+  /** Returns how many lookups found nothing. */
+  public long misses() {
+    return misses.get();
+  }
+
+  // === helpers ===
+  private static void log(String s) {
+    Main.log.say(LogCategories.VCGEN, LogLevel.WARNING, s);
+  }
+
+  private static <D extends Declaration> void printKept(
+      ImmutableList<D> declarations,
+      Set<Declaration> kept,
+      PrettyPrinter pp
+  ) {
+    for (D d : declarations) if (kept.contains(d)) d.eval(pp);
+  }
+
+  private static String renameGenerated(String text) {
+    Map<String, String> names = Maps.newHashMap();
+    Matcher m = GENERATED_ID.matcher(text);
+    StringBuffer sb = new StringBuffer();
+    while (m.find()) {
+      String name = names.get(m.group());
+      if (name == null) {
+        name = "$$g~" + names.size();
+        names.put(m.group(), name);
+      }
+      m.appendReplacement(sb, Matcher.quoteReplacement(name));
+    }
+    m.appendTail(sb);
+    return sb.toString();
+  }
+
+  private static String sha1(String text) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      byte[] digest = md.digest(text.getBytes(Charsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) sb.append(String.format("%02x", b & 0xff));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      Err.internal("SHA-1 is not available.");
+      return null;
+    }
+  }
+}
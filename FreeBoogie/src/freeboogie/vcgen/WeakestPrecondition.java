@@ -18,38 +18,42 @@ import freeboogie.tc.TcInterface;
  * @param <T> the type of the terms
  */
 public class WeakestPrecondition<T extends Term<T>> extends StrongestPostcondition<T> {
-  private T pre(Command b) {
-    T r = preCache.get(b);
-    if (r != null) return r;
-    
-    r = post(b);
-    if (isAssert(b)) {
-      if (assumeAsserts) {
-       r = term.mk("and", term(b), term.mk("implies", term(b), r));
-      } else {
-        r = term.mk("and", term(b), r);
-      }
-    } else if (isAssume(b)) {
-      r = term.mk("implies", term(b), r);
-    }      
-    
-    preCache.put(b, r);
-    return r;
-  }
-
-  private T post(Command b) {
-    T r = postCache.get(b);
-    if (r != null) return r;
-    ImmutableList.Builder<T> fromAnd = ImmutableList.builder();
-    for (Command p : flow.to(b)) 
-      fromAnd.add(pre(p));
-    r = term.mk("and", fromAnd.build());
-    postCache.put(b, r);
-    return r;
-  }
-
   @Override
   public T vc() {
-    return pre(currentBody().block().commands().get(0));
+    int start = flow.id(currentBody().block().commands().get(0));
+    int[] order = flow.topologicalOrder();
+
+    // only the commands reachable from the start matter
+    boolean[] reachable = new boolean[order.length];
+    reachable[start] = true;
+    for (int b : order) {
+      if (!reachable[b]) continue;
+      for (int e = flow.childrenBegin(b); e < flow.childrenEnd(b); ++e)
+        reachable[flow.childAt(e)] = true;
+    }
+
+    // successors first, so that their preconditions are known
+    for (int i = order.length - 1; i >= 0; --i) {
+      int b = order[i];
+      if (!reachable[b]) continue;
+      ImmutableList.Builder<T> fromAnd = ImmutableList.builder();
+      for (int e = flow.childrenBegin(b); e < flow.childrenEnd(b); ++e)
+        fromAnd.add(preCache[flow.childAt(e)]);
+      T r = term.mk("and", fromAnd.build());
+      postCache[b] = r;
+
+      Command c = flow.nodeAt(b);
+      if (isAssert(c) && isChecked(b)) {
+        if (assumeAsserts) {
+         r = term.mk("and", term(c), term.mk("implies", term(c), r));
+        } else {
+          r = term.mk("and", term(c), r);
+        }
+      } else if (isAssume(c) || (assumeAsserts && isAssert(c))) {
+        r = term.mk("implies", term(c), r);
+      }      
+      preCache[b] = r;
+    }
+    return preCache[start];
   }
 }
@@ -0,0 +1,11 @@
+package cell;
+
+public class Cell {
+  private int value;
+
+  public int swap(int x) {
+    int old = value;
+    value = x;
+    return old;
+  }
+}
@@ -0,0 +1,20 @@
+public class Counter {
+  private int count;
+  private Counter next;
+
+  public int bump(int x) {
+    if (x > 10) count += x; else count -= 1;
+    int s = 0;
+    for (int i = 0; i < x; i++) s += i * 2 % 7;
+    return count + s;
+  }
+
+  public boolean same(Counter o) {
+    return o == null || o.count == count;
+  }
+
+  public Counter link(Counter o) {
+    next = o;
+    return next;
+  }
+}
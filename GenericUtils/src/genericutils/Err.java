@@ -40,6 +40,49 @@ public final class Err {
   /** The current verbosity level. */
   private static Level verboseLevel = Level.HELP;
 
+  /** Whether fatal errors exit, rather than throw {@code Fatal}. */
+  private static volatile boolean exitOnFatal = true;
+
+  /**
+   * Thrown instead of exiting when fatal errors should not stop the
+   * JVM, for example in a server that handles many requests.
+   */
+  public static class Fatal extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+
+    /**
+     * Makes an exception that stands for exiting.
+     * @param code the exit code
+     */
+    public Fatal(int code) {
+      super("exit code " + code);
+      this.code = code;
+    }
+
+    /** Returns the exit code. */
+    public int code() { return code; }
+  }
+
+  /**
+   * Sets what fatal errors do.
+   * @param exit whether to exit, rather than throw {@code Fatal}
+   */
+  public static void exitOnFatal(boolean exit) {
+    exitOnFatal = exit;
+  }
+
+  /**
+   * Exits with the specified code, or throws {@code Fatal} if
+   * exiting was disabled by {@code exitOnFatal(false)}.
+   * @param code the exit code
+   */
+  public static void exit(int code) {
+    if (exitOnFatal) System.exit(code);
+    throw new Fatal(code);
+  }
+
   /**
    * Set the verbosity using a number.
    * @param v the numeric verbosity level
@@ -78,7 +121,7 @@ public final class Err {
   }
 
   /**
-   * Displays a fatal error end exits with code 1.
+   * Displays a fatal error end exits with code 1. See {@code exit()}.
    * @param m the error message
    */
   public static void fatal(String m) {
@@ -86,13 +129,14 @@ public final class Err {
   }
 
   /**
-   * Displays a fatal error and exits with the specified code.
+   * Displays a fatal error and exits with the specified code. See
+   * {@code exit()}.
    * @param m the error message
    * @param code the exit code
    */
   public static void fatal(String m, int code) {
     System.err.println(m);
-    System.exit(code);
+    exit(code);
   }
 
   public static void internal(String m) {
@@ -103,6 +147,6 @@ public final class Err {
   /** Aborts execution. */
   public static void notImplemented() {
     new Exception().printStackTrace();
-    System.exit(255);
+    exit(255);
   }
 }
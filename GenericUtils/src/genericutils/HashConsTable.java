@@ -0,0 +1,131 @@
+package genericutils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  A table for hash-consing immutable objects, which may be used
+  from several threads.
+
+  The call {@code intern(x)} returns an object that {@code
+  equals()} {@code x}; the same one for all equal arguments, as
+  long as it is used. The table holds only weak references, so
+  objects that are not used elsewhere are garbage collected and
+  the table does not grow forever.
+
+  The table also counts how many calls to {@code intern()} found
+  an existing object (hits), and how many did not (misses).
+
+  @param <T> the type of the objects
+ */
+public class HashConsTable<T> {
+  /**
+    Keys compare the objects they wrap. The probes, used for
+    lookups, refer strongly to their objects; the entries of the
+    table refer to them weakly. An entry whose object was collected
+    is equal only to itself.
+   */
+  private interface Key<T> {
+    T get();
+  }
+
+  private static final class Probe<T> implements Key<T> {
+    private final T object;
+    private final int hash;
+
+    Probe(T object) {
+      this.object = object;
+      this.hash = object.hashCode();
+    }
+
+    @Override public T get() { return object; }
+    @Override public int hashCode() { return hash; }
+    @Override public boolean equals(Object o) {
+      return o instanceof Key && object.equals(((Key<?>) o).get());
+    }
+  }
+
+  private static final class Entry<T> extends WeakReference<T>
+  implements Key<T> {
+    private final int hash;
+
+    Entry(T object, ReferenceQueue<T> queue) {
+      super(object, queue);
+      this.hash = object.hashCode();
+    }
+
+    @Override public int hashCode() { return hash; }
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      T object = get();
+      return object != null && object.equals(((Key<?>) o).get());
+    }
+  }
+
+  private final ConcurrentMap<Key<T>, Entry<T>> table =
+      new ConcurrentHashMap<Key<T>, Entry<T>>();
+  private final ReferenceQueue<T> collected = new ReferenceQueue<T>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+    Returns an object equal to {@code x}. If there is no such
+    object in the table, then {@code x} is added and returned.
+   */
+  public T intern(T x) {
+    expunge();
+    Probe<T> probe = new Probe<T>(x);
+    while (true) {
+      Entry<T> e = table.get(probe);
+      if (e == null) {
+        Entry<T> ne = new Entry<T>(x, collected);
+        e = table.putIfAbsent(ne, ne);
+        if (e == null) {
+          misses.incrementAndGet();
+          return x;
+        }
+      }
+      T old = e.get();
+      if (old != null) {
+        hits.incrementAndGet();
+        return old;
+      }
+      table.remove(e, e); // collected while we were looking
+    }
+  }
+
+  /** Returns the number of objects in the table. */
+  public int liveSize() {
+    expunge();
+    return table.size();
+  }
+
+  /** Returns how many calls to {@code intern()} found an object. */
+  public long hits() {
+    return hits.get();
+  }
+
+  /** Returns how many calls to {@code intern()} added an object. */
+  public long misses() {
+    return misses.get();
+  }
+
+  /** Returns the fraction of calls to {@code intern()} that hit. */
+  public double hitRate() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0.0 : (double) h / total;
+  }
+
+  // removes the entries whose objects were collected
+  private void expunge() {
+    Reference<? extends T> r;
+    while ((r = collected.poll()) != null) table.remove(r, r);
+  }
+}
@@ -19,9 +19,10 @@ public final class Id {
 
   /** 
    * Returns a (hopefully) unique identifier that contains
-   * the string {@code categ}.
+   * the string {@code categ}. It is safe to call this from
+   * several threads.
    */
-  public static String get(String categ) {
+  public static synchronized String get(String categ) {
     int i, j, k;
     int y;
     Integer x = counter.get(categ);
@@ -74,13 +74,25 @@ public class Logger<C extends Enum<C>, L extends Enum<L>> {
 
   // === Main methods for using this class ===
 
+  /**
+   * Returns whether messages of category {@code c} and level {@code
+   * l} are written. Use it to avoid building messages for nothing.
+   */
+  public boolean isEnabled(C c, L l) {
+    return
+      enabledCategories != null &&
+      thresholdLevel != null &&
+      enabledCategories.contains(c) &&
+      l.compareTo(thresholdLevel) >= 0;
+  }
+
   /** To be used when computing the log message is time consuming. */
   public void say(C c, L l, Supplier<String> s) {
-    if (isWritable(c, l)) internalLog(c, l, s.get());
+    if (isEnabled(c, l)) internalLog(c, l, s.get());
   }
 
   public void say(C c, L l, String m) {
-    if (isWritable(c, l)) internalLog(c, l, m);
+    if (isEnabled(c, l)) internalLog(c, l, m);
   }
 
   public void say(String m) {
@@ -102,12 +114,4 @@ public class Logger<C extends Enum<C>, L extends Enum<L>> {
     }
     say(m);
   }
-
-  private boolean isWritable(C c, L l) {
-    return
-      enabledCategories != null &&
-      thresholdLevel != null &&
-      enabledCategories.contains(c) &&
-      l.compareTo(thresholdLevel) >= 0;
-  }
 }
@@ -7,6 +7,15 @@ import java.util.*;
  * uses adjacency lists and hash tables. Nodes are compared using
  * {@code equals()} rather than using {@code ==}.
  *
+ * When the graph is frozen it is also compacted: Nodes get dense
+ * ids, in the order in which they were added, and the adjacency
+ * lists are stored in int arrays, in the same order as returned by
+ * {@code to()} and {@code from()}. The children of the node with id
+ * {@code i} are {@code childAt(e)} for {@code childrenBegin(i) <= e
+ * < childrenEnd(i)}, and similarly for parents. The topological
+ * order and whether there are cycles are computed only once. Code
+ * that looks at many nodes should use ids, to avoid hashing.
+ *
  * @author rgrig 
  * @param <N> the type of the graph node
  */
@@ -14,6 +23,16 @@ public class SimpleGraph<N> {
   private HashMap<N,HashSet<N>> parents;
   private HashMap<N,HashSet<N>> children;
   private boolean frozen;
+
+  // compact representation, built by freeze()
+  private Object[] nodeOf;
+  private HashMap<N, Integer> idOf;
+  private int[] childBegin;
+  private int[] childIds;
+  private int[] parentBegin;
+  private int[] parentIds;
+  private int[] topologicalOrder;
+  private boolean cyclic;
   
   /** Construct an empty graph. */
   public SimpleGraph() {
@@ -48,10 +67,20 @@ public class SimpleGraph<N> {
   }
 
   /**
-   * Disallow future changes to the graph.
+   * Disallow future changes to the graph, and compact it.
    */
   public void freeze() {
+    if (frozen) return;
     frozen = true;
+    int n = parents.size();
+    nodeOf = parents.keySet().toArray();
+    idOf = new HashMap<N, Integer>(2 * n);
+    for (N x : parents.keySet()) idOf.put(x, idOf.size());
+    childBegin = new int[n + 1];
+    parentBegin = new int[n + 1];
+    childIds = compact(children, childBegin);
+    parentIds = compact(parents, parentBegin);
+    sortTopologically();
   }
 
   /**
@@ -84,45 +113,104 @@ public class SimpleGraph<N> {
   /** Returns the number of nodes in this graph. */
   public int nodeCount() { return parents.size(); }
 
-  // used for cycle detection and topological sorting
-  private HashSet<N> seen;
-  private HashSet<N> done;
-  private List<N> sortedNodes;
+  /**
+   * Returns the id of {@code n}, or -1 if {@code n} is not in this
+   * graph. The graph must be frozen.
+   */
+  public int id(N n) {
+    assert frozen;
+    Integer i = idOf.get(n);
+    return i == null ? -1 : i;
+  }
 
-  private boolean recHasCycle(N n) {
-    if (done.contains(n)) return false;
-    if (seen.contains(n)) return true;
-    seen.add(n);
-    for (N np : parents.get(n))
-      if (recHasCycle(np)) return true;
-    done.add(n);
-    return false;
+  /** Returns the node with id {@code i}. The graph must be frozen. */
+  @SuppressWarnings("unchecked")
+  public N nodeAt(int i) {
+    assert frozen;
+    return (N) nodeOf[i];
+  }
+
+  /** Returns where the out-edges of the node with id {@code i} begin. */
+  public int childrenBegin(int i) { return childBegin[i]; }
+
+  /** Returns where the out-edges of the node with id {@code i} end. */
+  public int childrenEnd(int i) { return childBegin[i + 1]; }
+
+  /** Returns the id of the target of the out-edge {@code e}. */
+  public int childAt(int e) { return childIds[e]; }
+
+  /** Returns where the in-edges of the node with id {@code i} begin. */
+  public int parentsBegin(int i) { return parentBegin[i]; }
+
+  /** Returns where the in-edges of the node with id {@code i} end. */
+  public int parentsEnd(int i) { return parentBegin[i + 1]; }
+
+  /** Returns the id of the source of the in-edge {@code e}. */
+  public int parentAt(int e) { return parentIds[e]; }
+
+  /**
+   * Returns the ids of all nodes, sorted topologically. The graph
+   * must be frozen. The user shall not modify the return value.
+   */
+  public int[] topologicalOrder() {
+    assert frozen;
+    return topologicalOrder;
+  }
+
+  /*
+   * Depth first search along in-edges, with an explicit stack, that
+   * puts the nodes in {@code sorted} in postorder. Returns whether
+   * a cycle was found.
+   */
+  private boolean depthFirst(List<N> sorted) {
+    HashSet<N> seen = new HashSet<N>();
+    HashSet<N> done = new HashSet<N>();
+    ArrayDeque<N> stack = new ArrayDeque<N>();
+    ArrayDeque<Iterator<N>> next = new ArrayDeque<Iterator<N>>();
+    boolean cycle = false;
+    for (N root : parents.keySet()) {
+      if (!seen.add(root)) continue;
+      stack.addFirst(root);
+      next.addFirst(parents.get(root).iterator());
+      while (!stack.isEmpty()) {
+        if (next.peekFirst().hasNext()) {
+          N m = next.peekFirst().next();
+          if (seen.contains(m)) {
+            if (!done.contains(m)) cycle = true;
+            continue;
+          }
+          seen.add(m);
+          stack.addFirst(m);
+          next.addFirst(parents.get(m).iterator());
+        } else {
+          N n = stack.removeFirst();
+          next.removeFirst();
+          done.add(n);
+          sorted.add(n);
+        }
+      }
+    }
+    return cycle;
   }
  
   /**
    * Returns whether this graph contains any cycle.
    */
   public boolean hasCycle() {
-    seen = new HashSet<N>();
-    done = new HashSet<N>();
-    for (N n : parents.keySet()) 
-      if (recHasCycle(n)) return true;
-    return false;
-  }
-
-  private void recTopologicalSort(N n) {
-    if (seen.contains(n)) return;
-    seen.add(n);
-    for (N m : from(n)) recTopologicalSort(m);
-    sortedNodes.add(n);
+    if (frozen) return cyclic;
+    return depthFirst(new ArrayList<N>());
   }
 
   /** Returns all the nodes of this graph sorted topologically. */
   public List<N> nodesInTopologicalOrder() {
-    seen = new HashSet<N>();
-    sortedNodes = new ArrayList<N>();
-    for (N n : parents.keySet()) recTopologicalSort(n);
-    return sortedNodes;
+    if (frozen) {
+      List<N> result = new ArrayList<N>(topologicalOrder.length);
+      for (int i : topologicalOrder) result.add(nodeAt(i));
+      return result;
+    }
+    List<N> result = new ArrayList<N>();
+    depthFirst(result);
+    return result;
   }
   
   /**
@@ -141,4 +229,52 @@ public class SimpleGraph<N> {
     for (Map.Entry<N, HashSet<N>> a : parents.entrySet())
       for (N b : a.getValue()) f.go(Pair.of(b, a.getKey()));
   }
+
+  // === helpers for the compact representation ===
+
+  private int[] compact(HashMap<N, HashSet<N>> adjacency, int[] begin) {
+    int e = 0;
+    for (HashSet<N> a : adjacency.values()) e += a.size();
+    int[] result = new int[e];
+    e = 0;
+    int i = 0;
+    for (N x : parents.keySet()) {
+      begin[i++] = e;
+      for (N y : adjacency.get(x)) result[e++] = idOf.get(y);
+    }
+    begin[i] = e;
+    return result;
+  }
+
+  // the same search as depthFirst(), but on ids
+  private void sortTopologically() {
+    int n = nodeOf.length;
+    topologicalOrder = new int[n];
+    int sorted = 0;
+    byte[] state = new byte[n]; // 0 = unseen, 1 = seen, 2 = done
+    int[] stack = new int[n];
+    int[] next = new int[n]; // the next in-edge to follow
+    for (int root = 0; root < n; ++root) {
+      if (state[root] != 0) continue;
+      int top = 0;
+      stack[0] = root;
+      next[root] = parentBegin[root];
+      state[root] = 1;
+      while (top >= 0) {
+        int x = stack[top];
+        if (next[x] < parentBegin[x + 1]) {
+          int y = parentIds[next[x]++];
+          if (state[y] == 1) cyclic = true;
+          if (state[y] != 0) continue;
+          state[y] = 1;
+          next[y] = parentBegin[y];
+          stack[++top] = y;
+        } else {
+          state[x] = 2;
+          topologicalOrder[sorted++] = x;
+          --top;
+        }
+      }
+    }
+  }
 }